@@ -0,0 +1,67 @@
+package com.hmdp.bench;
+
+import com.hmdp.utils.AutoBatchingConnectionFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+
+/**
+ * 基准测试用的内嵌redis-server进程，以及连接它的StringRedisTemplate
+ */
+public class BenchmarkRedis {
+
+    private final RedisServer server;
+    private final LettuceConnectionFactory factory;
+    private final StringRedisTemplate template;
+
+    public BenchmarkRedis() throws IOException {
+        this(null);
+    }
+
+    /**
+     * @param batchWindow 共享连接自动攒批的等待时间，null表示不攒批
+     */
+    public BenchmarkRedis(Duration batchWindow) throws IOException {
+        int port = freePort();
+        server = new RedisServer(port);
+        server.start();
+        RedisStandaloneConfiguration config = new RedisStandaloneConfiguration("127.0.0.1", port);
+        factory = batchWindow == null
+                ? new LettuceConnectionFactory(config)
+                : new AutoBatchingConnectionFactory(config, LettuceClientConfiguration.defaultConfiguration(), batchWindow);
+        factory.afterPropertiesSet();
+        template = new StringRedisTemplate(factory);
+    }
+
+    public StringRedisTemplate template() {
+        return template;
+    }
+
+    public LettuceConnectionFactory factory() {
+        return factory;
+    }
+
+    public void flushAll() {
+        template.execute(connection -> {
+            connection.flushAll();
+            return null;
+        }, true);
+    }
+
+    public void close() throws IOException {
+        factory.destroy();
+        server.stop();
+    }
+
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.hmdp.bench;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.CacheClient;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TTL;
+
+/**
+ * CacheClient的三种读取方式：缓存穿透方案命中、逻辑过期命中、互斥锁重建时的竞争，以及直接查库作为对照
+ */
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CacheClientBenchmark {
+
+    private static final int SHOPS = 1000;
+
+    /**
+     * 互斥锁场景下反复过期重建的热点商铺数
+     */
+    private static final int HOT_SHOPS = 10;
+
+    @State(Scope.Benchmark)
+    public static class CacheState {
+        BenchmarkRedis redis;
+        JdbcConnectionPool pool;
+        CacheClient cacheClient;
+        Function<Long, Shop> dbFallback;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            redis = new BenchmarkRedis();
+            cacheClient = new CacheClient(redis.template(), redis.template());
+            // 1.内存数据库中准备商铺数据
+            pool = JdbcConnectionPool.create("jdbc:h2:mem:cache;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(pool);
+            jdbcTemplate.execute("DROP TABLE IF EXISTS tb_shop");
+            jdbcTemplate.execute("CREATE TABLE tb_shop (id BIGINT PRIMARY KEY, name VARCHAR(128), "
+                    + "area VARCHAR(128), score INT)");
+            List<Shop> shops = ShopSearchBenchmark.generate(SHOPS);
+            jdbcTemplate.batchUpdate("INSERT INTO tb_shop (id, name, area, score) VALUES (?, ?, ?, ?)",
+                    shops, 500, (ps, shop) -> {
+                        ps.setLong(1, shop.getId());
+                        ps.setString(2, shop.getName());
+                        ps.setString(3, shop.getArea());
+                        ps.setInt(4, shop.getScore());
+                    });
+            BeanPropertyRowMapper<Shop> mapper = new BeanPropertyRowMapper<>(Shop.class);
+            dbFallback = id -> jdbcTemplate.queryForObject(
+                    "SELECT id, name, area, score FROM tb_shop WHERE id = ?", mapper, id);
+            // 2.预热缓存，两种写法分别放在不同前缀下
+            for (Shop shop : shops) {
+                cacheClient.set(CACHE_SHOP_KEY + shop.getId(), shop, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+                cacheClient.setWithLogicalExpire("bench:logical:" + shop.getId(), shop, 1L, TimeUnit.HOURS);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            pool.dispose();
+            redis.close();
+        }
+    }
+
+    @Benchmark
+    public Shop passThroughHit(CacheState state) {
+        return state.cacheClient.queryWithPassThrough(
+                CACHE_SHOP_KEY, randomId(SHOPS), Shop.class, state.dbFallback, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+    }
+
+    @Benchmark
+    public Shop logicalExpireHit(CacheState state) {
+        return state.cacheClient.queryWithLogicalExpire(
+                "bench:logical:", randomId(SHOPS), Shop.class, state.dbFallback, 1L, TimeUnit.HOURS);
+    }
+
+    /**
+     * 少量热点key只缓存20毫秒，8个线程不断撞上过期，抢锁失败的线程休眠重试
+     */
+    @Benchmark
+    @Threads(8)
+    public Shop mutexContention(CacheState state) {
+        return state.cacheClient.queryWithMutex(
+                "bench:mutex:", randomId(HOT_SHOPS), Shop.class, state.dbFallback, 20L, TimeUnit.MILLISECONDS);
+    }
+
+    @Benchmark
+    public Shop database(CacheState state) {
+        return state.dbFallback.apply(randomId(SHOPS));
+    }
+
+    private static Long randomId(int bound) {
+        return 1L + ThreadLocalRandom.current().nextInt(bound);
+    }
+}
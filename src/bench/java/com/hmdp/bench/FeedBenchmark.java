@@ -0,0 +1,100 @@
+package com.hmdp.bench;
+
+import com.hmdp.utils.FeedTimeline;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.FEED_KEY;
+import static com.hmdp.utils.RedisConstants.FEED_MAX_SIZE;
+import static com.hmdp.utils.RedisConstants.FEED_OUTBOX_KEY;
+
+/**
+ * 时间线推送吞吐（每秒推送的粉丝数）与滚动读取延迟
+ */
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+public class FeedBenchmark {
+
+    private static final int FOLLOWERS = 1000;
+
+    @State(Scope.Benchmark)
+    public static class PushState {
+        BenchmarkRedis redis;
+        FeedTimeline timeline;
+        List<Long> followerIds;
+        final AtomicLong blogId = new AtomicLong();
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            redis = new BenchmarkRedis();
+            timeline = new FeedTimeline(redis.template(), null, null);
+            followerIds = new ArrayList<>(FOLLOWERS);
+            for (long i = 1; i <= FOLLOWERS; i++) {
+                followerIds.add(i);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            redis.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ReadState {
+        /**
+         * 读取时合并的拉模式作者发件箱个数
+         */
+        @Param({"0", "8"})
+        public int pullAuthors;
+
+        BenchmarkRedis redis;
+        FeedTimeline timeline;
+        List<String> readKeys;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            redis = new BenchmarkRedis();
+            timeline = new FeedTimeline(redis.template(), null, null);
+            // 读者收件箱与拉模式作者的发件箱都填满
+            long now = System.currentTimeMillis();
+            readKeys = new ArrayList<>();
+            readKeys.add(FEED_KEY + 0);
+            for (int a = 1; a <= pullAuthors; a++) {
+                readKeys.add(FEED_OUTBOX_KEY + a);
+            }
+            for (String key : readKeys) {
+                for (long i = 0; i < FEED_MAX_SIZE; i++) {
+                    redis.template().opsForZSet().add(key, key + ":" + i, now - i * 1000);
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            redis.close();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(FOLLOWERS)
+    public void fanOut(PushState state) {
+        state.timeline.pushToFollowers(state.followerIds, state.blogId.incrementAndGet(), System.currentTimeMillis());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<ZSetOperations.TypedTuple<String>> readFirstPage(ReadState state) {
+        return state.timeline.scroll(state.readKeys, Long.MAX_VALUE, 0, 10);
+    }
+}
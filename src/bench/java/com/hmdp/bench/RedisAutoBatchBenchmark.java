@@ -0,0 +1,65 @@
+package com.hmdp.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 大量线程共用一条共享连接时，逐条flush与自动攒批flush的吞吐对比
+ */
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class RedisAutoBatchBenchmark {
+
+    private static final int KEYS = 1000;
+
+    /**
+     * off：逐条flush；其余为攒批等待时间
+     */
+    @Param({"off", "0ms", "50us"})
+    String batchWindow;
+
+    BenchmarkRedis redis;
+    StringRedisTemplate template;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        redis = "off".equals(batchWindow) ? new BenchmarkRedis() : new BenchmarkRedis(DurationStyle.detectAndParse(batchWindow));
+        template = redis.template();
+        for (int i = 0; i < KEYS; i++) {
+            template.opsForValue().set("bench:batch:" + i, "{\"id\":" + i + "}");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        redis.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String get1() {
+        return template.opsForValue().get("bench:batch:" + ThreadLocalRandom.current().nextInt(KEYS));
+    }
+
+    @Benchmark
+    @Threads(64)
+    public String get64() {
+        return template.opsForValue().get("bench:batch:" + ThreadLocalRandom.current().nextInt(KEYS));
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void set64() {
+        int i = ThreadLocalRandom.current().nextInt(KEYS);
+        template.opsForValue().set("bench:batch:" + i, "{\"id\":" + i + "}");
+    }
+}
@@ -0,0 +1,51 @@
+package com.hmdp.bench;
+
+import com.hmdp.utils.RedisIdWorker;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 全局id生成在不同并发线程数下的吞吐，所有线程共用同一个业务前缀，竞争同一个计数器
+ */
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class RedisIdWorkerBenchmark {
+
+    BenchmarkRedis redis;
+    RedisIdWorker idWorker;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        redis = new BenchmarkRedis();
+        idWorker = new RedisIdWorker(redis.template());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        redis.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long threads1() {
+        return idWorker.nextId("order");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long threads4() {
+        return idWorker.nextId("order");
+    }
+
+    @Benchmark
+    @Threads(16)
+    public long threads16() {
+        return idWorker.nextId("order");
+    }
+}
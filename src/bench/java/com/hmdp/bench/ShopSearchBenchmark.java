@@ -0,0 +1,138 @@
+package com.hmdp.bench;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.ShopSearchIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 商铺名称搜索：内存倒排索引对比内嵌数据库上 LIKE '%name%' 的分页查询（COUNT + LIMIT）
+ */
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Dfile.encoding=UTF-8"})
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class ShopSearchBenchmark {
+
+    private static final String[] CATEGORIES = {
+            "火锅", "烧烤", "茶餐厅", "咖啡", "面馆", "甜品", "KTV", "酒吧", "日料", "西餐",
+            "小龙虾", "烤鱼", "麻辣烫", "奶茶", "汉堡", "披萨", "海鲜", "自助餐", "粥铺", "饺子馆"};
+    private static final String[] AREAS = {
+            "陆家嘴", "徐家汇", "静安寺", "人民广场", "五角场", "中山公园", "新天地", "南京西路",
+            "大拇指广场", "七宝", "莘庄", "虹桥", "张江", "世纪公园", "北外滩", "田子坊"};
+    private static final String BRAND_CHARS = "金银福满堂鑫源记老王李张小大新好味香鲜蜀湘粤川京沪";
+
+    @Param({"1000000"})
+    public int shops;
+
+    /**
+     * 常见词、较少见的组合词、商圈
+     */
+    @Param({"火锅", "老王烤鱼", "陆家嘴"})
+    public String query;
+
+    @State(Scope.Benchmark)
+    public static class IndexState {
+        ShopSearchIndex index;
+
+        @Setup(Level.Trial)
+        public void setup(ShopSearchBenchmark benchmark) {
+            index = new ShopSearchIndex(null);
+            index.rebuild(generate(benchmark.shops));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class DbState {
+        Connection connection;
+        PreparedStatement count;
+        PreparedStatement page;
+
+        @Setup(Level.Trial)
+        public void setup(ShopSearchBenchmark benchmark) throws SQLException {
+            connection = DriverManager.getConnection("jdbc:h2:mem:hmdp;MODE=MySQL;DB_CLOSE_DELAY=-1");
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DROP TABLE IF EXISTS tb_shop");
+                statement.execute("CREATE TABLE tb_shop (id BIGINT PRIMARY KEY, name VARCHAR(128), "
+                        + "area VARCHAR(128), score INT)");
+            }
+            connection.setAutoCommit(false);
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO tb_shop (id, name, area, score) VALUES (?, ?, ?, ?)")) {
+                int batch = 0;
+                for (Shop shop : generate(benchmark.shops)) {
+                    insert.setLong(1, shop.getId());
+                    insert.setString(2, shop.getName());
+                    insert.setString(3, shop.getArea());
+                    insert.setInt(4, shop.getScore());
+                    insert.addBatch();
+                    if (++batch % 10000 == 0) {
+                        insert.executeBatch();
+                    }
+                }
+                insert.executeBatch();
+            }
+            connection.commit();
+            count = connection.prepareStatement("SELECT COUNT(*) FROM tb_shop WHERE name LIKE ?");
+            page = connection.prepareStatement("SELECT id, name, area, score FROM tb_shop WHERE name LIKE ? LIMIT 10");
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws SQLException {
+            connection.close();
+        }
+    }
+
+    @Benchmark
+    public List<Long> index(IndexState state) {
+        return state.index.search(query, 0, 10);
+    }
+
+    @Benchmark
+    public List<Long> like(DbState state) throws SQLException {
+        String pattern = "%" + query + "%";
+        state.count.setString(1, pattern);
+        try (ResultSet rs = state.count.executeQuery()) {
+            rs.next();
+        }
+        state.page.setString(1, pattern);
+        List<Long> ids = new ArrayList<>(10);
+        try (ResultSet rs = state.page.executeQuery()) {
+            while (rs.next()) {
+                ids.add(rs.getLong(1));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 生成形如“老王火锅（陆家嘴店）”的商铺名，固定种子保证两边数据一致
+     */
+    static List<Shop> generate(int size) {
+        Random random = new Random(42);
+        List<Shop> shops = new ArrayList<>(size);
+        for (long id = 1; id <= size; id++) {
+            StringBuilder brand = new StringBuilder();
+            int length = 2 + random.nextInt(2);
+            for (int i = 0; i < length; i++) {
+                brand.append(BRAND_CHARS.charAt(random.nextInt(BRAND_CHARS.length())));
+            }
+            String area = AREAS[random.nextInt(AREAS.length)];
+            String name = brand + CATEGORIES[random.nextInt(CATEGORIES.length)] + "（" + area + "店）";
+            shops.add(new Shop().setId(id).setName(name).setArea(area).setScore(10 + random.nextInt(41)));
+        }
+        return shops;
+    }
+}
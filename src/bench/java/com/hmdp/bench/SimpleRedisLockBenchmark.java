@@ -0,0 +1,77 @@
+package com.hmdp.bench;
+
+import com.hmdp.utils.SimpleRedisLock;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SimpleRedisLock一次加锁加解锁的开销：每个线程各自的锁（无竞争）与所有线程抢同一把锁
+ */
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SimpleRedisLockBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class RedisState {
+        BenchmarkRedis redis;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            redis = new BenchmarkRedis();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            redis.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class OwnLock {
+        SimpleRedisLock lock;
+
+        @Setup(Level.Trial)
+        public void setup(RedisState state) {
+            lock = new SimpleRedisLock("bench:" + Thread.currentThread().getId(), state.redis.template());
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SharedLock {
+        SimpleRedisLock lock;
+
+        @Setup(Level.Trial)
+        public void setup(RedisState state) {
+            lock = new SimpleRedisLock("bench:shared", state.redis.template());
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean uncontended(OwnLock own) {
+        return lockAndUnlock(own.lock);
+    }
+
+    /**
+     * 抢锁失败的线程直接返回，结果中失败次数越多，单次耗时越接近一次SET NX
+     */
+    @Benchmark
+    @Threads(4)
+    public void contended(SharedLock shared, Blackhole blackhole) {
+        blackhole.consume(lockAndUnlock(shared.lock));
+    }
+
+    private static boolean lockAndUnlock(SimpleRedisLock lock) {
+        if (!lock.tryLock(10)) {
+            return false;
+        }
+        lock.unlock();
+        return true;
+    }
+}
@@ -0,0 +1,82 @@
+package com.hmdp.bench;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.bean.copier.CopyOptions;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.RedisData;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 不访问Redis的序列化开销：登录时UserDTO转Hash、拦截器中Hash转回UserDTO，以及逻辑过期缓存RedisData的JSON读写
+ */
+@Fork(1)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class UserMapBenchmark {
+
+    UserDTO user;
+    Map<Object, Object> userMap;
+    RedisData redisData;
+    String redisDataJson;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        user = new UserDTO();
+        user.setId(1010L);
+        user.setNickName("user_slxaxy2au9f3tanffaxr");
+        user.setIcon("/imgs/icons/kkjtbcr.jpg");
+        userMap = new HashMap<>(toMap());
+        redisData = new RedisData();
+        redisData.setData(ShopSearchBenchmark.generate(1).get(0));
+        redisData.setExpireTime(LocalDateTime.now().plusHours(1));
+        redisDataJson = JSONUtil.toJsonStr(redisData);
+    }
+
+    /**
+     * 与UserServiceImpl登录时的写法一致
+     */
+    @Benchmark
+    public Map<String, Object> beanToMap() {
+        return toMap();
+    }
+
+    /**
+     * 与RefreshTokenInterceptor中的写法一致
+     */
+    @Benchmark
+    public UserDTO mapToBean() {
+        return BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false);
+    }
+
+    @Benchmark
+    public String redisDataToJson() {
+        return JSONUtil.toJsonStr(redisData);
+    }
+
+    /**
+     * 与CacheClient逻辑过期读取时的写法一致
+     */
+    @Benchmark
+    public Shop redisDataFromJson() {
+        RedisData data = JSONUtil.toBean(redisDataJson, RedisData.class);
+        return JSONUtil.toBean((JSONObject) data.getData(), Shop.class);
+    }
+
+    private Map<String, Object> toMap() {
+        return BeanUtil.beanToMap(user, new HashMap<>(),
+                CopyOptions.create()
+                        .setIgnoreNullValue(true)
+                        .setFieldValueEditor((fieldName, fieldValue) -> fieldValue.toString()));
+    }
+}
@@ -0,0 +1,233 @@
+package com.hmdp.bench;
+
+import com.hmdp.utils.VoucherOrderShards;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 订单落库与查询：原来的单表（只有主键）对比按月分表（主键 + (user_id, voucher_id) 索引），数据分布在最近12个月。
+ * 内嵌数据库只能放下百万级的数据，-p orders= 调整规模；表越大单表的差距越明显
+ */
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Dfile.encoding=UTF-8"})
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class VoucherOrderShardBenchmark {
+
+    private static final int MONTHS = 12;
+    private static final int USERS = 100000;
+    private static final int VOUCHERS = 1000;
+    private static final long BEGIN_TIMESTAMP = 1640995200L;
+
+    @Param({"1000000"})
+    public int orders;
+
+    /**
+     * 已有订单的id、用户和优惠券，查询时随机取
+     */
+    long[] ids;
+    long[] userIds;
+    long[] voucherIds;
+    YearMonth current = YearMonth.now();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        ids = new long[orders];
+        userIds = new long[orders];
+        voucherIds = new long[orders];
+        for (int i = 0; i < orders; i++) {
+            YearMonth month = current.minusMonths(i % MONTHS);
+            ids[i] = idOf(month, i / MONTHS + 1);
+            userIds[i] = 1 + random.nextInt(USERS);
+            voucherIds[i] = 1 + random.nextInt(VOUCHERS);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SingleTableState {
+        Connection connection;
+        PreparedStatement insert;
+        PreparedStatement byId;
+        PreparedStatement duplicate;
+        long nextId;
+
+        @Setup(Level.Trial)
+        public void setup(VoucherOrderShardBenchmark benchmark) throws SQLException {
+            connection = DriverManager.getConnection("jdbc:h2:mem:order_single;MODE=MySQL;DB_CLOSE_DELAY=-1");
+            createTable(connection, "tb_voucher_order", false);
+            load(connection, benchmark, month -> "tb_voucher_order");
+            insert = insertInto(connection, "tb_voucher_order");
+            byId = connection.prepareStatement("SELECT * FROM tb_voucher_order WHERE id = ?");
+            duplicate = connection.prepareStatement(
+                    "SELECT COUNT(*) FROM tb_voucher_order WHERE user_id = ? AND voucher_id = ?");
+            nextId = idOf(benchmark.current, benchmark.orders);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws SQLException {
+            connection.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ShardState {
+        Connection connection;
+        PreparedStatement insert;
+        PreparedStatement[] byId = new PreparedStatement[MONTHS];
+        PreparedStatement duplicate;
+        long nextId;
+
+        @Setup(Level.Trial)
+        public void setup(VoucherOrderShardBenchmark benchmark) throws SQLException {
+            connection = DriverManager.getConnection("jdbc:h2:mem:order_shard;MODE=MySQL;DB_CLOSE_DELAY=-1");
+            for (int i = 0; i < MONTHS; i++) {
+                String table = VoucherOrderShards.tableOf(benchmark.current.minusMonths(i));
+                createTable(connection, table, true);
+                byId[i] = connection.prepareStatement("SELECT * FROM " + table + " WHERE id = ?");
+            }
+            load(connection, benchmark, VoucherOrderShards::tableOf);
+            String table = VoucherOrderShards.tableOf(benchmark.current);
+            insert = insertInto(connection, table);
+            // 下单时的重复检查只查优惠券创建以来的分表，秒杀券通常只有当月一张
+            duplicate = connection.prepareStatement(
+                    "SELECT COUNT(*) FROM " + table + " WHERE user_id = ? AND voucher_id = ?");
+            nextId = idOf(benchmark.current, benchmark.orders);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws SQLException {
+            connection.close();
+        }
+    }
+
+    @Benchmark
+    public int singleTableInsert(SingleTableState state) throws SQLException {
+        return insert(state.insert, state.nextId++);
+    }
+
+    @Benchmark
+    public int shardInsert(ShardState state) throws SQLException {
+        return insert(state.insert, state.nextId++);
+    }
+
+    @Benchmark
+    public boolean singleTableLookupById(SingleTableState state) throws SQLException {
+        state.byId.setLong(1, ids[ThreadLocalRandom.current().nextInt(orders)]);
+        try (ResultSet rs = state.byId.executeQuery()) {
+            return rs.next();
+        }
+    }
+
+    /**
+     * 由id算出分表，只查一张表
+     */
+    @Benchmark
+    public boolean shardLookupById(ShardState state) throws SQLException {
+        long id = ids[ThreadLocalRandom.current().nextInt(orders)];
+        PreparedStatement byId = state.byId[(int) VoucherOrderShards.monthOf(id).until(current, ChronoUnit.MONTHS)];
+        byId.setLong(1, id);
+        try (ResultSet rs = byId.executeQuery()) {
+            return rs.next();
+        }
+    }
+
+    @Benchmark
+    public int singleTableDuplicateCheck(SingleTableState state) throws SQLException {
+        return duplicate(state.duplicate);
+    }
+
+    @Benchmark
+    public int shardDuplicateCheck(ShardState state) throws SQLException {
+        return duplicate(state.duplicate);
+    }
+
+    private int duplicate(PreparedStatement duplicate) throws SQLException {
+        int i = ThreadLocalRandom.current().nextInt(orders);
+        duplicate.setLong(1, userIds[i]);
+        duplicate.setLong(2, voucherIds[i]);
+        try (ResultSet rs = duplicate.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private int insert(PreparedStatement insert, long id) throws SQLException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        insert.setLong(1, id);
+        insert.setLong(2, 1 + random.nextInt(USERS));
+        insert.setLong(3, 1 + random.nextInt(VOUCHERS));
+        return insert.executeUpdate();
+    }
+
+    /**
+     * 与RedisIdWorker一致：高32位是距开始时间的秒数，这里取该月1日零点，低32位是序号
+     */
+    static long idOf(YearMonth month, long sequence) {
+        long second = month.atDay(1).atStartOfDay().toEpochSecond(ZoneOffset.UTC) - BEGIN_TIMESTAMP;
+        return second << 32 | sequence;
+    }
+
+    /**
+     * 原来的订单表只有主键，分表上加了 (user_id, voucher_id) 索引
+     */
+    private static void createTable(Connection connection, String table, boolean indexed) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS " + table);
+            statement.execute("CREATE TABLE " + table + " (id BIGINT NOT NULL, user_id BIGINT NOT NULL, "
+                    + "voucher_id BIGINT NOT NULL, pay_type TINYINT NOT NULL DEFAULT 1, status TINYINT NOT NULL DEFAULT 1, "
+                    + "create_time TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, PRIMARY KEY (id))");
+            if (indexed) {
+                statement.execute("CREATE INDEX idx_user_voucher_" + table + " ON " + table + " (user_id, voucher_id)");
+            }
+        }
+    }
+
+    private static void load(Connection connection, VoucherOrderShardBenchmark benchmark,
+                             Function<YearMonth, String> tableOf) throws SQLException {
+        connection.setAutoCommit(false);
+        List<PreparedStatement> inserts = new ArrayList<>(MONTHS);
+        for (int m = 0; m < MONTHS; m++) {
+            inserts.add(insertInto(connection, tableOf.apply(benchmark.current.minusMonths(m))));
+        }
+        for (int i = 0; i < benchmark.orders; i++) {
+            PreparedStatement insert = inserts.get(i % MONTHS);
+            insert.setLong(1, benchmark.ids[i]);
+            insert.setLong(2, benchmark.userIds[i]);
+            insert.setLong(3, benchmark.voucherIds[i]);
+            insert.addBatch();
+            if ((i + 1) % 10000 == 0) {
+                for (PreparedStatement statement : inserts) {
+                    statement.executeBatch();
+                }
+            }
+        }
+        for (PreparedStatement statement : inserts) {
+            statement.executeBatch();
+            statement.close();
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+    }
+
+    private static PreparedStatement insertInto(Connection connection, String table) throws SQLException {
+        return connection.prepareStatement("INSERT INTO " + table + " (id, user_id, voucher_id) VALUES (?, ?, ?)");
+    }
+}
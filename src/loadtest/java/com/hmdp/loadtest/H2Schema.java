@@ -0,0 +1,60 @@
+package com.hmdp.loadtest;
+
+import cn.hutool.core.io.resource.ResourceUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 把db/hmdp.sql中的建表语句转换为H2（MySQL兼容模式）可以执行的DDL，表结构只维护一份
+ */
+public class H2Schema {
+
+    private static final Pattern BLOCK_COMMENT = Pattern.compile("/\\*.*?\\*/", Pattern.DOTALL);
+    private static final Pattern LINE_COMMENT = Pattern.compile("(?m)^--.*$");
+    private static final Pattern COLUMN_COMMENT = Pattern.compile("\\s+COMMENT\\s+'(?:[^'\\\\]|\\\\.)*'");
+    private static final Pattern TABLE_OPTIONS = Pattern.compile("\\)\\s*ENGINE\\s*=.*$", Pattern.DOTALL);
+    private static final Pattern CHARSET = Pattern.compile("\\s+(?:CHARACTER SET|COLLATE)\\s+\\w+");
+    private static final Pattern ZERO_DATE = Pattern.compile("\\s+DEFAULT\\s+'0000-00-00 00:00:00'");
+    private static final Pattern MYSQL_ONLY = Pattern.compile("\\s+(?:USING BTREE|UNSIGNED|ZEROFILL)");
+    private static final Pattern YEAR_TYPE = Pattern.compile("(`\\w+`)\\s+year\\b");
+
+    private H2Schema() {
+    }
+
+    /**
+     * 读取并转换建表语句，忽略数据
+     */
+    public static List<String> ddl(String resource) {
+        String sql = ResourceUtil.readStr(resource, StandardCharsets.UTF_8);
+        sql = BLOCK_COMMENT.matcher(sql).replaceAll("");
+        List<String> statements = new ArrayList<>();
+        for (String statement : sql.split(";\\s*\\r?\\n")) {
+            statement = LINE_COMMENT.matcher(statement).replaceAll("").trim();
+            if (!statement.startsWith("DROP TABLE") && !statement.startsWith("CREATE TABLE")) {
+                continue;
+            }
+            statement = COLUMN_COMMENT.matcher(statement).replaceAll("");
+            statement = TABLE_OPTIONS.matcher(statement).replaceAll(")");
+            statement = CHARSET.matcher(statement).replaceAll("");
+            statement = ZERO_DATE.matcher(statement).replaceAll("");
+            statement = MYSQL_ONLY.matcher(statement).replaceAll("");
+            statement = YEAR_TYPE.matcher(statement).replaceAll("$1 smallint");
+            statements.add(statement);
+        }
+        return statements;
+    }
+
+    public static void create(Connection connection, String resource) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String ddl : ddl(resource)) {
+                statement.execute(ddl);
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.hmdp.loadtest;
+
+import com.hmdp.utils.VirtualThreads;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 最大同时处理请求数的压测：大量客户端持续请求一个先读redis、再阻塞等待的接口，
+ * 对比平台线程（受server.tomcat.threads.max限制）与虚拟线程下服务端的最大并发、吞吐和延迟。
+ * <p>
+ * mvn -Ploadtest verify -Dloadtest.main=com.hmdp.loadtest.InFlightLoadTest -Dloadtest.concurrency=2000
+ * mvn -Ploadtest,jdk21 verify -Dloadtest.main=com.hmdp.loadtest.InFlightLoadTest -Dloadtest.concurrency=2000
+ */
+public class InFlightLoadTest {
+
+    /**
+     * 每次请求在服务端阻塞的时间
+     */
+    private static final long SLEEP_MILLIS = 50;
+
+    private static final long WARMUP_SECONDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int concurrency = Integer.getInteger("loadtest.concurrency", 2000);
+        int duration = Integer.getInteger("loadtest.duration", 10);
+        // 客户端每个线程保持一个长连接
+        System.setProperty("http.maxConnections", String.valueOf(concurrency));
+        try (LoadTestApp app = new LoadTestApp(concurrency,
+                "--loadtest.probe=true",
+                // 平台线程保持默认的200个工作线程，不随并发数放大
+                "--server.tomcat.threads.max=200",
+                "--server.tomcat.max-connections=" + concurrency * 2,
+                "--server.tomcat.accept-count=" + concurrency)) {
+            String token = app.login(1, 1)[0];
+            String path = "/loadtest/blocking?sleep=" + SLEEP_MILLIS;
+
+            // 1.预热，然后清零统计
+            System.out.printf("%d个并发客户端，预热%d秒...%n", concurrency, WARMUP_SECONDS);
+            drive(app, token, path, concurrency, WARMUP_SECONDS);
+            app.post("/loadtest/in-flight/reset", token);
+
+            // 2.正式压测
+            System.out.printf("压测%d秒...%n", duration);
+            AtomicInteger errors = new AtomicInteger();
+            long begin = System.nanoTime();
+            long[] latencies = drive(app, token, path, concurrency, duration, errors);
+            long elapsed = System.nanoTime() - begin;
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("mode", VirtualThreads.enabled() ? "virtual" : "platform");
+            report.put("java", System.getProperty("java.version"));
+            report.put("concurrency", concurrency);
+            report.put("sleepMillis", SLEEP_MILLIS);
+            report.put("requests", latencies.length);
+            report.put("throughput", Math.round(latencies.length * 1e9 / elapsed));
+            report.put("latencyMillis", LoadTestApp.percentiles(latencies));
+            report.put("errors", errors.get());
+            report.put("maxInFlight", app.get("/loadtest/in-flight", token).getInt("data"));
+            LoadTestApp.report(report);
+        }
+        System.exit(0);
+    }
+
+    private static long[] drive(LoadTestApp app, String token, String path, int concurrency, long seconds)
+            throws InterruptedException {
+        return drive(app, token, path, concurrency, seconds, new AtomicInteger());
+    }
+
+    /**
+     * 每个客户端线程在指定时间内不停地发送请求
+     * @return 升序排列的延迟，单位纳秒
+     */
+    private static long[] drive(LoadTestApp app, String token, String path, int concurrency, long seconds,
+                                AtomicInteger errors) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<List<Long>> results = new ArrayList<>(concurrency);
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        for (int t = 0; t < concurrency; t++) {
+            List<Long> latencies = new ArrayList<>();
+            results.add(latencies);
+            pool.execute(() -> {
+                long now;
+                while ((now = System.nanoTime()) < deadline) {
+                    try {
+                        app.get(path, token);
+                        latencies.add(System.nanoTime() - now);
+                    } catch (IOException e) {
+                        errors.incrementAndGet();
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(seconds + 60, TimeUnit.SECONDS);
+        return results.stream().flatMap(List::stream).mapToLong(Long::longValue).sorted().toArray();
+    }
+}
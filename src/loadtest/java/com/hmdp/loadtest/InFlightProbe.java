@@ -0,0 +1,56 @@
+package com.hmdp.loadtest;
+
+import com.hmdp.dto.Result;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 压测探针，只在 --loadtest.probe=true 时注册：模拟一次阻塞的下游调用，并统计同时处理中的请求数
+ */
+@RestController
+@RequestMapping("/loadtest")
+@ConditionalOnProperty(name = "loadtest.probe", havingValue = "true")
+public class InFlightProbe {
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 一次redis读取，再休眠指定时间，相当于CacheClient.queryWithMutex中抢锁失败后的休眠重试或一次慢查询
+     */
+    @GetMapping("/blocking")
+    public Result blocking(@RequestParam(value = "sleep", defaultValue = "50") long sleepMillis)
+            throws InterruptedException {
+        int current = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(current, Math::max);
+        try {
+            stringRedisTemplate.opsForValue().get("loadtest:probe");
+            Thread.sleep(sleepMillis);
+            return Result.ok();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    @GetMapping("/in-flight")
+    public Result maxInFlight() {
+        return Result.ok(maxInFlight.get());
+    }
+
+    @PostMapping("/in-flight/reset")
+    public Result reset() {
+        maxInFlight.set(inFlight.get());
+        return Result.ok();
+    }
+}
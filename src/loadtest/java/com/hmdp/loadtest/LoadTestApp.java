@@ -0,0 +1,201 @@
+package com.hmdp.loadtest;
+
+import cn.hutool.core.io.IoUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.HmDianPingApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_CODE_KEY;
+
+/**
+ * 压测用的应用实例：启动内嵌redis-server，在H2（MySQL兼容模式）中按db/hmdp.sql建表，应用监听随机端口。
+ * redis拓扑由-Dloadtest.redis选择，见LocalRedis
+ */
+public class LoadTestApp implements AutoCloseable {
+
+    private static final String JDBC_URL = "jdbc:h2:mem:hmdp;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    private final LocalRedis redis;
+    /**
+     * 保持一个连接，内存数据库才不会被关闭
+     */
+    private final Connection keepAlive;
+    private final ConfigurableApplicationContext context;
+    private final String baseUrl;
+
+    /**
+     * @param concurrency 预计的并发请求数，用来调整线程池、连接池大小
+     * @param extraArgs 额外的启动参数，例如 --server.tomcat.max-connections=10000
+     */
+    public LoadTestApp(int concurrency, String... extraArgs) throws Exception {
+        // 1.启动内嵌redis，按hmdp.sql建表
+        redis = LocalRedis.start(System.getProperty("loadtest.redis", "standalone"));
+        keepAlive = DriverManager.getConnection(JDBC_URL, "sa", "");
+        H2Schema.create(keepAlive, "db/hmdp.sql");
+        // 2.启动应用，命令行参数的优先级高于application.yaml
+        List<String> args = new ArrayList<>(Arrays.asList(
+                "--server.port=0",
+                "--management.server.port=0",
+                "--server.tomcat.threads.max=" + Math.max(200, concurrency),
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.datasource.url=" + JDBC_URL,
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.datasource.hikari.maximum-pool-size=20",
+                "--spring.redis.password=",
+                "--spring.redis.lettuce.pool.max-active=" + Math.max(10, concurrency),
+                "--spring.redis.lettuce.pool.max-idle=" + Math.max(10, concurrency),
+                "--hmdp.upload.root=" + Files.createTempDirectory("hmdp-upload"),
+                "--logging.level.root=warn",
+                "--logging.level.com.hmdp=warn"));
+        args.addAll(redis.springArgs());
+        // 同名参数以extraArgs为准，重复的命令行参数会被拼接成一个值
+        for (String arg : extraArgs) {
+            String name = arg.substring(0, arg.indexOf('=') + 1);
+            args.removeIf(a -> a.startsWith(name));
+            args.add(arg);
+        }
+        context = new SpringApplicationBuilder(HmDianPingApplication.class).run(args.toArray(new String[0]));
+        baseUrl = "http://127.0.0.1:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    /**
+     * 走真实的发送验证码、登录接口，验证码从redis中读取
+     * @return 每个用户的token
+     */
+    public String[] login(int users, int threads) throws InterruptedException {
+        StringRedisTemplate redis = getBean(StringRedisTemplate.class);
+        String[] tokens = new String[users];
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        AtomicLong failed = new AtomicLong();
+        for (int i = 0; i < users; i++) {
+            int index = i;
+            pool.execute(() -> {
+                String phone = String.valueOf(13000000000L + index);
+                try {
+                    post("/user/code?phone=" + phone, null);
+                    String code = redis.opsForValue().get(LOGIN_CODE_KEY + phone);
+                    JSONObject form = JSONUtil.createObj().set("phone", phone).set("code", code);
+                    JSONObject result = post("/user/login", null, form.toString());
+                    if (!result.getBool("success", false)) {
+                        throw new IOException(result.getStr("errorMsg"));
+                    }
+                    tokens[index] = result.getStr("data");
+                } catch (IOException e) {
+                    if (failed.getAndIncrement() == 0) {
+                        System.out.println("登录失败：" + e.getMessage());
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.MINUTES);
+        if (failed.get() > 0) {
+            throw new IllegalStateException(failed.get() + "个用户登录失败");
+        }
+        return tokens;
+    }
+
+    public JSONObject get(String path, String token) throws IOException {
+        return request("GET", path, token, null);
+    }
+
+    public JSONObject post(String path, String token) throws IOException {
+        return request("POST", path, token, null);
+    }
+
+    public JSONObject post(String path, String token, String body) throws IOException {
+        return request("POST", path, token, body);
+    }
+
+    private JSONObject request(String method, String path, String token, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(5000);
+        connection.setReadTimeout(30000);
+        if (token != null) {
+            connection.setRequestProperty("authorization", token);
+        }
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+            throw new IOException("HTTP " + connection.getResponseCode() + " " + path);
+        }
+        try (InputStream in = connection.getInputStream()) {
+            return JSONUtil.parseObj(IoUtil.read(in, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        try {
+            context.close();
+            keepAlive.close();
+        } finally {
+            redis.close();
+        }
+    }
+
+    /**
+     * 延迟分位数，单位毫秒
+     * @param sorted 升序排列的延迟，单位纳秒
+     */
+    public static Map<String, Double> percentiles(long[] sorted) {
+        Map<String, Double> result = new LinkedHashMap<>();
+        if (sorted.length == 0) {
+            return result;
+        }
+        for (double p : new double[]{50, 90, 99, 99.9}) {
+            int index = (int) Math.ceil(p / 100 * sorted.length) - 1;
+            result.put("p" + (p == Math.floor(p) ? String.valueOf((int) p) : String.valueOf(p)),
+                    sorted[Math.max(0, index)] / 1e6);
+        }
+        result.put("max", sorted[sorted.length - 1] / 1e6);
+        return result;
+    }
+
+    /**
+     * 打印报告并写入结果文件，-Dloadtest.result指定路径
+     */
+    public static void report(Map<String, Object> report) throws IOException {
+        String json = JSONUtil.toJsonPrettyStr(report);
+        System.out.println(json);
+        Path resultFile = Paths.get(System.getProperty("loadtest.result", "target/loadtest-result.json"));
+        Files.createDirectories(resultFile.toAbsolutePath().getParent());
+        Files.write(resultFile, json.getBytes(StandardCharsets.UTF_8));
+    }
+}
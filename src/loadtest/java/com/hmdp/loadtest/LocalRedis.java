@@ -0,0 +1,197 @@
+package com.hmdp.loadtest;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * 压测用的本地redis拓扑，由-Dloadtest.redis选择，每个节点是一个内嵌的redis-server进程：
+ * <ul>
+ *     <li>standalone：单机，默认</li>
+ *     <li>replica：一主一从，只读路径从副本读取</li>
+ *     <li>cluster：三主三从的集群，只读路径从副本读取，秒杀分6个区</li>
+ * </ul>
+ */
+public class LocalRedis implements AutoCloseable {
+
+    private static final int CLUSTER_MASTERS = 3;
+    private static final int CLUSTER_SLOTS = 16384;
+    private static final long SETUP_TIMEOUT_MILLIS = 30000;
+
+    private final List<RedisServer> servers = new ArrayList<>();
+    private final List<String> springArgs = new ArrayList<>();
+
+    private LocalRedis() {
+    }
+
+    public static LocalRedis start(String topology) throws Exception {
+        LocalRedis redis = new LocalRedis();
+        try {
+            switch (topology) {
+                case "standalone":
+                    redis.startStandalone();
+                    break;
+                case "replica":
+                    redis.startReplica();
+                    break;
+                case "cluster":
+                    redis.startCluster();
+                    break;
+                default:
+                    throw new IllegalArgumentException("未知的redis拓扑：" + topology);
+            }
+        } catch (Exception e) {
+            redis.close();
+            throw e;
+        }
+        return redis;
+    }
+
+    /**
+     * 连接这个拓扑需要的应用启动参数
+     */
+    public List<String> springArgs() {
+        return springArgs;
+    }
+
+    private void startStandalone() throws IOException {
+        int port = freePort();
+        servers.add(started(new RedisServer(port)));
+        springArgs.addAll(Arrays.asList("--spring.redis.host=127.0.0.1", "--spring.redis.port=" + port));
+    }
+
+    private void startReplica() throws Exception {
+        // 1.启动主节点和副本
+        int masterPort = freePort();
+        int replicaPort = freePort();
+        servers.add(started(new RedisServer(masterPort)));
+        servers.add(started(RedisServer.newRedisServer().port(replicaPort).slaveOf("127.0.0.1", masterPort).build()));
+        // 2.等待副本完成全量同步
+        try (Node replica = new Node(replicaPort)) {
+            awaitUntil("副本同步", () -> replica.commands.info("replication").contains("master_link_status:up"));
+        }
+        springArgs.addAll(Arrays.asList(
+                "--spring.redis.host=127.0.0.1",
+                "--spring.redis.port=" + masterPort,
+                "--hmdp.redis.read-from=replica-preferred",
+                "--hmdp.redis.replicas=127.0.0.1:" + replicaPort));
+    }
+
+    private void startCluster() throws Exception {
+        // 1.启动集群模式的节点，前一半是主节点
+        Path dir = Files.createTempDirectory("hmdp-redis-cluster");
+        int[] ports = new int[CLUSTER_MASTERS * 2];
+        for (int i = 0; i < ports.length; i++) {
+            ports[i] = freePort();
+            servers.add(started(RedisServer.newRedisServer()
+                    .port(ports[i])
+                    .setting("cluster-enabled yes")
+                    .setting("cluster-config-file nodes-" + ports[i] + ".conf")
+                    .setting("cluster-node-timeout 5000")
+                    .setting("dir " + dir.toAbsolutePath())
+                    .setting("save \"\"")
+                    .setting("appendonly no")
+                    .build()));
+        }
+        List<Node> nodes = new ArrayList<>();
+        try {
+            for (int port : ports) {
+                nodes.add(new Node(port));
+            }
+            // 2.CLUSTER MEET 互相发现，主节点平分槽位
+            for (int i = 1; i < nodes.size(); i++) {
+                nodes.get(0).commands.clusterMeet("127.0.0.1", ports[i]);
+            }
+            for (int i = 0; i < CLUSTER_MASTERS; i++) {
+                int from = CLUSTER_SLOTS * i / CLUSTER_MASTERS;
+                int to = CLUSTER_SLOTS * (i + 1) / CLUSTER_MASTERS;
+                nodes.get(i).commands.clusterAddSlots(IntStream.range(from, to).toArray());
+            }
+            awaitUntil("节点互相发现", () -> nodes.stream()
+                    .allMatch(n -> n.commands.clusterNodes().trim().split("\n").length == ports.length));
+            // 3.后一半节点作为对应主节点的副本
+            for (int i = 0; i < CLUSTER_MASTERS; i++) {
+                String masterId = nodes.get(i).commands.clusterMyId();
+                nodes.get(CLUSTER_MASTERS + i).commands.clusterReplicate(masterId);
+            }
+            awaitUntil("集群就绪", () -> nodes.stream().allMatch(n -> n.commands.clusterInfo().contains("cluster_state:ok"))
+                    && nodes.subList(CLUSTER_MASTERS, nodes.size()).stream()
+                    .allMatch(n -> n.commands.info("replication").contains("master_link_status:up")));
+        } finally {
+            nodes.forEach(Node::close);
+        }
+        StringBuilder clusterNodes = new StringBuilder();
+        for (int port : ports) {
+            clusterNodes.append(clusterNodes.length() == 0 ? "" : ",").append("127.0.0.1:").append(port);
+        }
+        springArgs.addAll(Arrays.asList(
+                "--spring.redis.cluster.nodes=" + clusterNodes,
+                "--hmdp.redis.read-from=replica-preferred",
+                "--hmdp.seckill.partitions=" + CLUSTER_MASTERS * 2));
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (RedisServer server : servers) {
+            server.stop();
+        }
+    }
+
+    private static RedisServer started(RedisServer server) throws IOException {
+        server.start();
+        return server;
+    }
+
+    private static void awaitUntil(String what, Condition condition) throws Exception {
+        long deadline = System.currentTimeMillis() + SETUP_TIMEOUT_MILLIS;
+        while (!condition.met()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException(what + "超时");
+            }
+            Thread.sleep(100);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private interface Condition {
+        boolean met() throws Exception;
+    }
+
+    /**
+     * 搭建拓扑时连接单个节点
+     */
+    private static class Node implements AutoCloseable {
+
+        private final RedisClient client;
+        private final StatefulRedisConnection<String, String> connection;
+        private final RedisCommands<String, String> commands;
+
+        Node(int port) {
+            client = RedisClient.create(RedisURI.create("127.0.0.1", port));
+            connection = client.connect();
+            commands = connection.sync();
+        }
+
+        @Override
+        public void close() {
+            connection.close();
+            client.shutdown();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.hmdp.loadtest;
+
+import cn.hutool.json.JSONObject;
+import com.hmdp.entity.Voucher;
+import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.SeckillKeys;
+import com.hmdp.utils.VoucherOrderShards;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 秒杀压测：预置一张秒杀券，用真实登录得到的token并发抢购，输出吞吐、延迟分位数，并校验不超卖、一人一单。
+ * <p>
+ * mvn -Ploadtest verify -Dloadtest.users=2000 -Dloadtest.stock=1000 -Dloadtest.concurrency=200 -Dloadtest.attempts=2
+ * <p>
+ * -Dloadtest.redis=cluster 在本地三主三从的redis集群上压测
+ */
+public class SeckillLoadTest {
+
+    private final int users = Integer.getInteger("loadtest.users", 2000);
+    private final int stock = Integer.getInteger("loadtest.stock", 1000);
+    private final int concurrency = Integer.getInteger("loadtest.concurrency", 200);
+    /**
+     * 每个用户的抢购次数，大于1时同时检验重复下单
+     */
+    private final int attempts = Integer.getInteger("loadtest.attempts", 2);
+
+    public static void main(String[] args) throws Exception {
+        boolean passed;
+        try (LoadTestApp app = new LoadTestApp(Integer.getInteger("loadtest.concurrency", 200))) {
+            passed = new SeckillLoadTest().run(app);
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    private boolean run(LoadTestApp app) throws Exception {
+        StringRedisTemplate redis = app.getBean(StringRedisTemplate.class);
+        JdbcTemplate jdbc = app.getBean(JdbcTemplate.class);
+        // 1.预置秒杀券
+        Voucher voucher = new Voucher();
+        voucher.setShopId(1L);
+        voucher.setTitle("压测秒杀券");
+        voucher.setPayValue(100L);
+        voucher.setActualValue(1000L);
+        voucher.setType(1);
+        voucher.setStatus(1);
+        voucher.setStock(stock);
+        voucher.setBeginTime(LocalDateTime.now().minusHours(1));
+        voucher.setEndTime(LocalDateTime.now().plusHours(1));
+        app.getBean(IVoucherService.class).addSeckillVoucher(voucher);
+        Long voucherId = voucher.getId();
+
+        // 2.用户登录，获取token
+        System.out.printf("登录%d个用户...%n", users);
+        String[] tokens = app.login(users, Math.min(concurrency, 50));
+
+        // 3.所有请求同时开始
+        System.out.printf("%d个并发，%d个用户各抢%d次，库存%d%n", concurrency, users, attempts, stock);
+        int total = users * attempts;
+        long[] latencies = new long[total];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger success = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        Map<String, AtomicInteger> failures = new ConcurrentHashMap<>();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        for (int t = 0; t < concurrency; t++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                int i;
+                while ((i = next.getAndIncrement()) < total) {
+                    long begin = System.nanoTime();
+                    try {
+                        JSONObject result = app.post("/voucher-order/seckill/" + voucherId, tokens[i % users]);
+                        if (result.getBool("success", false)) {
+                            success.incrementAndGet();
+                        } else {
+                            failures.computeIfAbsent(result.getStr("errorMsg"), k -> new AtomicInteger()).incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        errors.incrementAndGet();
+                    }
+                    latencies[i] = System.nanoTime() - begin;
+                }
+            });
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.MINUTES);
+        long elapsed = System.nanoTime() - begin;
+
+        // 4.等待消息队列中的订单全部落库
+        String ordersOfVoucher = ordersOfVoucher(app.getBean(VoucherOrderShards.class));
+        long deadline = System.currentTimeMillis() + 30000;
+        int orders;
+        while ((orders = count(jdbc, "SELECT COUNT(*) FROM " + ordersOfVoucher, voucherId)) < success.get()
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(200);
+        }
+
+        // 5.校验
+        SeckillKeys seckillKeys = app.getBean(SeckillKeys.class);
+        long redisStock = Long.parseLong(redis.opsForValue().get(seckillKeys.stockKey(voucherId)));
+        Long redisBuyers = redis.opsForSet().size(seckillKeys.orderKey(voucherId));
+        int dbStock = count(jdbc, "SELECT stock FROM tb_seckill_voucher WHERE voucher_id = ?", voucherId);
+        int buyers = count(jdbc, "SELECT COUNT(DISTINCT user_id) FROM " + ordersOfVoucher, voucherId);
+        Map<String, Boolean> checks = new LinkedHashMap<>();
+        checks.put("redis库存不为负", redisStock >= 0);
+        checks.put("数据库库存不为负", dbStock >= 0);
+        checks.put("成功数不超过库存", success.get() <= stock);
+        checks.put("库存扣减与成功数一致", stock - redisStock == success.get() && stock - dbStock == success.get());
+        checks.put("订单全部落库", orders == success.get());
+        checks.put("一人一单", buyers == orders && redisBuyers != null && redisBuyers == success.get());
+
+        // 6.输出报告
+        Arrays.sort(latencies);
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("users", users);
+        report.put("attempts", attempts);
+        report.put("concurrency", concurrency);
+        report.put("stock", stock);
+        report.put("requests", total);
+        report.put("elapsedMillis", TimeUnit.NANOSECONDS.toMillis(elapsed));
+        report.put("throughput", Math.round(total * 1e9 / elapsed));
+        report.put("latencyMillis", LoadTestApp.percentiles(latencies));
+        report.put("success", success.get());
+        report.put("failures", failures);
+        report.put("errors", errors.get());
+        report.put("orders", orders);
+        report.put("checks", checks);
+        LoadTestApp.report(report);
+        return errors.get() == 0 && !checks.containsValue(false);
+    }
+
+    /**
+     * 压测期间的订单都在当月的分表，跨月时还有下个月的分表
+     */
+    private static String ordersOfVoucher(VoucherOrderShards shards) {
+        List<String> selects = new ArrayList<>();
+        for (String table : shards.tablesSince(LocalDateTime.now().minusHours(1))) {
+            selects.add("SELECT user_id FROM " + table + " WHERE voucher_id = ?1");
+        }
+        return "(" + String.join(" UNION ALL ", selects) + ") o";
+    }
+
+    private static int count(JdbcTemplate jdbc, String sql, Object... args) {
+        Integer count = jdbc.queryForObject(sql, Integer.class, args);
+        return count == null ? 0 : count;
+    }
+}
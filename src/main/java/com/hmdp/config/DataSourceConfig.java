@@ -0,0 +1,75 @@
+package com.hmdp.config;
+
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.utils.ReadWriteRoutingDataSource;
+import com.hmdp.utils.ReadWriteRoutingInterceptor;
+import com.hmdp.utils.RecentWriteTracker;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 配置了hmdp.datasource.replicas时启用读写分离，替代Spring Boot自动配置的数据源：
+ * 主库沿用spring.datasource和spring.datasource.hikari，每个副本是一个独立的Hikari连接池，属性与spring.datasource.hikari相同，
+ * 没有配置的账号、密码和驱动沿用主库的。未配置副本时不生效，所有读写都走spring.datasource
+ */
+@Configuration
+@ConditionalOnProperty(name = "hmdp.datasource.replicas[0].jdbc-url")
+public class DataSourceConfig {
+
+    @Bean
+    public ReadWriteRoutingDataSource dataSource(
+            DataSourceProperties properties, Environment environment, StringRedisTemplate stringRedisTemplate,
+            @Value("${hmdp.datasource.read-your-writes-window:2s}") Duration readYourWritesWindow) {
+        Binder binder = Binder.get(environment);
+        // 1.主库连接池
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        binder.bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        if (primary.getPoolName() == null) {
+            primary.setPoolName("primary");
+        }
+        primary.setMetricRegistry(Metrics.globalRegistry);
+        // 2.副本连接池
+        List<HikariConfig> configs = binder.bind("hmdp.datasource.replicas", Bindable.listOf(HikariConfig.class))
+                .orElse(Collections.emptyList());
+        List<HikariDataSource> replicas = new ArrayList<>(configs.size());
+        for (int i = 0; i < configs.size(); i++) {
+            HikariConfig config = configs.get(i);
+            if (config.getUsername() == null) {
+                config.setUsername(primary.getUsername());
+                config.setPassword(primary.getPassword());
+            }
+            if (config.getDriverClassName() == null && StrUtil.isNotBlank(primary.getDriverClassName())) {
+                config.setDriverClassName(primary.getDriverClassName());
+            }
+            if (config.getPoolName() == null) {
+                config.setPoolName("replica-" + i);
+            }
+            config.setReadOnly(true);
+            config.setMetricRegistry(Metrics.globalRegistry);
+            replicas.add(new HikariDataSource(config));
+        }
+        // 3.用户写入后的窗口内读主库
+        return new ReadWriteRoutingDataSource(primary, replicas,
+                new RecentWriteTracker(stringRedisTemplate, readYourWritesWindow));
+    }
+
+    @Bean
+    public ReadWriteRoutingInterceptor readWriteRoutingInterceptor() {
+        return new ReadWriteRoutingInterceptor();
+    }
+}
@@ -1,6 +1,8 @@
 package com.hmdp.config;
 
 import com.hmdp.utils.RefreshTokenInterceptor;
+import com.hmdp.utils.UvCounter;
+import com.hmdp.utils.UvInterceptor;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
@@ -15,6 +17,12 @@ public class MvcConfig implements WebMvcConfigurer {
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private StringRedisTemplate replicaRedisTemplate;
+
+    @Resource
+    private UvCounter uvCounter;
+
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
         // 登录拦截器
@@ -29,6 +37,8 @@ public class MvcConfig implements WebMvcConfigurer {
                         "/user/login"
                 ).order(1);
         // token刷新的拦截器
-        registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate)).addPathPatterns("/**").order(0);
+        registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate, replicaRedisTemplate)).addPathPatterns("/**").order(0);
+        // UV统计的拦截器，需要在token刷新之后执行以识别登录用户
+        registry.addInterceptor(new UvInterceptor(uvCounter)).addPathPatterns("/shop/*", "/shop/*/detail", "/shop/*/page", "/blog/*").order(2);
     }
 }
@@ -2,16 +2,34 @@ package com.hmdp.config;
 
 import com.baomidou.mybatisplus.annotation.DbType;
 import com.baomidou.mybatisplus.extension.plugins.MybatisPlusInterceptor;
+import com.baomidou.mybatisplus.extension.plugins.handler.TableNameHandler;
+import com.baomidou.mybatisplus.extension.plugins.inner.DynamicTableNameInnerInterceptor;
 import com.baomidou.mybatisplus.extension.plugins.inner.PaginationInnerInterceptor;
+import com.hmdp.utils.QueryTimeoutInterceptor;
+import com.hmdp.utils.VoucherOrderShards;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.Collections;
+
 @Configuration
 public class MybatisConfig {
     @Bean
     public MybatisPlusInterceptor mybatisPlusInterceptor() {
         MybatisPlusInterceptor interceptor = new MybatisPlusInterceptor();
+        // 订单表按月分表，逻辑表名替换为当前线程指定的分表；需要在分页插件之前
+        TableNameHandler orderShard = (sql, tableName) -> VoucherOrderShards.routedTable();
+        interceptor.addInnerInterceptor(new DynamicTableNameInnerInterceptor(
+                Collections.singletonMap(VoucherOrderShards.LOGICAL_TABLE, orderShard)));
         interceptor.addInnerInterceptor(new PaginationInnerInterceptor(DbType.MYSQL));
         return interceptor;
     }
+
+    /**
+     * 语句超时与是否配置读写分离无关，始终注册
+     */
+    @Bean
+    public QueryTimeoutInterceptor queryTimeoutInterceptor() {
+        return new QueryTimeoutInterceptor();
+    }
 }
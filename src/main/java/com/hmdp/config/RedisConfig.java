@@ -0,0 +1,191 @@
+package com.hmdp.config;
+
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.utils.AutoBatchingConnectionFactory;
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+import io.lettuce.core.resource.ClientResources;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.data.redis.LettuceClientConfigurationBuilderCustomizer;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisConfiguration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisPassword;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.RedisStaticMasterReplicaConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+
+/**
+ * 替代Spring Boot自动配置的Lettuce连接工厂，spring.redis的连接、超时和连接池配置原样沿用。
+ * <p>
+ * 配置了spring.redis.cluster.nodes时使用集群模式，否则为单机；开启hmdp.redis.auto-batch时共享连接上的命令自动攒批发送（仅单机）。
+ * <p>
+ * 默认的stringRedisTemplate总是读写主节点，写入、锁和Lua脚本都走它。hmdp.redis.read-from=replica-preferred时
+ * 另建一个优先从副本读取的连接工厂，replicaRedisTemplate、replicaReactiveRedisTemplate供缓存查询、登录态读取这类
+ * 允许读到几毫秒前数据的只读路径使用；副本来自集群拓扑，单机时来自hmdp.redis.replicas。未开启时这两个模板就是主节点模板
+ */
+@Configuration
+public class RedisConfig {
+
+    private static final String READ_FROM_REPLICA = "replica-preferred";
+
+    @Bean
+    @Primary
+    public LettuceConnectionFactory redisConnectionFactory(
+            RedisProperties properties, ClientResources clientResources,
+            ObjectProvider<LettuceClientConfigurationBuilderCustomizer> customizers,
+            @Value("${hmdp.redis.auto-batch.enabled:false}") boolean autoBatch,
+            @Value("${hmdp.redis.auto-batch.window:0ms}") Duration window) {
+        // 1.客户端配置，连接池只提供事务、管道和阻塞命令使用的独占连接
+        LettuceClientConfiguration clientConfig = clientConfiguration(properties, clientResources, customizers, null);
+        // 2.集群模式
+        if (isCluster(properties)) {
+            if (autoBatch) {
+                throw new IllegalStateException("hmdp.redis.auto-batch只支持单机模式");
+            }
+            return new LettuceConnectionFactory(clusterConfiguration(properties), clientConfig);
+        }
+        // 3.单机模式，普通命令使用的共享连接是否自动攒批
+        RedisStandaloneConfiguration standalone = new RedisStandaloneConfiguration(properties.getHost(), properties.getPort());
+        standalone.setPassword(RedisPassword.of(properties.getPassword()));
+        standalone.setDatabase(properties.getDatabase());
+        return autoBatch
+                ? new AutoBatchingConnectionFactory(standalone, clientConfig, window)
+                : new LettuceConnectionFactory(standalone, clientConfig);
+    }
+
+    /**
+     * 优先从副本读取的连接工厂，副本不可用时读主节点；只读路径使用
+     */
+    @Bean
+    @ConditionalOnProperty(name = "hmdp.redis.read-from", havingValue = READ_FROM_REPLICA)
+    public LettuceConnectionFactory replicaRedisConnectionFactory(
+            RedisProperties properties, ClientResources clientResources,
+            ObjectProvider<LettuceClientConfigurationBuilderCustomizer> customizers,
+            @Value("${hmdp.redis.replicas:}") String[] replicas) {
+        LettuceClientConfiguration clientConfig =
+                clientConfiguration(properties, clientResources, customizers, ReadFrom.REPLICA_PREFERRED);
+        // 1.集群模式，副本从集群拓扑中发现
+        if (isCluster(properties)) {
+            return new LettuceConnectionFactory(clusterConfiguration(properties), clientConfig);
+        }
+        // 2.单机模式，主节点加上配置的副本
+        RedisStaticMasterReplicaConfiguration masterReplica =
+                new RedisStaticMasterReplicaConfiguration(properties.getHost(), properties.getPort());
+        for (String replica : replicas) {
+            if (StrUtil.isNotBlank(replica)) {
+                String node = replica.trim();
+                masterReplica.addNode(StrUtil.subBefore(node, ":", true),
+                        Integer.parseInt(StrUtil.subAfter(node, ":", true)));
+            }
+        }
+        masterReplica.setPassword(RedisPassword.of(properties.getPassword()));
+        masterReplica.setDatabase(properties.getDatabase());
+        return new LettuceConnectionFactory(masterReplica, clientConfig);
+    }
+
+    /**
+     * 自定义了replicaRedisTemplate后自动配置不再创建StringRedisTemplate，这里显式声明读写主节点的默认模板
+     */
+    @Bean
+    @Primary
+    public StringRedisTemplate stringRedisTemplate(RedisConnectionFactory redisConnectionFactory) {
+        return new StringRedisTemplate(redisConnectionFactory);
+    }
+
+    @Bean
+    public StringRedisTemplate replicaRedisTemplate(
+            StringRedisTemplate stringRedisTemplate,
+            @Qualifier("replicaRedisConnectionFactory") ObjectProvider<LettuceConnectionFactory> replica) {
+        LettuceConnectionFactory factory = replica.getIfAvailable();
+        return factory == null ? stringRedisTemplate : new StringRedisTemplate(factory);
+    }
+
+    @Bean
+    public ReactiveStringRedisTemplate replicaReactiveRedisTemplate(
+            @Qualifier("reactiveStringRedisTemplate") ReactiveStringRedisTemplate reactiveStringRedisTemplate,
+            @Qualifier("replicaRedisConnectionFactory") ObjectProvider<LettuceConnectionFactory> replica) {
+        LettuceConnectionFactory factory = replica.getIfAvailable();
+        return factory == null ? reactiveStringRedisTemplate : new ReactiveStringRedisTemplate(factory);
+    }
+
+    private static boolean isCluster(RedisProperties properties) {
+        return properties.getCluster() != null && properties.getCluster().getNodes() != null
+                && !properties.getCluster().getNodes().isEmpty();
+    }
+
+    private static RedisConfiguration clusterConfiguration(RedisProperties properties) {
+        RedisClusterConfiguration cluster = new RedisClusterConfiguration(properties.getCluster().getNodes());
+        if (properties.getCluster().getMaxRedirects() != null) {
+            cluster.setMaxRedirects(properties.getCluster().getMaxRedirects());
+        }
+        cluster.setPassword(RedisPassword.of(properties.getPassword()));
+        return cluster;
+    }
+
+    private static LettuceClientConfiguration clientConfiguration(
+            RedisProperties properties, ClientResources clientResources,
+            ObjectProvider<LettuceClientConfigurationBuilderCustomizer> customizers, ReadFrom readFrom) {
+        RedisProperties.Pool pool = properties.getLettuce().getPool();
+        LettuceClientConfiguration.LettuceClientConfigurationBuilder builder = pool == null
+                ? LettuceClientConfiguration.builder()
+                : LettucePoolingClientConfiguration.builder().poolConfig(poolConfig(pool));
+        if (properties.isSsl()) {
+            builder.useSsl();
+        }
+        if (properties.getTimeout() != null) {
+            builder.commandTimeout(properties.getTimeout());
+        }
+        if (properties.getLettuce().getShutdownTimeout() != null) {
+            builder.shutdownTimeout(properties.getLettuce().getShutdownTimeout());
+        }
+        if (properties.getClientName() != null) {
+            builder.clientName(properties.getClientName());
+        }
+        if (isCluster(properties)) {
+            // 主从切换、槽迁移后收到MOVED/ASK或连接断开时立即刷新拓扑，另外定期刷新兜底
+            builder.clientOptions(ClusterClientOptions.builder()
+                    .topologyRefreshOptions(ClusterTopologyRefreshOptions.builder()
+                            .enableAllAdaptiveRefreshTriggers()
+                            .enablePeriodicRefresh(Duration.ofSeconds(30))
+                            .build())
+                    .build());
+        }
+        builder.clientResources(clientResources);
+        customizers.orderedStream().forEach(customizer -> customizer.customize(builder));
+        // 只读的连接工厂从副本读取，不允许被customizer改掉；为null时全部读主节点
+        if (readFrom != null) {
+            builder.readFrom(readFrom);
+        }
+        return builder.build();
+    }
+
+    private static GenericObjectPoolConfig<?> poolConfig(RedisProperties.Pool pool) {
+        GenericObjectPoolConfig<?> config = new GenericObjectPoolConfig<>();
+        config.setMaxTotal(pool.getMaxActive());
+        config.setMaxIdle(pool.getMaxIdle());
+        config.setMinIdle(pool.getMinIdle());
+        if (pool.getTimeBetweenEvictionRuns() != null) {
+            config.setTimeBetweenEvictionRunsMillis(pool.getTimeBetweenEvictionRuns().toMillis());
+        }
+        if (pool.getMaxWait() != null) {
+            config.setMaxWaitMillis(pool.getMaxWait().toMillis());
+        }
+        return config;
+    }
+}
@@ -1,8 +1,11 @@
 package com.hmdp.config;
 
+import cn.hutool.core.util.StrUtil;
 import org.redisson.Redisson;
 import org.redisson.api.RedissonClient;
 import org.redisson.config.Config;
+import org.redisson.config.ReadMode;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -10,11 +13,20 @@ import org.springframework.context.annotation.Configuration;
 public class RedissonConfig {
 
     @Bean
-    public RedissonClient redissonClient(){
-        // 配置
+    public RedissonClient redissonClient(RedisProperties properties){
+        // 配置，与spring.redis使用同一个redis
         Config config = new Config();
-        config.useSingleServer().setAddress("redis://192.168.150.101:6379")
-                .setPassword("123321");
+        RedisProperties.Cluster cluster = properties.getCluster();
+        if (cluster != null && cluster.getNodes() != null && !cluster.getNodes().isEmpty()) {
+            // 集群模式，锁的读写都在主节点上，不能读到副本上过期的锁状态
+            config.useClusterServers()
+                    .addNodeAddress(cluster.getNodes().stream().map(node -> "redis://" + node).toArray(String[]::new))
+                    .setReadMode(ReadMode.MASTER)
+                    .setPassword(StrUtil.emptyToNull(properties.getPassword()));
+        } else {
+            config.useSingleServer().setAddress("redis://" + properties.getHost() + ":" + properties.getPort())
+                    .setPassword(StrUtil.emptyToNull(properties.getPassword()));
+        }
         // 创建RedissonClient对象
         return Redisson.create(config);
     }
@@ -0,0 +1,32 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.VirtualThreads;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 开启虚拟线程时，Tomcat为每个请求创建一个虚拟线程，不再受server.tomcat.threads.max限制，
+ * 并发上限由server.tomcat.max-connections决定
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = VirtualThreads.PROPERTY, havingValue = "true")
+public class VirtualThreadConfig {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadExecutorCustomizer() {
+        return protocolHandler -> {
+            ExecutorService executor = VirtualThreads.newExecutor("tomcat-handler-", null);
+            if (executor != null) {
+                protocolHandler.setExecutor(executor);
+                log.info("Tomcat请求处理使用虚拟线程");
+            }
+        };
+    }
+}
@@ -1,9 +1,12 @@
 package com.hmdp.controller;
 
 
-import org.springframework.web.bind.annotation.RequestMapping;
+import com.hmdp.dto.Result;
+import com.hmdp.entity.BlogComments;
+import com.hmdp.service.IBlogCommentsService;
+import org.springframework.web.bind.annotation.*;
 
-import org.springframework.web.bind.annotation.RestController;
+import javax.annotation.Resource;
 
 /**
  * <p>
@@ -17,4 +20,25 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping("/blog-comments")
 public class BlogCommentsController {
 
+    @Resource
+    private IBlogCommentsService blogCommentsService;
+
+    @PostMapping
+    public Result saveComment(@RequestBody BlogComments comment) {
+        return blogCommentsService.saveComment(comment);
+    }
+
+    @GetMapping("/of/blog")
+    public Result queryCommentsOfBlog(
+            @RequestParam("blogId") Long blogId,
+            @RequestParam(value = "lastId", required = false) Long lastId) {
+        return blogCommentsService.queryCommentsOfBlog(blogId, lastId);
+    }
+
+    @GetMapping("/replies")
+    public Result queryReplies(
+            @RequestParam("parentId") Long parentId,
+            @RequestParam(value = "lastId", required = false) Long lastId) {
+        return blogCommentsService.queryReplies(parentId, lastId);
+    }
 }
@@ -8,6 +8,7 @@ import com.hmdp.entity.Shop;
 import com.hmdp.service.IShopService;
 import com.hmdp.utils.SystemConstants;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
 
 import javax.annotation.Resource;
 
@@ -32,8 +33,28 @@ public class ShopController {
      * @return 商铺详情数据
      */
     @GetMapping("/{id}")
-    public Result queryShopById(@PathVariable("id") Long id) {
-        return Result.ok(shopService.getById(id));
+    public Mono<Result> queryShopById(@PathVariable("id") Long id) {
+        return shopService.queryShopById(id);
+    }
+
+    /**
+     * 查询商铺详情页，包含优惠券、访客数和附近商铺
+     * @param id 商铺id
+     * @return 商铺详情页数据
+     */
+    @GetMapping("/{id}/detail")
+    public Mono<Result> queryShopDetail(@PathVariable("id") Long id) {
+        return shopService.queryShopDetail(id);
+    }
+
+    /**
+     * 查询商铺详情页，商铺、优惠券、探店笔记和作者一次返回
+     * @param id 商铺id
+     * @return 商铺详情页数据，degraded中列出超时或失败的部分
+     */
+    @GetMapping("/{id}/page")
+    public Result queryShopPage(@PathVariable("id") Long id) {
+        return shopService.queryShopPage(id);
     }
 
     /**
@@ -43,10 +64,8 @@ public class ShopController {
      */
     @PostMapping
     public Result saveShop(@RequestBody Shop shop) {
-        // 写入数据库
-        shopService.save(shop);
-        // 返回店铺id
-        return Result.ok(shop.getId());
+        // 写入数据库和搜索索引，返回店铺id
+        return shopService.saveShop(shop);
     }
 
     /**
@@ -56,9 +75,8 @@ public class ShopController {
      */
     @PutMapping
     public Result updateShop(@RequestBody Shop shop) {
-        // 写入数据库
-        shopService.updateById(shop);
-        return Result.ok();
+        // 写入数据库，删除缓存，更新搜索索引
+        return shopService.update(shop);
     }
 
     /**
@@ -80,6 +98,22 @@ public class ShopController {
         return Result.ok(page.getRecords());
     }
 
+    /**
+     * 根据商铺类型游标分页查询商铺信息，翻到很深的页也不会变慢
+     * @param typeId 商铺类型
+     * @param sortBy 排序方式，id或score，默认id
+     * @param cursor 上一页返回的游标，第一页不传
+     * @return 商铺列表和下一页游标
+     */
+    @GetMapping("/of/type/cursor")
+    public Result queryShopByTypeCursor(
+            @RequestParam("typeId") Long typeId,
+            @RequestParam(value = "sortBy", defaultValue = "id") String sortBy,
+            @RequestParam(value = "cursor", required = false) String cursor
+    ) {
+        return shopService.queryShopByType(typeId, sortBy, cursor);
+    }
+
     /**
      * 根据商铺名称关键字分页查询商铺信息
      * @param name 商铺名称关键字
@@ -91,11 +125,39 @@ public class ShopController {
             @RequestParam(value = "name", required = false) String name,
             @RequestParam(value = "current", defaultValue = "1") Integer current
     ) {
+        if (StrUtil.isNotBlank(name)) {
+            // 有关键字，走搜索索引
+            int size = SystemConstants.MAX_PAGE_SIZE;
+            return Result.ok(shopService.searchShops(name, (current - 1) * size, size));
+        }
         // 根据类型分页查询
         Page<Shop> page = shopService.query()
-                .like(StrUtil.isNotBlank(name), "name", name)
                 .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
         // 返回数据
         return Result.ok(page.getRecords());
     }
+
+    /**
+     * 商铺名称自动补全
+     * @param prefix 已输入的名称前缀
+     * @return 名称以前缀开头的商铺，只包含id、名称和商圈
+     */
+    @GetMapping("/suggest")
+    public Result suggestShops(@RequestParam("prefix") String prefix) {
+        return shopService.suggestShops(prefix);
+    }
+
+    /**
+     * 根据商铺名称关键字游标分页查询商铺信息
+     * @param name 商铺名称关键字
+     * @param cursor 上一页返回的游标，第一页不传
+     * @return 商铺列表和下一页游标
+     */
+    @GetMapping("/of/name/cursor")
+    public Result queryShopByNameCursor(
+            @RequestParam(value = "name", required = false) String name,
+            @RequestParam(value = "cursor", required = false) String cursor
+    ) {
+        return shopService.queryShopByName(name, cursor);
+    }
 }
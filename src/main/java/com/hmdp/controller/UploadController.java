@@ -1,63 +1,152 @@
 package com.hmdp.controller;
 
-import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.util.StrUtil;
 import com.hmdp.dto.Result;
-import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.ByteRange;
+import com.hmdp.utils.ImageStore;
+import com.hmdp.utils.ImageThumbnails;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.UUID;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 @Slf4j
 @RestController
 @RequestMapping("upload")
 public class UploadController {
 
+    @Resource
+    private ImageStore imageStore;
+
+    @Resource
+    private ImageThumbnails imageThumbnails;
+
     @PostMapping("blog")
     public Result uploadImage(@RequestParam("file") MultipartFile image) {
-        try {
-            // 获取原始文件名称
-            String originalFilename = image.getOriginalFilename();
-            // 生成新文件名
-            String fileName = createNewFileName(originalFilename);
-            // 保存文件
-            image.transferTo(new File(SystemConstants.IMAGE_UPLOAD_DIR, fileName));
-            // 返回结果
-            log.debug("文件上传成功，{}", fileName);
-            return Result.ok(fileName);
+        // 获取原始文件后缀
+        String suffix = StrUtil.subAfter(image.getOriginalFilename(), ".", true);
+        try (InputStream in = image.getInputStream()) {
+            return save(in, suffix);
+        } catch (IOException e) {
+            throw new RuntimeException("文件上传失败", e);
+        }
+    }
+
+    /**
+     * 请求体即图片内容，不经过multipart解析和临时文件，直接流式写入存储
+     * @param suffix 文件后缀，例如jpg
+     */
+    @PostMapping("blog/stream")
+    public Result uploadImageStream(@RequestParam("suffix") String suffix, HttpServletRequest request) {
+        try (InputStream in = request.getInputStream()) {
+            return save(in, suffix);
         } catch (IOException e) {
             throw new RuntimeException("文件上传失败", e);
         }
     }
 
+    /**
+     * 读取图片，支持ETag和单段Range；容器支持时用sendfile零拷贝发送
+     * @param name 上传返回的文件名
+     * @param size 缩略图尺寸s、m、l，不传返回原图
+     */
+    @GetMapping("/blog/view")
+    public void viewBlogImg(@RequestParam("name") String name,
+                            @RequestParam(value = "size", required = false) String size,
+                            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        // 1.查找文件，缺失的缩略图按需生成
+        Path path;
+        try {
+            path = imageThumbnails.get(name, ImageThumbnails.Size.of(size));
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        if (path == null) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        // 2.文件名由内容摘要生成，内容不会变化，可以永久缓存
+        long length = Files.size(path);
+        String etag = "\"" + path.getFileName() + "-" + length + "\"";
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "public, max-age=31536000, immutable");
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setContentType(MediaTypeFactory.getMediaType(path.getFileName().toString())
+                .map(Object::toString).orElse("application/octet-stream"));
+        if (etag.equals(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        // 3.解析Range，只支持单段；无法解析的Range忽略并返回整个文件，超出文件的范围返回416
+        long start = 0;
+        long end = length - 1;
+        ByteRange range = ByteRange.parse(request.getHeader(HttpHeaders.RANGE), length);
+        if (range != null) {
+            if (!range.isSatisfiable()) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            start = range.getStart();
+            end = range.getEnd();
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+        }
+        long count = end - start + 1;
+        response.setContentLengthLong(count);
+        // 4.Tomcat支持sendfile时交给容器发送，否则用FileChannel.transferTo写出
+        if (Boolean.TRUE.equals(request.getAttribute("org.apache.tomcat.sendfile.support"))) {
+            request.setAttribute("org.apache.tomcat.sendfile.filename", path.toAbsolutePath().toString());
+            request.setAttribute("org.apache.tomcat.sendfile.start", start);
+            request.setAttribute("org.apache.tomcat.sendfile.end", end + 1);
+            return;
+        }
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position <= end) {
+                position += in.transferTo(position, end + 1 - position, out);
+            }
+        }
+    }
+
     @GetMapping("/blog/delete")
     public Result deleteBlogImg(@RequestParam("name") String filename) {
-        File file = new File(SystemConstants.IMAGE_UPLOAD_DIR, filename);
-        if (file.isDirectory()) {
-            return Result.fail("错误的文件名称");
+        try {
+            imageStore.delete(filename);
+        } catch (IllegalArgumentException e) {
+            return Result.fail(e.getMessage());
+        } catch (IOException e) {
+            throw new RuntimeException("文件删除失败", e);
         }
-        FileUtil.del(file);
         return Result.ok();
     }
 
-    private String createNewFileName(String originalFilename) {
-        // 获取后缀
-        String suffix = StrUtil.subAfter(originalFilename, ".", true);
-        // 生成目录
-        String name = UUID.randomUUID().toString();
-        int hash = name.hashCode();
-        int d1 = hash & 0xF;
-        int d2 = (hash >> 4) & 0xF;
-        // 判断目录是否存在
-        File dir = new File(SystemConstants.IMAGE_UPLOAD_DIR, StrUtil.format("/blogs/{}/{}", d1, d2));
-        if (!dir.exists()) {
-            dir.mkdirs();
-        }
-        // 生成文件名
-        return StrUtil.format("/blogs/{}/{}/{}.{}", d1, d2, name, suffix);
+    private Result save(InputStream in, String suffix) throws IOException {
+        try {
+            // 保存文件，文件名由内容摘要生成
+            String fileName = imageStore.save(in, suffix);
+            // 后台生成缩略图
+            imageThumbnails.generateAsync(fileName);
+            // 返回结果
+            log.debug("文件上传成功，{}", fileName);
+            return Result.ok(fileName);
+        } catch (IllegalArgumentException e) {
+            return Result.fail(e.getMessage());
+        }
     }
 }
@@ -4,6 +4,7 @@ package com.hmdp.controller;
 import com.hmdp.dto.LoginFormDTO;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.UserInfo;
+import com.hmdp.service.ISignService;
 import com.hmdp.service.IUserInfoService;
 import com.hmdp.service.IUserService;
 import lombok.extern.slf4j.Slf4j;
@@ -31,13 +32,16 @@ public class UserController {
     @Resource
     private IUserInfoService userInfoService;
 
+    @Resource
+    private ISignService signService;
+
     /**
      * 发送手机验证码
      */
     @PostMapping("code")
     public Result sendCode(@RequestParam("phone") String phone, HttpSession session) {
-        // TODO 发送短信验证码并保存验证码
-        return Result.fail("功能未完成");
+        // 发送短信验证码并保存验证码
+        return userService.sendCode(phone, session);
     }
 
     /**
@@ -46,8 +50,8 @@ public class UserController {
      */
     @PostMapping("/login")
     public Result login(@RequestBody LoginFormDTO loginForm, HttpSession session){
-        // TODO 实现登录功能
-        return Result.fail("功能未完成");
+        // 实现登录功能
+        return userService.login(loginForm, session);
     }
 
     /**
@@ -79,4 +83,23 @@ public class UserController {
         // 返回
         return Result.ok(info);
     }
+
+    @PostMapping("/sign")
+    public Result sign(){
+        return signService.sign();
+    }
+
+    @GetMapping("/sign/count")
+    public Result signCount(){
+        return signService.signCount();
+    }
+
+    /**
+     * 查询某月的签到日期
+     * @param month 月份，格式yyyyMM，默认当月
+     */
+    @GetMapping("/sign/month")
+    public Result signOfMonth(@RequestParam(value = "month", required = false) String month){
+        return signService.signOfMonth(month);
+    }
 }
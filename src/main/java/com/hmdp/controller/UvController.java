@@ -0,0 +1,63 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.UvCounter;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.*;
+
+import javax.annotation.Resource;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * <p>
+ *  UV统计
+ * </p>
+ */
+@RestController
+@RequestMapping("/uv")
+public class UvController {
+
+    private static final long MAX_RANGE_DAYS = 366;
+
+    @Resource
+    private UvCounter uvCounter;
+
+    /**
+     * 查询商铺在日期区间内的UV
+     * @param id 商铺id
+     * @param begin 开始日期，格式yyyy-MM-dd，默认今天
+     * @param end 结束日期，包含当天，默认今天
+     * @return UV
+     */
+    @GetMapping("/shop/{id}")
+    public Result shopUv(
+            @PathVariable("id") Long id,
+            @RequestParam(value = "begin", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate begin,
+            @RequestParam(value = "end", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate end) {
+        return count(UvCounter.TYPE_SHOP, id, begin, end);
+    }
+
+    /**
+     * 查询博文在日期区间内的UV
+     */
+    @GetMapping("/blog/{id}")
+    public Result blogUv(
+            @PathVariable("id") Long id,
+            @RequestParam(value = "begin", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate begin,
+            @RequestParam(value = "end", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate end) {
+        return count(UvCounter.TYPE_BLOG, id, begin, end);
+    }
+
+    private Result count(String type, Long id, LocalDate begin, LocalDate end) {
+        LocalDate today = LocalDate.now();
+        end = end == null ? today : end;
+        begin = begin == null ? end : begin;
+        long days = ChronoUnit.DAYS.between(begin, end) + 1;
+        if (days <= 0 || days > MAX_RANGE_DAYS) {
+            return Result.fail("日期区间不合法！");
+        }
+        return Result.ok(uvCounter.count(type, id, begin, end));
+    }
+}
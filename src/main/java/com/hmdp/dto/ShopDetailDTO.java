@@ -0,0 +1,25 @@
+package com.hmdp.dto;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.Voucher;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class ShopDetailDTO {
+    private Shop shop;
+    private List<Voucher> vouchers;
+    /**
+     * 今日访客数
+     */
+    private Long uvToday;
+    /**
+     * 最近7天访客数，包含今天
+     */
+    private Long uvWeek;
+    /**
+     * 附近的同类商铺，由近到远，distance单位为米
+     */
+    private List<Shop> nearby;
+}
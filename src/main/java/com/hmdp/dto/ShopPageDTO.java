@@ -0,0 +1,22 @@
+package com.hmdp.dto;
+
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.Voucher;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class ShopPageDTO {
+    private Shop shop;
+    private List<Voucher> vouchers;
+    /**
+     * 点赞最多的几篇探店笔记，带作者昵称和头像
+     */
+    private List<Blog> blogs;
+    /**
+     * 超时或失败而降级的分支，为空表示数据完整
+     */
+    private List<String> degraded;
+}
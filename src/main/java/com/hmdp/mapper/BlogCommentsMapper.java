@@ -2,6 +2,9 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.BlogComments;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -13,4 +16,11 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface BlogCommentsMapper extends BaseMapper<BlogComments> {
 
+    /**
+     * 每条评论取最早的几条回复，每个parent_id一个走 (parent_id, id) 索引的 LIMIT 子查询，用UNION ALL合并
+     * @param parentIds 一级评论id
+     * @param limit 每条评论的回复数
+     * @return 回复，按parentIds的顺序分组，组内按id升序
+     */
+    List<BlogComments> queryReplyPreview(@Param("parentIds") List<Long> parentIds, @Param("limit") int limit);
 }
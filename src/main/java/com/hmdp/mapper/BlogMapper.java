@@ -2,6 +2,9 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.Blog;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Map;
 
 /**
  * <p>
@@ -13,4 +16,17 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface BlogMapper extends BaseMapper<Blog> {
 
+    /**
+     * 批量设置点赞数，一条多行UPDATE完成；写入的是绝对值，重复执行结果相同
+     * @param liked 博文id -> 点赞数
+     * @return 影响行数
+     */
+    int setLikedBatch(@Param("liked") Map<Long, Long> liked);
+
+    /**
+     * 批量累加评论数，一条多行UPDATE完成
+     * @param deltas 博文id -> 评论增量
+     * @return 影响行数
+     */
+    int incrCommentsBatch(@Param("deltas") Map<Long, Long> deltas);
 }
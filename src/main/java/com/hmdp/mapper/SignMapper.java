@@ -0,0 +1,25 @@
+package com.hmdp.mapper;
+
+import com.hmdp.entity.Sign;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * <p>
+ *  Mapper 接口
+ * </p>
+ *
+ * @author 虎哥
+ * @since 2021-12-22
+ */
+public interface SignMapper extends BaseMapper<Sign> {
+
+    /**
+     * 批量插入签到记录，(user_id, date) 已存在的跳过，归档失败后可以整月重试
+     * @param signs 签到记录
+     * @return 实际插入的行数
+     */
+    int insertIgnoreBatch(@Param("signs") List<Sign> signs);
+}
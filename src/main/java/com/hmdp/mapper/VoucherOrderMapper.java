@@ -2,6 +2,7 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
 
 /**
  * <p>
@@ -13,4 +14,22 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface VoucherOrderMapper extends BaseMapper<VoucherOrder> {
 
+    /**
+     * 创建一个月的订单分表，已存在时不做任何事
+     * @param table 分表名 tb_voucher_order_yyyyMM
+     * @param suffix 月份 yyyyMM，索引名带上月份
+     */
+    void createShard(@Param("table") String table, @Param("suffix") String suffix);
+
+    /**
+     * 分表前的旧表中id在[fromId, toId)的订单复制到分表，已存在的跳过
+     */
+    int copyLegacy(@Param("table") String table, @Param("fromId") long fromId, @Param("toId") long toId);
+
+    /**
+     * 分表前的旧表中不小于fromId的最小订单id，没有时返回null
+     */
+    Long selectFirstLegacyId(@Param("fromId") long fromId);
+
+    void renameShard(@Param("from") String from, @Param("to") String to);
 }
@@ -1,5 +1,6 @@
 package com.hmdp.service;
 
+import com.hmdp.dto.Result;
 import com.hmdp.entity.BlogComments;
 import com.baomidou.mybatisplus.extension.service.IService;
 
@@ -13,4 +14,19 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface IBlogCommentsService extends IService<BlogComments> {
 
+    Result saveComment(BlogComments comment);
+
+    /**
+     * 按id倒序滚动查询博文的一级评论，每条评论附带前几条回复
+     * @param blogId 博文id
+     * @param lastId 上一页最后一条评论的id，第一页不传
+     */
+    Result queryCommentsOfBlog(Long blogId, Long lastId);
+
+    /**
+     * 按id正序滚动查询一级评论下的回复
+     * @param parentId 一级评论id
+     * @param lastId 上一页最后一条回复的id，第一页不传
+     */
+    Result queryReplies(Long parentId, Long lastId);
 }
@@ -1,8 +1,11 @@
 package com.hmdp.service;
 
+import com.hmdp.dto.Result;
 import com.hmdp.entity.Blog;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -13,4 +16,26 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface IBlogService extends IService<Blog> {
 
+    Result saveBlog(Blog blog);
+
+    Result queryBlogById(Long id);
+
+    Result queryHotBlog(Integer current);
+
+    Result queryBlogOfFollow(Long max, Integer offset);
+
+    Result likeBlog(Long id);
+
+    /**
+     * 查询商铺点赞最多的探店笔记，不填充作者和点赞状态
+     * @param shopId 商铺id
+     * @param limit 条数
+     */
+    List<Blog> queryBlogOfShop(Long shopId, int limit);
+
+    /**
+     * 批量填充当前用户是否点赞，以及尚未回写数据库的点赞、评论增量
+     * @param blogs 一页博文
+     */
+    void fillLikeState(List<Blog> blogs);
 }
@@ -0,0 +1,26 @@
+package com.hmdp.service;
+
+import com.hmdp.entity.CacheOutbox;
+import com.baomidou.mybatisplus.extension.service.IService;
+
+/**
+ * <p>
+ *  服务类
+ * </p>
+ *
+ * @author 虎哥
+ * @since 2021-12-22
+ */
+public interface ICacheOutboxService extends IService<CacheOutbox> {
+
+    /**
+     * 在当前事务中登记要删除的缓存，事务提交后由中继删除，回滚则不删除；必须在事务中调用
+     */
+    void evict(String... keys);
+
+    /**
+     * 投递一批到期的失效事件，由中继线程调用
+     * @return 本批处理的事件数，小于批大小说明没有更多到期的事件
+     */
+    int relayBatch();
+}
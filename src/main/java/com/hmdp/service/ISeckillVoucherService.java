@@ -3,6 +3,8 @@ package com.hmdp.service;
 import com.hmdp.entity.SeckillVoucher;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.Collection;
+
 /**
  * <p>
  * 秒杀优惠券表，与优惠券是一对一关系 服务类
@@ -13,4 +15,19 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface ISeckillVoucherService extends IService<SeckillVoucher> {
 
+    /**
+     * 把秒杀时间写入Redis供秒杀脚本校验，同时更新本地副本
+     */
+    void saveMeta(SeckillVoucher voucher);
+
+    /**
+     * 查询秒杀时间：优先用本地副本，过期后从Redis读取，Redis中没有时从数据库加载并写入Redis
+     * @return 只有优惠券id、开始和结束时间；秒杀券不存在时返回null
+     */
+    SeckillVoucher queryMeta(Long voucherId);
+
+    /**
+     * 秒杀时间被修改后删除Redis中的数据和本地副本，下次查询时重新加载
+     */
+    void evictMeta(Collection<Long> voucherIds);
 }
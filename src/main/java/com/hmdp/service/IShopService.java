@@ -4,6 +4,10 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -16,10 +20,49 @@ public interface IShopService extends IService<Shop> {
 
     Result queryById(Long id);
 
+    /**
+     * 非阻塞查询商铺，经由缓存读取，未命中时在回源调度器上查询数据库
+     */
+    Mono<Result> queryShopById(Long id);
+
+    /**
+     * 非阻塞查询商铺详情页：商铺、优惠券、访客数和附近商铺并行查询后合并返回
+     */
+    Mono<Result> queryShopDetail(Long id);
+
+    /**
+     * 商铺详情页聚合：商铺、优惠券、探店笔记及其作者并行查询，各分支独立超时，超时的分支降级为空
+     */
+    Result queryShopPage(Long id);
+
     Shop queryWithMutex(Long id);
 
     Result update(Shop shop);
 
+    /**
+     * 按类型游标分页查询商铺，不查询总数
+     * @param typeId 商铺类型
+     * @param sortBy 排序方式，id：按id正序，score：按评分倒序
+     * @param cursor 上一页返回的游标，第一页不传
+     */
+    Result queryShopByType(Long typeId, String sortBy, String cursor);
+
+    /**
+     * 通过搜索索引查询名称或商圈包含关键字的商铺，经由商铺缓存批量加载
+     */
+    List<Shop> searchShops(String name, int offset, int limit);
+
+    /**
+     * 商铺名称自动补全
+     */
+    Result suggestShops(String prefix);
 
+    Result saveShop(Shop shop);
 
+    /**
+     * 按名称关键字游标分页查询商铺
+     * @param name 商铺名称关键字
+     * @param cursor 上一页返回的游标，第一页不传
+     */
+    Result queryShopByName(String name, String cursor);
 }
@@ -0,0 +1,27 @@
+package com.hmdp.service;
+
+import com.hmdp.dto.Result;
+import com.hmdp.entity.Sign;
+import com.baomidou.mybatisplus.extension.service.IService;
+
+/**
+ * <p>
+ *  服务类
+ * </p>
+ *
+ * @author 虎哥
+ * @since 2021-12-22
+ */
+public interface ISignService extends IService<Sign> {
+
+    Result sign();
+
+    Result signCount();
+
+    /**
+     * 查询某个月的签到情况
+     * @param month 月份，格式yyyyMM，为空表示本月
+     * @return 签到的日期（几号）列表
+     */
+    Result signOfMonth(String month);
+}
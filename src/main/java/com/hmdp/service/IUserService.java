@@ -3,9 +3,15 @@ package com.hmdp.service;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.hmdp.dto.LoginFormDTO;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 
 import javax.servlet.http.HttpSession;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 /**
  * <p>
@@ -20,4 +26,19 @@ public interface IUserService extends IService<User> {
     Result sendCode(String phone, HttpSession session);
 
     Result login(LoginFormDTO loginForm, HttpSession session);
+
+    /**
+     * 批量查询用户摘要（昵称、头像），依次查本地缓存、Redis、数据库，每级最多一次往返
+     * @param ids 用户id，可重复
+     * @return 用户id -> 用户摘要，不存在的用户不在结果中
+     */
+    Map<Long, UserDTO> queryUserSummaries(Collection<Long> ids);
+
+    /**
+     * 为一页数据批量填充作者信息，避免逐条查询用户
+     * @param records 一页数据
+     * @param userIdGetter 取作者id
+     * @param setter 回填作者摘要
+     */
+    <T> void fillUserSummaries(List<T> records, Function<T, Long> userIdGetter, BiConsumer<T, UserDTO> setter);
 }
@@ -18,4 +18,21 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
     public Result seckillVoucher(Long voucherId);
 
     Result createVoucherOrder(Long voucherId);
+
+    /**
+     * 保存订单，扣减数据库库存，由消息队列的消费线程调用
+     * @return 已经购买过或库存不足时返回false
+     */
+    boolean createVoucherOrder(VoucherOrder voucherOrder);
+
+    /**
+     * 按id查询当前用户的订单，只访问订单所在月份的分表
+     */
+    Result queryOrderById(Long orderId);
+
+    /**
+     * 按id倒序滚动查询当前用户的订单，各月分表并行查询后合并
+     * @param cursor 上一页返回的游标，第一页为空
+     */
+    Result queryMyOrders(String cursor);
 }
@@ -1,11 +1,50 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.BooleanUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.ScrollResult;
+import com.hmdp.entity.Blog;
 import com.hmdp.entity.BlogComments;
 import com.hmdp.mapper.BlogCommentsMapper;
+import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogCommentsService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.service.IUserService;
+import com.hmdp.utils.HotBlogRanker;
+import com.hmdp.utils.SimpleRedisLock;
+import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.UserHolder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.BLOG_COMMENTS_DELTA_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_COMMENTS_FLUSH_LOCK;
+import static com.hmdp.utils.RedisConstants.BLOG_COMMENTS_PROCESSING_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_COMMENTS_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_COMMENTS_SIZE;
+import static com.hmdp.utils.RedisConstants.CACHE_COMMENTS_TTL;
+import static com.hmdp.utils.RedisConstants.LOCK_COMMENTS_KEY;
+
 /**
  * <p>
  *  服务实现类
@@ -14,7 +53,276 @@ import org.springframework.stereotype.Service;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class BlogCommentsServiceImpl extends ServiceImpl<BlogCommentsMapper, BlogComments> implements IBlogCommentsService {
 
+    /**
+     * 每条一级评论随列表返回的回复数
+     */
+    private static final int REPLY_PREVIEW_SIZE = 3;
+
+    private static final int MAX_CONTENT_LENGTH = 255;
+
+    @Resource
+    private BlogMapper blogMapper;
+
+    @Resource
+    private IUserService userService;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private HotBlogRanker hotBlogRanker;
+
+    @Override
+    public Result saveComment(BlogComments comment) {
+        // 1.校验内容
+        String content = comment.getContent();
+        if (StrUtil.isBlank(content) || content.length() > MAX_CONTENT_LENGTH) {
+            return Result.fail("评论内容不能为空且不能超过" + MAX_CONTENT_LENGTH + "字！");
+        }
+        Long blogId = comment.getBlogId();
+        if (blogId == null || blogMapper.selectCount(new QueryWrapper<Blog>().eq("id", blogId)) == 0) {
+            return Result.fail("笔记不存在！");
+        }
+        // 2.校验回复的一级评论，回复只挂在一级评论下
+        long parentId = comment.getParentId() == null ? 0 : comment.getParentId();
+        if (parentId != 0) {
+            BlogComments parent = getById(parentId);
+            if (parent == null || !blogId.equals(parent.getBlogId()) || parent.getParentId() != 0) {
+                return Result.fail("回复的评论不存在！");
+            }
+        }
+        // 3.保存评论
+        comment.setId(null)
+                .setUserId(UserHolder.getUser().getId())
+                .setParentId(parentId)
+                .setAnswerId(comment.getAnswerId() == null ? parentId : comment.getAnswerId())
+                .setLiked(0)
+                .setStatus(false)
+                .setCreateTime(LocalDateTime.now())
+                .setReplies(null);
+        save(comment);
+        // 4.一次管道：累加评论数增量，一级评论插入缓存列表头部并裁剪
+        String json = parentId == 0 ? JSONUtil.toJsonStr(toCached(comment)) : null;
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.hIncrBy(BLOG_COMMENTS_DELTA_KEY, blogId.toString(), 1);
+            if (json != null) {
+                String key = CACHE_COMMENTS_KEY + blogId;
+                conn.lPushX(key, json);
+                conn.lTrim(key, 0, CACHE_COMMENTS_SIZE - 1);
+            }
+            return null;
+        });
+        // 5.计入热度排行
+        hotBlogRanker.onComment(blogId);
+        return Result.ok(comment.getId());
+    }
+
+    @Override
+    public Result queryCommentsOfBlog(Long blogId, Long lastId) {
+        // 1.查询一页一级评论
+        int size = SystemConstants.MAX_PAGE_SIZE;
+        List<BlogComments> comments = queryCommentsFromCache(blogId, lastId, size);
+        if (comments == null) {
+            comments = query()
+                    .eq("blog_id", blogId)
+                    .eq("parent_id", 0)
+                    .lt(lastId != null, "id", lastId)
+                    .orderByDesc("id")
+                    .last("limit " + size)
+                    .list();
+        }
+        if (comments.isEmpty()) {
+            return Result.ok(new ScrollResult());
+        }
+        // 2.一次查询取出本页每条评论的前几条回复，每条评论在数据库中只读取这几行
+        List<Long> ids = comments.stream().map(BlogComments::getId).collect(Collectors.toList());
+        Map<Long, List<BlogComments>> replies = getBaseMapper()
+                .queryReplyPreview(ids, REPLY_PREVIEW_SIZE)
+                .stream()
+                .collect(Collectors.groupingBy(BlogComments::getParentId));
+        List<BlogComments> all = new ArrayList<>(comments);
+        for (BlogComments comment : comments) {
+            List<BlogComments> list = replies.getOrDefault(comment.getId(), Collections.emptyList());
+            comment.setReplies(list);
+            all.addAll(list);
+        }
+        // 3.批量填充评论和回复的作者
+        fillCommentUser(all);
+        // 4.本页最后一条评论的id作为下一页游标
+        return Result.ok(toScrollResult(comments));
+    }
+
+    @Override
+    public Result queryReplies(Long parentId, Long lastId) {
+        List<BlogComments> replies = query()
+                .eq("parent_id", parentId)
+                .gt(lastId != null, "id", lastId)
+                .orderByAsc("id")
+                .last("limit " + SystemConstants.MAX_PAGE_SIZE)
+                .list();
+        if (replies.isEmpty()) {
+            return Result.ok(new ScrollResult());
+        }
+        fillCommentUser(replies);
+        return Result.ok(toScrollResult(replies));
+    }
+
+    /**
+     * 从缓存的前N条一级评论中读取一页
+     * @return 缓存无法完整覆盖这一页时返回null
+     */
+    private List<BlogComments> queryCommentsFromCache(Long blogId, Long lastId, int size) {
+        String key = CACHE_COMMENTS_KEY + blogId;
+        List<String> cached = stringRedisTemplate.opsForList().range(key, 0, -1);
+        if (CollUtil.isEmpty(cached)) {
+            if (lastId != null) {
+                return null;
+            }
+            // 1.缓存未命中，第一页时加互斥锁重建缓存，没有拿到锁的请求直接查数据库
+            String lockKey = LOCK_COMMENTS_KEY + blogId;
+            if (!BooleanUtil.isTrue(stringRedisTemplate.opsForValue().setIfAbsent(lockKey, "1", 10, TimeUnit.SECONDS))) {
+                return null;
+            }
+            try {
+                List<BlogComments> top = rebuildCache(blogId);
+                return top.size() > size ? new ArrayList<>(top.subList(0, size)) : top;
+            } finally {
+                stringRedisTemplate.delete(lockKey);
+            }
+        }
+        // 2.缓存命中，重建与写入并发时列表中可能有重复或乱序的评论，按id去重并倒序
+        TreeMap<Long, BlogComments> sorted = new TreeMap<>(Comparator.reverseOrder());
+        for (String json : cached) {
+            BlogComments comment = JSONUtil.toBean(json, BlogComments.class);
+            sorted.putIfAbsent(comment.getId(), comment);
+        }
+        // 3.跳过游标之前的评论
+        List<BlogComments> page = new ArrayList<>(size);
+        for (BlogComments comment : sorted.values()) {
+            if (lastId != null && comment.getId() >= lastId) {
+                continue;
+            }
+            page.add(comment);
+            if (page.size() == size) {
+                return page;
+            }
+        }
+        // 4.缓存列表未满说明已经包含了全部一级评论，否则剩余部分需要查数据库
+        return cached.size() < CACHE_COMMENTS_SIZE ? page : null;
+    }
+
+    /**
+     * 用前N条一级评论重建缓存：先写入临时key再RENAME，读取方不会看到写了一半的列表。
+     * 临时key的hash tag是完整的缓存key，集群模式下两者在同一个槽
+     * @return 前N条一级评论
+     */
+    private List<BlogComments> rebuildCache(Long blogId) {
+        String key = CACHE_COMMENTS_KEY + blogId;
+        List<BlogComments> top = query()
+                .eq("blog_id", blogId)
+                .eq("parent_id", 0)
+                .orderByDesc("id")
+                .last("limit " + CACHE_COMMENTS_SIZE)
+                .list();
+        if (top.isEmpty()) {
+            return top;
+        }
+        String tmpKey = "{" + key + "}:rebuild";
+        String[] values = top.stream().map(c -> JSONUtil.toJsonStr(toCached(c))).toArray(String[]::new);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.del(tmpKey);
+            conn.rPush(tmpKey, values);
+            conn.expire(tmpKey, TimeUnit.MINUTES.toSeconds(CACHE_COMMENTS_TTL));
+            conn.rename(tmpKey, key);
+            return null;
+        });
+        // 查询之后、RENAME之前写入的评论，LPUSHX时缓存还不存在而被跳过；发现这样的评论时删除缓存，下次读取时重建
+        int newer = query()
+                .eq("blog_id", blogId)
+                .eq("parent_id", 0)
+                .gt("id", top.get(0).getId())
+                .count();
+        if (newer > 0) {
+            stringRedisTemplate.delete(key);
+        }
+        return top;
+    }
+
+    /**
+     * 每隔5秒把Redis中累计的评论数增量用一条多行UPDATE回写到tb_blog。
+     * <p>
+     * 与点赞数回写相同：先RENAME为processing key，数据库更新成功后才删除，失败或中途退出时下一轮先回写遗留的processing key
+     */
+    @Scheduled(fixedDelay = 5000)
+    public void flushCommentsDelta() {
+        // 1.多实例同时只有一个回写
+        SimpleRedisLock lock = new SimpleRedisLock(BLOG_COMMENTS_FLUSH_LOCK, stringRedisTemplate);
+        if (!lock.tryLock(60)) {
+            return;
+        }
+        try {
+            // 2.没有遗留的processing key时，把新的增量整体转移过去
+            if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_COMMENTS_PROCESSING_KEY))) {
+                if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_COMMENTS_DELTA_KEY))) {
+                    return;
+                }
+                stringRedisTemplate.rename(BLOG_COMMENTS_DELTA_KEY, BLOG_COMMENTS_PROCESSING_KEY);
+            }
+            Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(BLOG_COMMENTS_PROCESSING_KEY);
+            Map<Long, Long> deltas = new HashMap<>(entries.size());
+            entries.forEach((id, value) -> {
+                long delta = Long.parseLong(value.toString());
+                if (delta != 0) {
+                    deltas.put(Long.valueOf(id.toString()), delta);
+                }
+            });
+            // 3.批量回写数据库，成功后才删除processing key
+            if (!deltas.isEmpty()) {
+                blogMapper.incrCommentsBatch(deltas);
+            }
+            stringRedisTemplate.delete(BLOG_COMMENTS_PROCESSING_KEY);
+        } catch (Exception e) {
+            // 4.回写失败，processing key保留到下一轮
+            log.error("评论数回写失败，增量保留在{}中等待下一轮", BLOG_COMMENTS_PROCESSING_KEY, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void fillCommentUser(List<BlogComments> comments) {
+        userService.fillUserSummaries(comments, BlogComments::getUserId, (comment, user) -> {
+            comment.setName(user.getNickName());
+            comment.setIcon(user.getIcon());
+        });
+    }
+
+    /**
+     * 缓存中只保存评论本身，作者和回复在读取时填充
+     */
+    private static BlogComments toCached(BlogComments comment) {
+        return new BlogComments()
+                .setId(comment.getId())
+                .setUserId(comment.getUserId())
+                .setBlogId(comment.getBlogId())
+                .setParentId(comment.getParentId())
+                .setAnswerId(comment.getAnswerId())
+                .setContent(comment.getContent())
+                .setLiked(comment.getLiked())
+                .setStatus(comment.getStatus())
+                .setCreateTime(comment.getCreateTime());
+    }
+
+    private static ScrollResult toScrollResult(List<BlogComments> comments) {
+        ScrollResult r = new ScrollResult();
+        r.setList(comments);
+        r.setMinTime(comments.get(comments.size() - 1).getId());
+        r.setOffset(0);
+        return r;
+    }
 }
@@ -1,11 +1,48 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.ScrollResult;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
 import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.service.IUserService;
+import com.hmdp.utils.FeedTimeline;
+import com.hmdp.utils.HotBlogRanker;
+import com.hmdp.utils.SimpleRedisLock;
+import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.UserHolder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.BLOG_COMMENTS_DELTA_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_COMMENTS_PROCESSING_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_HOT_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_DIRTY_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_PROCESSING_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_FLUSH_LOCK;
+
 /**
  * <p>
  *  服务实现类
@@ -14,7 +51,258 @@ import org.springframework.stereotype.Service;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IBlogService {
 
+    @Resource
+    private IUserService userService;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private HotBlogRanker hotBlogRanker;
+
+    @Resource
+    private FeedTimeline feedTimeline;
+
+    private static final DefaultRedisScript<Long> LIKE_SCRIPT;
+    static {
+        LIKE_SCRIPT = new DefaultRedisScript<>();
+        LIKE_SCRIPT.setLocation(new ClassPathResource("like.lua"));
+        LIKE_SCRIPT.setResultType(Long.class);
+    }
+
+    @Override
+    public Result queryBlogById(Long id) {
+        // 1.查询blog
+        Blog blog = getById(id);
+        if (blog == null) {
+            return Result.fail("笔记不存在！");
+        }
+        List<Blog> blogs = Collections.singletonList(blog);
+        // 2.查询blog有关的用户
+        fillBlogUser(blogs);
+        // 3.查询blog是否被点赞
+        fillLikeState(blogs);
+        return Result.ok(blog);
+    }
+
+    @Override
+    public Result saveBlog(Blog blog) {
+        // 获取登录用户
+        UserDTO user = UserHolder.getUser();
+        blog.setUserId(user.getId());
+        // 保存探店博文
+        save(blog);
+        // 计入热度排行
+        hotBlogRanker.onPublish(blog.getId());
+        // 异步推送到粉丝的时间线
+        feedTimeline.publishAsync(user.getId(), blog.getId(), System.currentTimeMillis());
+        // 返回id
+        return Result.ok(blog.getId());
+    }
+
+    @Override
+    public Result queryHotBlog(Integer current) {
+        // 1.从热度排行中查询当前页的博文id，页码小于1时按第1页，负的下标会取到排行末尾
+        int page = current == null || current < 1 ? 1 : current;
+        List<Long> ids = hotBlogRanker.queryPage(page, SystemConstants.MAX_PAGE_SIZE);
+        if (ids.isEmpty()) {
+            return Result.ok(Collections.emptyList());
+        }
+        // 2.批量查询博文，并按排行顺序排列
+        List<Blog> records = listByIdsInOrder(ids);
+        // 3.批量查询用户
+        fillBlogUser(records);
+        // 4.查询是否点赞
+        fillLikeState(records);
+        return Result.ok(records);
+    }
+
+    @Override
+    public Result queryBlogOfFollow(Long max, Integer offset) {
+        // 1.获取当前用户
+        Long userId = UserHolder.getUser().getId();
+        // 2.合并收件箱与关注的拉模式作者的发件箱，滚动分页
+        List<ZSetOperations.TypedTuple<String>> tuples = feedTimeline.scroll(
+                feedTimeline.feedKeysOf(userId), max, offset, SystemConstants.MAX_PAGE_SIZE);
+        if (tuples.isEmpty()) {
+            return Result.ok();
+        }
+        // 3.解析博文id、本页最小时间戳minTime，以及与minTime相同的元素个数
+        List<Long> ids = new ArrayList<>(tuples.size());
+        long minTime = 0;
+        int os = 1;
+        for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+            ids.add(Long.valueOf(tuple.getValue()));
+            long time = tuple.getScore().longValue();
+            if (time == minTime) {
+                os++;
+            } else {
+                minTime = time;
+                os = 1;
+            }
+        }
+        // 整页时间戳都等于max时，需要累加上一页的偏移量
+        os = minTime == max ? os + offset : os;
+        // 4.批量查询博文、作者和点赞状态
+        List<Blog> blogs = listByIdsInOrder(ids);
+        fillBlogUser(blogs);
+        fillLikeState(blogs);
+        // 5.封装并返回
+        ScrollResult r = new ScrollResult();
+        r.setList(blogs);
+        r.setOffset(os);
+        r.setMinTime(minTime);
+        return Result.ok(r);
+    }
+
+    @Override
+    public Result likeBlog(Long id) {
+        // 1.获取登录用户
+        Long userId = UserHolder.getUser().getId();
+        // 2.执行lua脚本，原子地切换点赞状态，脚本只访问这篇博文自己的key
+        Long likedAt = stringRedisTemplate.execute(
+                LIKE_SCRIPT,
+                Collections.singletonList(BLOG_LIKED_KEY + id),
+                userId.toString(), String.valueOf(System.currentTimeMillis())
+        );
+        if (likedAt == null) {
+            return Result.fail("点赞失败！");
+        }
+        // 3.在脚本外记录待回写的博文并累加热度，数据库由定时任务按点赞集合的大小批量回写
+        stringRedisTemplate.opsForSet().add(BLOG_LIKED_DIRTY_KEY, id.toString());
+        if (likedAt > 0) {
+            hotBlogRanker.onLike(id, likedAt);
+        } else {
+            hotBlogRanker.onUnlike(id, -likedAt);
+        }
+        return Result.ok();
+    }
+
+    @Override
+    public List<Blog> queryBlogOfShop(Long shopId, int limit) {
+        // 按 (shop_id, liked) 索引倒序取前几条
+        return query()
+                .eq("shop_id", shopId)
+                .orderByDesc("liked")
+                .last("limit " + limit)
+                .list();
+    }
+
+    @Override
+    public void fillLikeState(List<Blog> blogs) {
+        if (CollUtil.isEmpty(blogs)) {
+            return;
+        }
+        UserDTO user = UserHolder.getUser();
+        String[] ids = blogs.stream().map(blog -> blog.getId().toString()).toArray(String[]::new);
+        // 1.一次管道：每篇博文一个ZSCORE和一个ZCARD，外加两个HMGET取未回写、正在回写的评论增量
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            if (user != null) {
+                String userId = user.getId().toString();
+                for (String id : ids) {
+                    conn.zScore(BLOG_LIKED_KEY + id, userId);
+                }
+            }
+            for (String id : ids) {
+                conn.zCard(BLOG_LIKED_KEY + id);
+            }
+            conn.hMGet(BLOG_COMMENTS_DELTA_KEY, ids);
+            conn.hMGet(BLOG_COMMENTS_PROCESSING_KEY, ids);
+            return null;
+        });
+        // 2.按顺序回填
+        int offset = user == null ? 0 : blogs.size();
+        @SuppressWarnings("unchecked")
+        List<String> commentDeltas = (List<String>) results.get(results.size() - 2);
+        @SuppressWarnings("unchecked")
+        List<String> processingCommentDeltas = (List<String>) results.get(results.size() - 1);
+        for (int i = 0; i < blogs.size(); i++) {
+            Blog blog = blogs.get(i);
+            blog.setIsLike(user != null && results.get(i) != null);
+            // 点赞集合是点赞数的来源，集合为空时可能还没有人通过Redis点赞，沿用数据库的值
+            Long liked = (Long) results.get(offset + i);
+            if (liked != null && liked > 0) {
+                blog.setLiked(liked.intValue());
+            }
+            int commentDelta = parseDelta(commentDeltas, i) + parseDelta(processingCommentDeltas, i);
+            if (commentDelta != 0) {
+                int comments = blog.getComments() == null ? 0 : blog.getComments();
+                blog.setComments(Math.max(comments + commentDelta, 0));
+            }
+        }
+    }
+
+    private static int parseDelta(List<String> deltas, int i) {
+        String delta = deltas == null ? null : deltas.get(i);
+        return StrUtil.isBlank(delta) ? 0 : Integer.parseInt(delta);
+    }
+
+    /**
+     * 每隔5秒把点赞数有变化的博文用一条多行UPDATE回写到tb_blog，写入的是点赞集合的大小。
+     * <p>
+     * 先把待回写的博文id集合RENAME为processing key，数据库更新成功后才删除；回写失败或进程中途退出时processing key保留，
+     * 下一轮重新读取点赞集合的大小再写一次。写入的是绝对值，重复回写不会让点赞数漂移，
+     * 点赞脚本和记录博文id之间退出时，这篇博文下次被点赞时回写
+     */
+    @Scheduled(fixedDelay = 5000)
+    public void flushLiked() {
+        // 1.多实例同时只有一个回写，避免同一个processing key被处理两次
+        SimpleRedisLock lock = new SimpleRedisLock(BLOG_LIKED_FLUSH_LOCK, stringRedisTemplate);
+        if (!lock.tryLock(60)) {
+            return;
+        }
+        try {
+            // 2.没有上一轮遗留的processing key时，把待回写的博文id整体转移过去，点赞继续写入新的集合
+            if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_LIKED_PROCESSING_KEY))) {
+                if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_LIKED_DIRTY_KEY))) {
+                    return;
+                }
+                stringRedisTemplate.rename(BLOG_LIKED_DIRTY_KEY, BLOG_LIKED_PROCESSING_KEY);
+            }
+            List<String> ids = new ArrayList<>(stringRedisTemplate.opsForSet().members(BLOG_LIKED_PROCESSING_KEY));
+            // 3.一次管道查询各篇博文当前的点赞集合大小
+            List<Object> counts = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (String id : ids) {
+                    conn.zCard(BLOG_LIKED_KEY + id);
+                }
+                return null;
+            });
+            Map<Long, Long> liked = new HashMap<>(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                liked.put(Long.valueOf(ids.get(i)), (Long) counts.get(i));
+            }
+            // 4.批量回写数据库，成功后才删除processing key
+            if (!liked.isEmpty()) {
+                getBaseMapper().setLikedBatch(liked);
+            }
+            stringRedisTemplate.delete(BLOG_LIKED_PROCESSING_KEY);
+        } catch (Exception e) {
+            // 5.回写失败，processing key保留到下一轮
+            log.error("点赞数回写失败，待回写的博文保留在{}中等待下一轮", BLOG_LIKED_PROCESSING_KEY, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<Blog> listByIdsInOrder(List<Long> ids) {
+        Map<Long, Blog> blogMap = listByIds(ids).stream()
+                .collect(Collectors.toMap(Blog::getId, Function.identity()));
+        return ids.stream()
+                .map(blogMap::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private void fillBlogUser(List<Blog> blogs) {
+        userService.fillUserSummaries(blogs, Blog::getUserId, (blog, user) -> {
+            blog.setName(user.getNickName());
+            blog.setIcon(user.getIcon());
+        });
+    }
 }
@@ -0,0 +1,211 @@
+package com.hmdp.service.impl;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.entity.CacheOutbox;
+import com.hmdp.mapper.CacheOutboxMapper;
+import com.hmdp.service.ICacheOutboxService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ * 缓存失效的事务发件箱：写数据库的事务中登记要删除的缓存key，提交后由中继批量删除，
+ * 写路径上没有同步的Redis调用，Redis暂时不可用也不会丢失失效事件。
+ * 每个key删除两次：提交后立即删除一次，延迟hmdp.cache.outbox.second-delete-delay后再删除一次，
+ * 清掉删除前后并发读取时用旧数据回填的缓存。
+ * </p>
+ * <p>
+ * 中继在事务提交后立即唤醒，另外每秒轮询一次，处理失败重试和到期的第二次删除；删除是幂等的，多个实例的中继用行锁分担到期的事件。
+ * hmdp.cache.outbox.lag：从登记到第一次删除的延迟；hmdp.cache.outbox.failures：删除失败的事件数
+ * </p>
+ *
+ * @author 虎哥
+ * @since 2021-12-22
+ */
+@Slf4j
+@Service
+public class CacheOutboxServiceImpl extends ServiceImpl<CacheOutboxMapper, CacheOutbox> implements ICacheOutboxService {
+
+    private static final int STAGE_FIRST_DELETE = 0;
+    private static final int STAGE_SECOND_DELETE = 1;
+    private static final int RELAY_BATCH_SIZE = 500;
+    private static final long MAX_RETRY_DELAY_MILLIS = 60000;
+
+    private static final Timer OUTBOX_LAG = Metrics.timer("hmdp.cache.outbox.lag");
+    private static final Counter OUTBOX_FAILURES = Metrics.counter("hmdp.cache.outbox.failures");
+
+    /**
+     * 中继线程，同一时刻只有一个投递任务，其余唤醒合并到下一次
+     */
+    private static final ExecutorService RELAY_EXECUTOR = new ThreadPoolExecutor(
+            1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            ThreadFactoryBuilder.create().setNamePrefix("cache-outbox-").setDaemon(true).build());
+
+    private final AtomicBoolean relayPending = new AtomicBoolean();
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 自身的代理对象，中继线程通过它调用事务方法
+     */
+    @Lazy
+    @Resource
+    private ICacheOutboxService proxy;
+
+    @Resource
+    private DataSource dataSource;
+
+    @Value("${hmdp.cache.outbox.second-delete-delay:1s}")
+    private Duration secondDeleteDelay;
+
+    /**
+     * 读取到期事件时的加锁方式，见init
+     */
+    private String lockClause;
+
+    /**
+     * 多个实例的中继同时轮询时，锁住取出的事件直到本批处理完：
+     * MySQL 8.0起用SKIP LOCKED跳过其它实例正在处理的事件，各实例并行投递不同的批次；
+     * 更早的版本和其它数据库只能用FOR UPDATE，其它实例等待这一批提交后再取
+     */
+    @PostConstruct
+    public void init() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            DatabaseMetaData meta = connection.getMetaData();
+            boolean skipLocked = "MySQL".equalsIgnoreCase(meta.getDatabaseProductName())
+                    && meta.getDatabaseMajorVersion() >= 8;
+            lockClause = skipLocked ? " for update skip locked" : " for update";
+        }
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void evict(String... keys) {
+        // 1.与业务数据在同一个事务中写入
+        LocalDateTime now = LocalDateTime.now();
+        List<CacheOutbox> events = new ArrayList<>(keys.length);
+        for (String key : keys) {
+            events.add(new CacheOutbox().setCacheKey(key).setStage(STAGE_FIRST_DELETE).setAttempts(0)
+                    .setNextTime(now).setCreateTime(now));
+        }
+        saveBatch(events);
+        // 2.提交后立即唤醒中继，不等下一次轮询
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                wakeUpRelay();
+            }
+        });
+    }
+
+    @Scheduled(fixedDelay = 1000)
+    public void pollOutbox() {
+        wakeUpRelay();
+    }
+
+    private void wakeUpRelay() {
+        if (!relayPending.compareAndSet(false, true)) {
+            return;
+        }
+        RELAY_EXECUTOR.execute(() -> {
+            relayPending.set(false);
+            try {
+                // 一批满了说明可能还有到期的事件，继续投递
+                while (proxy.relayBatch() == RELAY_BATCH_SIZE) {
+                    log.debug("缓存失效事件积压，继续投递");
+                }
+            } catch (Exception e) {
+                log.error("投递缓存失效事件失败", e);
+            }
+        });
+    }
+
+    /**
+     * 在读写事务中加锁读取，读写分离时同样读主库，不会重复投递副本上还没删除的事件，
+     * 多个实例也不会同时投递同一批事件
+     */
+    @Override
+    @Transactional
+    public int relayBatch() {
+        // 1.取出到期的事件
+        LocalDateTime now = LocalDateTime.now();
+        List<CacheOutbox> events = query()
+                .le("next_time", now)
+                .orderByAsc("id")
+                .last("limit " + RELAY_BATCH_SIZE + lockClause)
+                .list();
+        if (events.isEmpty()) {
+            return 0;
+        }
+        List<Long> ids = events.stream().map(CacheOutbox::getId).collect(Collectors.toList());
+        // 2.一次删除这批事件的所有key
+        Set<String> keys = events.stream().map(CacheOutbox::getCacheKey).collect(Collectors.toSet());
+        try {
+            stringRedisTemplate.delete(keys);
+        } catch (Exception e) {
+            // 3.删除失败，按失败次数退避后重试
+            int attempts = events.stream().mapToInt(CacheOutbox::getAttempts).max().orElse(0) + 1;
+            long delay = Math.min(1000L << Math.min(attempts, 16), MAX_RETRY_DELAY_MILLIS);
+            update().setSql("attempts = attempts + 1")
+                    .set("next_time", now.plus(Duration.ofMillis(delay)))
+                    .in("id", ids)
+                    .update();
+            OUTBOX_FAILURES.increment(events.size());
+            log.warn("删除缓存失败，{}毫秒后重试，size={}, attempts={}", delay, events.size(), attempts, e);
+            return 0;
+        }
+        // 4.第一次删除完成的事件等待第二次删除，第二次删除完成的事件移除
+        List<Long> firstDeleted = new ArrayList<>();
+        List<Long> secondDeleted = new ArrayList<>();
+        for (CacheOutbox event : events) {
+            if (event.getStage() == STAGE_FIRST_DELETE) {
+                firstDeleted.add(event.getId());
+                OUTBOX_LAG.record(Duration.between(event.getCreateTime(), now));
+            } else {
+                secondDeleted.add(event.getId());
+            }
+        }
+        if (!firstDeleted.isEmpty()) {
+            update().set("stage", STAGE_SECOND_DELETE)
+                    .set("attempts", 0)
+                    .set("next_time", now.plus(secondDeleteDelay))
+                    .in("id", firstDeleted)
+                    .update();
+        }
+        if (!secondDeleted.isEmpty()) {
+            removeByIds(secondDeleted);
+        }
+        return events.size();
+    }
+}
@@ -1,11 +1,43 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.core.collection.CollUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Follow;
 import com.hmdp.mapper.FollowMapper;
 import com.hmdp.service.IFollowService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.service.IUserService;
+import com.hmdp.utils.FeedTimeline;
+import com.hmdp.utils.FollowsCache;
+import com.hmdp.utils.SortedLongArrays;
+import com.hmdp.utils.UserHolder;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.FOLLOWS_INVALIDATE_TOPIC;
+import static com.hmdp.utils.RedisConstants.FOLLOWS_LARGE_SIZE;
+
 /**
  * <p>
  *  服务实现类
@@ -17,4 +49,171 @@ import org.springframework.stereotype.Service;
 @Service
 public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> implements IFollowService {
 
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private IUserService userService;
+
+    @Resource
+    private FollowsCache followsCache;
+
+    @Resource
+    private FeedTimeline feedTimeline;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    /**
+     * 关注数超大的用户，在本地以有序long数组缓存其关注集合，60秒过期；
+     * 关注、取关时通过 follows:invalidate 频道通知所有实例删除，消息丢失时最多60秒后过期
+     */
+    private final LRUCache<Long, long[]> largeFollowsCache = CacheUtil.newLRUCache(1000, 60 * 1000L);
+
+    private RTopic invalidateTopic;
+
+    @PostConstruct
+    private void init() {
+        invalidateTopic = redissonClient.getTopic(FOLLOWS_INVALIDATE_TOPIC, StringCodec.INSTANCE);
+        invalidateTopic.addListener(String.class, (channel, userId) -> largeFollowsCache.remove(Long.valueOf(userId)));
+    }
+
+    @Override
+    public Result follow(Long followUserId, Boolean isFollow) {
+        // 1.获取登录用户
+        Long userId = UserHolder.getUser().getId();
+        if (userId.equals(followUserId)) {
+            return Result.fail("不能关注自己");
+        }
+        String key = FollowsCache.key(userId);
+        // 2.判断到底是关注还是取关
+        if (Boolean.TRUE.equals(isFollow)) {
+            // 3.关注，先写数据库，再写Redis集合
+            Follow follow = new Follow();
+            follow.setUserId(userId);
+            follow.setFollowUserId(followUserId);
+            try {
+                save(follow);
+            } catch (DuplicateKeyException e) {
+                // 已经关注过，只需保证Redis一致
+            }
+            followsCache.ensureLoaded(userId);
+            stringRedisTemplate.opsForSet().add(key, followUserId.toString());
+            // 关注前发布的博文没有推送过，补进收件箱
+            feedTimeline.backfill(userId, followUserId);
+        } else {
+            // 4.取关，删除 delete from tb_follow where user_id = ? and follow_user_id = ?
+            remove(new QueryWrapper<Follow>().eq("user_id", userId).eq("follow_user_id", followUserId));
+            followsCache.ensureLoaded(userId);
+            stringRedisTemplate.opsForSet().remove(key, followUserId.toString());
+        }
+        // 5.通知所有实例删除本地副本
+        largeFollowsCache.remove(userId);
+        invalidateTopic.publish(userId.toString());
+        return Result.ok();
+    }
+
+    @Override
+    public Result isFollow(Long followUserId) {
+        Long userId = UserHolder.getUser().getId();
+        long[] local = largeFollowsCache.get(userId);
+        if (local != null) {
+            return Result.ok(SortedLongArrays.contains(local, followUserId));
+        }
+        followsCache.ensureLoaded(userId);
+        Boolean isMember = stringRedisTemplate.opsForSet().isMember(FollowsCache.key(userId), followUserId.toString());
+        return Result.ok(Boolean.TRUE.equals(isMember));
+    }
+
+    @Override
+    public Result isFollowBatch(List<Long> followUserIds) {
+        Long userId = UserHolder.getUser().getId();
+        Map<Long, Boolean> result = new LinkedHashMap<>(followUserIds.size());
+        // 1.本地有紧凑副本，直接二分查找
+        long[] local = largeFollowsCache.get(userId);
+        if (local != null) {
+            followUserIds.forEach(id -> result.put(id, SortedLongArrays.contains(local, id)));
+            return Result.ok(result);
+        }
+        // 2.一次管道批量SISMEMBER
+        followsCache.ensureLoaded(userId);
+        String key = FollowsCache.key(userId);
+        List<Object> members = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            followUserIds.forEach(id -> conn.sIsMember(key, id.toString()));
+            return null;
+        });
+        for (int i = 0; i < followUserIds.size(); i++) {
+            result.put(followUserIds.get(i), Boolean.TRUE.equals(members.get(i)));
+        }
+        return Result.ok(result);
+    }
+
+    @Override
+    public Result followCommons(Long id) {
+        // 1.获取当前用户
+        Long userId = UserHolder.getUser().getId();
+        String key = FollowsCache.key(userId);
+        String key2 = FollowsCache.key(id);
+        followsCache.ensureLoaded(userId);
+        followsCache.ensureLoaded(id);
+        // 2.一次管道查询两个集合的大小
+        List<Object> sizes = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.sCard(key);
+            conn.sCard(key2);
+            return null;
+        });
+        long size1 = (Long) sizes.get(0);
+        long size2 = (Long) sizes.get(1);
+        List<Long> ids;
+        if (size1 < FOLLOWS_LARGE_SIZE && size2 < FOLLOWS_LARGE_SIZE) {
+            // 3.集合不大，直接在Redis中求交集
+            Set<String> intersect = stringRedisTemplate.opsForSet().intersect(key, key2);
+            if (CollUtil.isEmpty(intersect)) {
+                return Result.ok(Collections.emptyList());
+            }
+            ids = intersect.stream()
+                    .filter(member -> !FollowsCache.PLACEHOLDER.equals(member))
+                    .map(Long::valueOf)
+                    .collect(Collectors.toList());
+        } else {
+            // 4.集合很大，在本地用有序数组做跳跃求交，避免阻塞Redis
+            long[] common = SortedLongArrays.intersect(loadFollows(userId), loadFollows(id));
+            ids = new ArrayList<>(common.length);
+            for (long commonId : common) {
+                ids.add(commonId);
+            }
+        }
+        if (ids.isEmpty()) {
+            return Result.ok(Collections.emptyList());
+        }
+        // 5.批量查询用户摘要
+        Map<Long, UserDTO> users = userService.queryUserSummaries(ids);
+        List<UserDTO> result = ids.stream().map(users::get).filter(Objects::nonNull).collect(Collectors.toList());
+        return Result.ok(result);
+    }
+
+    /**
+     * 读取用户的关注集合为有序数组，超大集合缓存在本地
+     */
+    private long[] loadFollows(Long userId) {
+        long[] local = largeFollowsCache.get(userId);
+        if (local != null) {
+            return local;
+        }
+        Set<String> members = stringRedisTemplate.opsForSet().members(FollowsCache.key(userId));
+        if (CollUtil.isEmpty(members)) {
+            return new long[0];
+        }
+        long[] sorted = members.stream()
+                .filter(member -> !FollowsCache.PLACEHOLDER.equals(member))
+                .mapToLong(Long::parseLong)
+                .sorted()
+                .toArray();
+        if (sorted.length >= FOLLOWS_LARGE_SIZE) {
+            largeFollowsCache.put(userId, sorted);
+        }
+        return sorted;
+    }
 }
@@ -1,15 +1,35 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.date.LocalDateTimeUtil;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.mapper.SeckillVoucherMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.SeckillKeys;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Resource;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
 /**
  * <p>
  * 秒杀优惠券表，与优惠券是一对一关系 服务实现类
  * </p>
+ * <p>
+ * 秒杀时间保存在Redis的hash seckill:meta:{p}:voucherId中，秒杀脚本在扣库存的同一次调用中校验；
+ * 每个实例另有一份本地副本，下单前先用它拒绝未开始、已结束的请求，不访问Redis。
+ * 本地副本每隔hmdp.seckill.meta-local-ttl重新读取，修改秒杀时间后最多这么久生效，期间仍以脚本的校验为准
+ * </p>
  *
  * @author 虎哥
  * @since 2022-01-04
@@ -17,4 +37,87 @@ import org.springframework.stereotype.Service;
 @Service
 public class SeckillVoucherServiceImpl extends ServiceImpl<SeckillVoucherMapper, SeckillVoucher> implements ISeckillVoucherService {
 
+    private static final String META_BEGIN = "begin";
+    private static final String META_END = "end";
+    /**
+     * 本地副本超过这个数量时清理过期的，避免不存在的id占满内存
+     */
+    private static final int LOCAL_META_CLEAN_SIZE = 10000;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private SeckillKeys seckillKeys;
+
+    @Value("${hmdp.seckill.meta-local-ttl:10s}")
+    private Duration metaLocalTtl;
+
+    /**
+     * 优惠券id -> 秒杀时间的本地副本，秒杀券不存在时也缓存
+     */
+    private final Map<Long, LocalMeta> localMetas = new ConcurrentHashMap<>();
+
+    @Override
+    public void saveMeta(SeckillVoucher voucher) {
+        Map<String, String> meta = new HashMap<>(4);
+        meta.put(META_BEGIN, String.valueOf(LocalDateTimeUtil.toEpochMilli(voucher.getBeginTime())));
+        meta.put(META_END, String.valueOf(LocalDateTimeUtil.toEpochMilli(voucher.getEndTime())));
+        stringRedisTemplate.opsForHash().putAll(seckillKeys.metaKey(voucher.getVoucherId()), meta);
+        putLocal(voucher.getVoucherId(), metaOf(voucher.getVoucherId(), voucher.getBeginTime(), voucher.getEndTime()));
+    }
+
+    @Override
+    public SeckillVoucher queryMeta(Long voucherId) {
+        // 1.本地副本
+        LocalMeta local = localMetas.get(voucherId);
+        if (local != null && System.currentTimeMillis() < local.expireTime) {
+            return local.voucher;
+        }
+        // 2.Redis
+        List<Object> values = stringRedisTemplate.opsForHash()
+                .multiGet(seckillKeys.metaKey(voucherId), Arrays.asList(META_BEGIN, META_END));
+        if (values.get(0) != null && values.get(1) != null) {
+            SeckillVoucher meta = metaOf(voucherId, LocalDateTimeUtil.of(Long.parseLong((String) values.get(0))),
+                    LocalDateTimeUtil.of(Long.parseLong((String) values.get(1))));
+            putLocal(voucherId, meta);
+            return meta;
+        }
+        // 3.数据库，写回Redis
+        SeckillVoucher voucher = getById(voucherId);
+        if (voucher == null) {
+            putLocal(voucherId, null);
+            return null;
+        }
+        saveMeta(voucher);
+        return metaOf(voucherId, voucher.getBeginTime(), voucher.getEndTime());
+    }
+
+    @Override
+    public void evictMeta(Collection<Long> voucherIds) {
+        stringRedisTemplate.delete(voucherIds.stream().map(seckillKeys::metaKey).collect(Collectors.toList()));
+        voucherIds.forEach(localMetas::remove);
+    }
+
+    private static SeckillVoucher metaOf(Long voucherId, LocalDateTime beginTime, LocalDateTime endTime) {
+        return new SeckillVoucher().setVoucherId(voucherId).setBeginTime(beginTime).setEndTime(endTime);
+    }
+
+    private void putLocal(Long voucherId, SeckillVoucher meta) {
+        long now = System.currentTimeMillis();
+        if (localMetas.size() > LOCAL_META_CLEAN_SIZE) {
+            localMetas.values().removeIf(local -> local.expireTime <= now);
+        }
+        localMetas.put(voucherId, new LocalMeta(meta, now + metaLocalTtl.toMillis()));
+    }
+
+    private static class LocalMeta {
+        private final SeckillVoucher voucher;
+        private final long expireTime;
+
+        LocalMeta(SeckillVoucher voucher, long expireTime) {
+            this.voucher = voucher;
+            this.expireTime = expireTime;
+        }
+    }
 }
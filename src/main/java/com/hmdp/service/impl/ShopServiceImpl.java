@@ -1,24 +1,71 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.thread.ThreadFactoryBuilder;
 import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.CursorResult;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopDetailDTO;
+import com.hmdp.dto.ShopPageDTO;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Blog;
 import com.hmdp.entity.Shop;
+import com.hmdp.entity.Voucher;
 import com.hmdp.mapper.ShopMapper;
+import com.hmdp.mapper.VoucherMapper;
+import com.hmdp.service.IBlogService;
+import com.hmdp.service.ICacheOutboxService;
 import com.hmdp.service.IShopService;
+import com.hmdp.service.IUserService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CursorCodec;
+import com.hmdp.utils.QueryTimeoutInterceptor;
+import com.hmdp.utils.ReactiveCacheClient;
 import com.hmdp.utils.RedisData;
+import com.hmdp.utils.ShopSearchIndex;
+import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.UvCounter;
+import com.hmdp.utils.VirtualThreads;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.geo.Circle;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import reactor.core.publisher.Mono;
 
 import javax.annotation.Resource;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 
@@ -30,12 +77,47 @@ import static com.hmdp.utils.RedisConstants.*;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
 
     private final StringRedisTemplate stringRedisTemplate;
 
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    /**
+     * 缓存重建线程池，同一个key已经由互斥锁保证只有一个重建任务；开启虚拟线程时每个任务一个虚拟线程
+     */
+    private static final ExecutorService CACHE_REBUILD_EXECUTOR =
+            VirtualThreads.newExecutor("shop-rebuild-", () -> Executors.newFixedThreadPool(10));
+
+    /**
+     * 详情页聚合线程池，各分支在这里并行执行；队列满时分支直接降级，不在调用线程上执行
+     */
+    private static final ExecutorService SHOP_PAGE_EXECUTOR = new ThreadPoolExecutor(
+            16, 16, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(512),
+            ThreadFactoryBuilder.create().setNamePrefix("shop-page-").setDaemon(true).build());
+
+    /**
+     * 详情页各分支的超时时间，从发起聚合时开始计算；作者摘要依赖笔记，超时时间在笔记之后顺延
+     */
+    private static final long PAGE_SHOP_TIMEOUT_MILLIS = 500;
+    private static final long PAGE_VOUCHER_TIMEOUT_MILLIS = 300;
+    private static final long PAGE_BLOG_TIMEOUT_MILLIS = 300;
+    private static final long PAGE_AUTHOR_TIMEOUT_MILLIS = 200;
+
+    /**
+     * 分支超时后中断执行线程，数据库语句另有超时兜底，JDBC最短只能设置1秒
+     */
+    private static final int PAGE_QUERY_TIMEOUT_SECONDS = 1;
+
+    /**
+     * 降级计数器按 分支:原因 缓存，只注册一次
+     */
+    private static final Map<String, Counter> PAGE_DEGRADED_COUNTERS = new ConcurrentHashMap<>();
+
+    /**
+     * 详情页展示的笔记条数
+     */
+    private static final int PAGE_BLOG_SIZE = 5;
 
     public ShopServiceImpl(StringRedisTemplate stringRedisTemplate) {
         this.stringRedisTemplate = stringRedisTemplate;
@@ -54,6 +136,41 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     @Resource
     private CacheClient cacheClient;
 
+    @Resource
+    private ShopSearchIndex shopSearchIndex;
+
+    @Resource
+    private ReactiveCacheClient reactiveCacheClient;
+
+    @Resource
+    private ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+    @Resource
+    private VoucherMapper voucherMapper;
+
+    @Resource
+    private IBlogService blogService;
+
+    @Resource
+    private IUserService userService;
+
+    @Resource
+    private ICacheOutboxService cacheOutboxService;
+
+    @Resource
+    private CursorCodec cursorCodec;
+
+    /**
+     * 自动补全返回的条数
+     */
+    private static final int SUGGEST_SIZE = 10;
+
+    /**
+     * 详情页附近商铺的条数和搜索半径（米）
+     */
+    private static final int NEARBY_SIZE = 5;
+    private static final double NEARBY_RADIUS = 5000;
+
     @Override
     public Result queryById(Long id) {
 
@@ -84,6 +201,193 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         return Result.ok(shop);
     }
 
+    @Override
+    public Mono<Result> queryShopById(Long id) {
+        return queryShop(id)
+                .map(Result::ok)
+                .defaultIfEmpty(Result.fail("店铺不存在"));
+    }
+
+    @Override
+    public Mono<Result> queryShopDetail(Long id) {
+        // 1.商铺信息，附近商铺依赖它的坐标，缓存结果避免重复查询
+        Mono<Shop> shop = queryShop(id).cache();
+        // 2.优惠券只在数据库，交给回源调度器
+        Mono<List<Voucher>> vouchers = reactiveCacheClient.fromBlocking(() -> voucherMapper.queryVoucherOfShop(id));
+        // 3.访客数直接PFCOUNT
+        LocalDate today = LocalDate.now();
+        Mono<Long> uvToday = reactiveStringRedisTemplate.opsForHyperLogLog()
+                .size(UvCounter.dayKeys(UvCounter.TYPE_SHOP, id, today, today));
+        Mono<Long> uvWeek = reactiveStringRedisTemplate.opsForHyperLogLog()
+                .size(UvCounter.dayKeys(UvCounter.TYPE_SHOP, id, today.minusDays(6), today));
+        // 4.并行执行，全部完成后合并；商铺不存在时其余查询被取消
+        return Mono.zip(shop, vouchers, uvToday, uvWeek, shop.flatMap(this::queryNearby))
+                .map(t -> {
+                    ShopDetailDTO detail = new ShopDetailDTO();
+                    detail.setShop(t.getT1());
+                    detail.setVouchers(t.getT2());
+                    detail.setUvToday(t.getT3());
+                    detail.setUvWeek(t.getT4());
+                    detail.setNearby(t.getT5());
+                    return Result.ok(detail);
+                })
+                .defaultIfEmpty(Result.fail("店铺不存在"));
+    }
+
+    @Override
+    public Result queryShopPage(Long id) {
+        long begin = System.nanoTime();
+        // 1.各分支同时提交，互不等待
+        CompletableFuture<Shop> shop = supplyPageBranch(() -> cacheClient.queryWithPassThrough(
+                CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES));
+        CompletableFuture<List<Voucher>> vouchers = supplyPageBranch(() -> voucherMapper.queryVoucherOfShop(id));
+        CompletableFuture<List<Blog>> blogs = supplyPageBranch(() -> blogService.queryBlogOfShop(id, PAGE_BLOG_SIZE));
+        // 2.作者摘要只依赖笔记，笔记一返回就开始查询
+        CompletableFuture<Map<Long, UserDTO>> authors = thenPageBranch(blogs, list -> userService.queryUserSummaries(
+                list.stream().map(Blog::getUserId).collect(Collectors.toSet())));
+        // 3.按各自的截止时间收集结果，超时或失败的分支使用降级值
+        List<String> degraded = new ArrayList<>(0);
+        Shop found = awaitPageBranch("shop", shop, begin + TimeUnit.MILLISECONDS.toNanos(PAGE_SHOP_TIMEOUT_MILLIS),
+                null, degraded);
+        if (found == null) {
+            return Result.fail(degraded.isEmpty() ? "店铺不存在" : "店铺信息加载失败，请稍后重试");
+        }
+        ShopPageDTO page = new ShopPageDTO();
+        page.setShop(found);
+        page.setVouchers(awaitPageBranch("vouchers", vouchers,
+                begin + TimeUnit.MILLISECONDS.toNanos(PAGE_VOUCHER_TIMEOUT_MILLIS), Collections.emptyList(), degraded));
+        long blogDeadline = begin + TimeUnit.MILLISECONDS.toNanos(PAGE_BLOG_TIMEOUT_MILLIS);
+        List<Blog> blogList = awaitPageBranch("blogs", blogs, blogDeadline, Collections.emptyList(), degraded);
+        if (!blogList.isEmpty()) {
+            // 4.作者摘要降级时，笔记照常返回，只是没有昵称和头像
+            Map<Long, UserDTO> users = awaitPageBranch("authors", authors,
+                    blogDeadline + TimeUnit.MILLISECONDS.toNanos(PAGE_AUTHOR_TIMEOUT_MILLIS), Collections.emptyMap(), degraded);
+            for (Blog blog : blogList) {
+                UserDTO user = users.get(blog.getUserId());
+                if (user != null) {
+                    blog.setName(user.getNickName());
+                    blog.setIcon(user.getIcon());
+                }
+            }
+        }
+        page.setBlogs(blogList);
+        page.setDegraded(degraded);
+        return Result.ok(page);
+    }
+
+    /**
+     * 在详情页线程池上执行一个分支，线程池已满时得到失败的分支。
+     * 取消返回的future时中断执行中的分支，其中的数据库语句受PAGE_QUERY_TIMEOUT_SECONDS限制
+     */
+    private static <T> CompletableFuture<T> supplyPageBranch(Supplier<T> supplier) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            Future<?> task = SHOP_PAGE_EXECUTOR.submit(() -> {
+                try {
+                    future.complete(QueryTimeoutInterceptor.within(PAGE_QUERY_TIMEOUT_SECONDS, supplier));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+            future.whenComplete((result, error) -> {
+                if (future.isCancelled()) {
+                    task.cancel(true);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * 前一个分支完成后再执行的分支，取消时同样中断执行中的分支
+     */
+    private static <A, T> CompletableFuture<T> thenPageBranch(CompletableFuture<A> previous, Function<A, T> function) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        previous.whenComplete((value, error) -> {
+            if (error != null) {
+                future.completeExceptionally(error);
+                return;
+            }
+            CompletableFuture<T> next = supplyPageBranch(() -> function.apply(value));
+            next.whenComplete((result, nextError) -> {
+                if (nextError != null) {
+                    future.completeExceptionally(nextError);
+                } else {
+                    future.complete(result);
+                }
+            });
+            future.whenComplete((result, cancelled) -> {
+                if (future.isCancelled()) {
+                    next.cancel(true);
+                }
+            });
+        });
+        return future;
+    }
+
+    /**
+     * 等待分支结果直到截止时间，超时或失败时返回降级值，并记录分支名称
+     */
+    private static <T> T awaitPageBranch(String branch, CompletableFuture<T> future, long deadline,
+                                         T fallback, List<String> degraded) {
+        String cause;
+        try {
+            T result = future.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+            return result == null ? fallback : result;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            cause = "timeout";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cause = "interrupted";
+        } catch (ExecutionException e) {
+            cause = e.getCause() instanceof RejectedExecutionException ? "rejected" : "error";
+            log.warn("商铺详情页分支{}执行失败", branch, e.getCause());
+        }
+        degraded.add(branch);
+        PAGE_DEGRADED_COUNTERS.computeIfAbsent(branch + ":" + cause,
+                k -> Metrics.counter("hmdp.shop.page.degraded", "branch", branch, "cause", cause)).increment();
+        return fallback;
+    }
+
+    private Mono<Shop> queryShop(Long id) {
+        return reactiveCacheClient.queryWithPassThrough(
+                CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 在同类商铺的GEO索引中按距离查询，商铺详情经由缓存批量加载
+     */
+    private Mono<List<Shop>> queryNearby(Shop shop) {
+        if (shop.getTypeId() == null || shop.getX() == null || shop.getY() == null) {
+            return Mono.just(Collections.emptyList());
+        }
+        String self = shop.getId().toString();
+        Circle within = new Circle(new Point(shop.getX(), shop.getY()),
+                new Distance(NEARBY_RADIUS, RedisGeoCommands.DistanceUnit.METERS));
+        // 结果包含商铺自己，多查一条
+        RedisGeoCommands.GeoRadiusCommandArgs args = RedisGeoCommands.GeoRadiusCommandArgs.newGeoRadiusArgs()
+                .includeDistance().sortAscending().limit(NEARBY_SIZE + 1);
+        return reactiveStringRedisTemplate.opsForGeo().radius(SHOP_GEO_KEY + shop.getTypeId(), within, args)
+                .filter(r -> !self.equals(r.getContent().getName()))
+                .take(NEARBY_SIZE)
+                .collectList()
+                .flatMap(results -> {
+                    List<Long> ids = new ArrayList<>(results.size());
+                    Map<Long, Double> distances = new HashMap<>(results.size() * 2);
+                    results.forEach(r -> {
+                        Long shopId = Long.valueOf(r.getContent().getName());
+                        ids.add(shopId);
+                        distances.put(shopId, r.getDistance().getValue());
+                    });
+                    return reactiveCacheClient.queryBatchWithPassThrough(CACHE_SHOP_KEY, ids, Shop.class,
+                            missIds -> new ArrayList<>(listByIds(missIds)), Shop::getId, CACHE_SHOP_TTL, TimeUnit.MINUTES)
+                            .doOnNext(shops -> shops.forEach(s -> s.setDistance(distances.get(s.getId()))));
+                });
+    }
+
     public Shop queryWithPassThrough(Long id){
         String key = "cache:shop:" + id;
 
@@ -168,7 +472,7 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
 
 
     public Shop queryWithLogicalExpire( Long id ) {
-        String key = CACHE_SHOP_KEY + id;
+        String key = CACHE_SHOP_LOGICAL_KEY + id;
         // 1.从redis查询商铺缓存
         String json = stringRedisTemplate.opsForValue().get(key);
         // 2.判断是否存在
@@ -209,6 +513,7 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     }
 
     @Override
+    @Transactional
     public Result update(Shop shop) {
 
         Long id = shop.getId();
@@ -217,14 +522,168 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
             return Result.fail("店铺id不能为空");
         }
 
-        //1.更新数据库
+        //1.更新数据库，记下原来的类型
+        Shop before = query().select("id", "type_id").eq("id", id).one();
+        if (before == null) {
+            return Result.fail("店铺不存在");
+        }
         updateById(shop);
+        Shop saved = getById(id);
 
-        //2.删除缓存
-        stringRedisTemplate.delete(CACHE_SHOP_KEY+id);
+        //2.删除缓存：在同一个事务中登记，提交后由发件箱中继删除两次；原类型和新类型的分页缓存都要删除
+        cacheOutboxService.evict(CACHE_SHOP_KEY + id,
+                firstPageKey(before.getTypeId(), true), firstPageKey(before.getTypeId(), false),
+                firstPageKey(saved.getTypeId(), true), firstPageKey(saved.getTypeId(), false));
+
+        //3.提交后更新搜索索引和GEO索引
+        indexAfterCommit(saved);
         return Result.ok();
     }
 
+    @Override
+    @Transactional
+    public Result saveShop(Shop shop) {
+        // 1.写入数据库，清除查询这个id时可能缓存的空值
+        save(shop);
+        cacheOutboxService.evict(CACHE_SHOP_KEY + shop.getId(),
+                firstPageKey(shop.getTypeId(), true), firstPageKey(shop.getTypeId(), false));
+        // 2.提交后写入搜索索引和GEO索引
+        indexAfterCommit(shop);
+        return Result.ok(shop.getId());
+    }
+
+    /**
+     * 事务提交后才写入搜索索引和GEO索引，事务回滚时不会留下不存在的商铺；预热过的逻辑过期缓存同时重建，删除它会被当作商铺不存在。
+     * 索引写入失败只记录日志，数据库已经提交，由binlog同步或下次修改时补上
+     */
+    private void indexAfterCommit(Shop shop) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    shopSearchIndex.index(shop);
+                    addGeo(shop);
+                    if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(CACHE_SHOP_LOGICAL_KEY + shop.getId()))) {
+                        saveShop2Redis(shop.getId(), 20L);
+                    }
+                } catch (Exception e) {
+                    log.error("更新商铺索引失败，shopId={}", shop.getId(), e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 按类型维护商铺坐标，供附近商铺查询
+     */
+    private void addGeo(Shop shop) {
+        if (shop == null || shop.getTypeId() == null || shop.getX() == null || shop.getY() == null) {
+            return;
+        }
+        stringRedisTemplate.opsForGeo().add(SHOP_GEO_KEY + shop.getTypeId(),
+                new Point(shop.getX(), shop.getY()), shop.getId().toString());
+    }
+
+    @Override
+    public List<Shop> searchShops(String name, int offset, int limit) {
+        // 1.从倒排索引查询排好序的商铺id
+        List<Long> ids = shopSearchIndex.search(name, offset, limit);
+        // 2.经由商铺缓存批量加载
+        return cacheClient.queryBatchWithPassThrough(CACHE_SHOP_KEY, ids, Shop.class,
+                missIds -> new ArrayList<>(listByIds(missIds)), Shop::getId, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public Result suggestShops(String prefix) {
+        return Result.ok(shopSearchIndex.suggest(prefix, SUGGEST_SIZE));
+    }
+
+    @Override
+    public Result queryShopByType(Long typeId, String sortBy, String cursor) {
+        boolean byScore = "score".equals(sortBy);
+        // 1.解析游标：页号,第一页生成时间,[评分,]id
+        long[] seek = cursorCodec.decode(cursor, byScore ? 4 : 3);
+        if (StrUtil.isNotBlank(cursor) && seek == null) {
+            return Result.fail("游标不合法！");
+        }
+        int page = seek == null ? 0 : (int) seek[0];
+        // 2.前几页先查缓存，key中带上游标，保证与客户端看到的上一页衔接。
+        // 修改商铺时只删除第一页，重新生成的第一页带着新的生成时间，之后的游标和缓存key都是新的，旧的页等待过期
+        String key = firstPageKey(typeId, byScore) + (seek == null ? "" : ":" + cursor);
+        boolean cacheable = page < CACHE_SHOP_PAGES;
+        if (cacheable) {
+            String json = stringRedisTemplate.opsForValue().get(key);
+            if (StrUtil.isNotBlank(json)) {
+                JSONObject obj = JSONUtil.parseObj(json);
+                return Result.ok(new CursorResult(obj.getJSONArray("list").toList(Shop.class), obj.getStr("next")));
+            }
+        }
+        // 3.按 (type_id, id) 或 (type_id, score, id) 索引定位，不查询总数也不跳过前面的行
+        int size = SystemConstants.DEFAULT_PAGE_SIZE;
+        List<Shop> shops;
+        if (byScore) {
+            shops = query()
+                    .eq("type_id", typeId)
+                    .apply(seek != null, "(score, id) < ({0}, {1})", seek == null ? null : seek[2], seek == null ? null : seek[3])
+                    .orderByDesc("score", "id")
+                    .last("limit " + size)
+                    .list();
+        } else {
+            shops = query()
+                    .eq("type_id", typeId)
+                    .gt(seek != null, "id", seek == null ? null : seek[2])
+                    .orderByAsc("id")
+                    .last("limit " + size)
+                    .list();
+        }
+        // 4.生成下一页游标
+        String next = null;
+        if (shops.size() == size) {
+            Shop last = shops.get(size - 1);
+            long generation = seek == null ? System.currentTimeMillis() : seek[1];
+            next = byScore
+                    ? cursorCodec.encode(page + 1, generation, last.getScore(), last.getId())
+                    : cursorCodec.encode(page + 1, generation, last.getId());
+        }
+        CursorResult result = new CursorResult(shops, next);
+        if (cacheable) {
+            stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(result), CACHE_SHOP_PAGE_TTL, TimeUnit.MINUTES);
+        }
+        return Result.ok(result);
+    }
+
+    @Override
+    public Result queryShopByName(String name, String cursor) {
+        long[] seek = cursorCodec.decode(cursor, 2);
+        if (StrUtil.isNotBlank(cursor) && seek == null) {
+            return Result.fail("游标不合法！");
+        }
+        int page = seek == null ? 0 : (int) seek[0];
+        int size = SystemConstants.MAX_PAGE_SIZE;
+        if (StrUtil.isBlank(name)) {
+            // 没有关键字，按id游标遍历
+            List<Shop> shops = query()
+                    .gt(seek != null, "id", seek == null ? null : seek[1])
+                    .orderByAsc("id")
+                    .last("limit " + size)
+                    .list();
+            String next = shops.size() == size ? cursorCodec.encode(page + 1, shops.get(size - 1).getId()) : null;
+            return Result.ok(new CursorResult(shops, next));
+        }
+        // 有关键字，结果按相关度排序，游标记录已经返回的条数
+        int offset = seek == null ? 0 : (int) seek[1];
+        List<Shop> shops = searchShops(name, offset, size);
+        String next = shops.size() == size ? cursorCodec.encode(page + 1, offset + size) : null;
+        return Result.ok(new CursorResult(shops, next));
+    }
+
+    /**
+     * 按类型分页的第一页缓存，之后几页的key在后面加上游标；BinlogCacheSync中删除的key与这里一致
+     */
+    private static String firstPageKey(Long typeId, boolean byScore) {
+        return CACHE_SHOP_PAGE_KEY + typeId + ":" + (byScore ? "score" : "id") + ":first";
+    }
+
     public void saveShop2Redis(Long id,Long expireSeconds){
 
         //1.查询店铺数据
@@ -235,7 +694,7 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         redisData.setData(shop);
         redisData.setExpireTime(LocalDateTime.now().plusSeconds(expireSeconds));
 
-        //3.写入Redis
-        stringRedisTemplate.opsForValue().set(CACHE_SHOP_KEY+id,JSONUtil.toJsonStr(redisData));
+        //3.写入Redis，逻辑过期的值与普通缓存的格式不同，使用单独的前缀
+        stringRedisTemplate.opsForValue().set(CACHE_SHOP_LOGICAL_KEY+id,JSONUtil.toJsonStr(redisData));
     }
 }
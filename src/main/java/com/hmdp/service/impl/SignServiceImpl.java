@@ -0,0 +1,263 @@
+package com.hmdp.service.impl;
+
+import cn.hutool.core.collection.CollUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.entity.Sign;
+import com.hmdp.mapper.SignMapper;
+import com.hmdp.service.ISignService;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.RedisKeyScanner;
+import com.hmdp.utils.UserHolder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.SIGN_ARCHIVED_KEY;
+import static com.hmdp.utils.RedisConstants.USER_SIGN_KEY;
+
+/**
+ * <p>
+ * 服务实现类
+ * </p>
+ * 签到记录保存在 sign:{userId}:{yyyyMM} 位图中，每天一个bit，一年只占48字节；
+ * 已结束的月份由定时任务归档到tb_sign。
+ *
+ * @author 虎哥
+ * @since 2021-12-22
+ */
+@Slf4j
+@Service
+public class SignServiceImpl extends ServiceImpl<SignMapper, Sign> implements ISignService {
+
+    private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("yyyyMM");
+
+    /**
+     * BITFIELD GET u31 0，一次取出整月的签到位
+     */
+    private static final BitFieldSubCommands GET_MONTH = BitFieldSubCommands.create()
+            .get(BitFieldSubCommands.BitFieldType.unsigned(31)).valueAt(0);
+
+    /**
+     * 连续签到最多向前追溯的月数
+     */
+    private static final int MAX_STREAK_MONTHS = 12;
+
+    private static final int ARCHIVE_BATCH_SIZE = 200;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Override
+    public Result sign() {
+        // 1.获取当前登录用户
+        Long userId = UserHolder.getUser().getId();
+        // 2.获取日期，拼接key
+        LocalDate now = LocalDate.now();
+        String key = signKey(userId, YearMonth.from(now));
+        // 3.写入Redis SETBIT key offset 1
+        stringRedisTemplate.opsForValue().setBit(key, now.getDayOfMonth() - 1, true);
+        return Result.ok();
+    }
+
+    @Override
+    public Result signCount() {
+        // 1.获取当前登录用户
+        Long userId = UserHolder.getUser().getId();
+        LocalDate today = LocalDate.now();
+        YearMonth month = YearMonth.from(today);
+        // 2.一次管道取出本月和上月的签到位
+        List<Object> results = stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                // 模板是StringRedisTemplate，key、value都是String
+                @SuppressWarnings("unchecked")
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                ops.opsForValue().bitField(signKey(userId, month), GET_MONTH);
+                ops.opsForValue().bitField(signKey(userId, month.minusMonths(1)), GET_MONTH);
+                return null;
+            }
+        });
+        // 3.从今天开始向前数连续的1；今天还没签到时，从昨天开始数
+        int days = today.getDayOfMonth();
+        long bits = monthBits(results.get(0), days);
+        if ((bits & 1) == 0) {
+            bits >>>= 1;
+            days--;
+        }
+        int count = Math.min(Long.numberOfTrailingZeros(~bits), days);
+        if (count < days) {
+            return Result.ok(count);
+        }
+        // 4.本月到目前为止全部签到，继续累加上月
+        return Result.ok(count + countStreak(userId, month.minusMonths(1), results.get(1)));
+    }
+
+    @Override
+    public Result signOfMonth(String month) {
+        Long userId = UserHolder.getUser().getId();
+        YearMonth yearMonth;
+        try {
+            yearMonth = month == null ? YearMonth.now() : YearMonth.parse(month, MONTH_FORMATTER);
+        } catch (DateTimeParseException e) {
+            return Result.fail("月份格式错误");
+        }
+        List<Long> result = stringRedisTemplate.opsForValue().bitField(signKey(userId, yearMonth), GET_MONTH);
+        int length = yearMonth.lengthOfMonth();
+        long bits = CollUtil.isEmpty(result) ? 0 : monthBits(result, length);
+        // 第length天在最低位
+        List<Integer> days = new ArrayList<>();
+        for (int day = 1; day <= length; day++) {
+            if (((bits >>> (length - day)) & 1) == 1) {
+                days.add(day);
+            }
+        }
+        return Result.ok(days);
+    }
+
+    /**
+     * 从某月月末开始向前统计连续签到天数，必要时继续追溯更早的月份
+     * @param prefetched 该月已经取到的BITFIELD结果
+     */
+    private int countStreak(Long userId, YearMonth month, Object prefetched) {
+        int total = 0;
+        Object result = prefetched;
+        for (int i = 0; i < MAX_STREAK_MONTHS; i++) {
+            int length = month.lengthOfMonth();
+            long bits = monthBits(result, length);
+            int count = Long.numberOfTrailingZeros(~bits);
+            total += Math.min(count, length);
+            if (count < length) {
+                break;
+            }
+            month = month.minusMonths(1);
+            result = stringRedisTemplate.opsForValue().bitField(signKey(userId, month), GET_MONTH);
+        }
+        return total;
+    }
+
+    /**
+     * 把 BITFIELD GET u31 0 的结果截取为前days天，第days天位于最低位
+     */
+    private static long monthBits(Object result, int days) {
+        if (!(result instanceof List) || ((List<?>) result).isEmpty()) {
+            return 0;
+        }
+        Object value = ((List<?>) result).get(0);
+        long bits = value == null ? 0 : ((Number) value).longValue();
+        return bits >>> (31 - days);
+    }
+
+    private static String signKey(Long userId, YearMonth month) {
+        return USER_SIGN_KEY + userId + ":" + month.format(MONTH_FORMATTER);
+    }
+
+    /**
+     * 每天凌晨2点把上个月的签到位图归档到tb_sign，全部成功后才标记该月已归档，失败时第二天整月重试
+     */
+    @Scheduled(cron = "0 0 2 * * ?")
+    public void archiveLastMonth() {
+        YearMonth month = YearMonth.now().minusMonths(1);
+        String suffix = month.format(MONTH_FORMATTER);
+        String doneKey = SIGN_ARCHIVED_KEY + suffix;
+        String lockKey = doneKey + ":lock";
+        // 1.已经归档过的月份直接返回；多实例之间只允许一个执行
+        if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(doneKey))) {
+            return;
+        }
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(lockKey, "1", 1, TimeUnit.HOURS);
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+        try {
+            // 2.SCAN出该月所有用户的位图，集群模式下逐个主节点扫描，分批归档
+            int[] archived = {0};
+            List<Long> userIds = new ArrayList<>(ARCHIVE_BATCH_SIZE);
+            RedisKeyScanner.scan(stringRedisTemplate, USER_SIGN_KEY + "*:" + suffix, key -> {
+                Long userId = parseUserId(key);
+                if (userId == null) {
+                    return;
+                }
+                userIds.add(userId);
+                if (userIds.size() >= ARCHIVE_BATCH_SIZE) {
+                    archived[0] += archiveBatch(userIds, month);
+                    userIds.clear();
+                }
+            });
+            if (!userIds.isEmpty()) {
+                archived[0] += archiveBatch(userIds, month);
+            }
+            // 3.全部成功后写入标记，保留400天
+            stringRedisTemplate.opsForValue().set(doneKey, "1", 400, TimeUnit.DAYS);
+            log.debug("签到归档完成，month={}, rows={}", suffix, archived[0]);
+        } catch (Exception e) {
+            log.error("签到归档失败，明天重试，month={}", suffix, e);
+        } finally {
+            stringRedisTemplate.delete(lockKey);
+        }
+    }
+
+    private int archiveBatch(List<Long> userIds, YearMonth month) {
+        // 1.一次管道读取一批用户的整月签到位
+        List<Object> results = stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                // 模板是StringRedisTemplate，key、value都是String
+                @SuppressWarnings("unchecked")
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                for (Long userId : userIds) {
+                    ops.opsForValue().bitField(signKey(userId, month), GET_MONTH);
+                }
+                return null;
+            }
+        });
+        // 2.展开为签到记录，批量插入
+        int length = month.lengthOfMonth();
+        List<Sign> signs = new ArrayList<>();
+        for (int i = 0; i < userIds.size(); i++) {
+            long bits = monthBits(results.get(i), length);
+            for (int day = 1; day <= length; day++) {
+                if (((bits >>> (length - day)) & 1) == 1) {
+                    signs.add(new Sign()
+                            .setUserId(userIds.get(i))
+                            .setYear(month.getYear())
+                            .setMonth(month.getMonthValue())
+                            .setDate(month.atDay(day))
+                            .setIsBackup(false));
+                }
+            }
+        }
+        // 3.已经归档过的记录跳过，重试不会重复插入
+        int rows = 0;
+        for (int from = 0; from < signs.size(); from += 1000) {
+            rows += getBaseMapper().insertIgnoreBatch(signs.subList(from, Math.min(from + 1000, signs.size())));
+        }
+        return rows;
+    }
+
+    private static Long parseUserId(String key) {
+        // sign:{userId}:{yyyyMM}
+        String[] parts = key.split(":");
+        if (parts.length != 3) {
+            return null;
+        }
+        try {
+            return Long.valueOf(parts[1]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -1,28 +1,53 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
 import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.bean.copier.CopyOptions;
+import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.lang.UUID;
 import cn.hutool.core.util.RandomUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.LoginFormDTO;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
+import com.hmdp.service.ICacheOutboxService;
 import com.hmdp.service.IUserService;
 import com.hmdp.utils.RegexUtils;
 import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import javax.servlet.http.HttpSession;
 
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 import static com.hmdp.utils.SystemConstants.USER_NICK_NAME_PREFIX;
@@ -42,6 +67,26 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Resource
+    private ICacheOutboxService cacheOutboxService;
+
+    /**
+     * 进程内的用户摘要缓存，只保存热点作者，60秒过期；
+     * 修改用户后通过 user:invalidate 频道通知所有实例删除，消息丢失时最多60秒后过期
+     */
+    private final LRUCache<Long, UserDTO> summaryCache = CacheUtil.newLRUCache(10000, 60 * 1000L);
+
+    private RTopic invalidateTopic;
+
+    @PostConstruct
+    private void init() {
+        invalidateTopic = redissonClient.getTopic(USER_INVALIDATE_TOPIC, StringCodec.INSTANCE);
+        invalidateTopic.addListener(String.class, (channel, userId) -> summaryCache.remove(Long.valueOf(userId)));
+    }
+
     @Override
     public Result sendCode(String phone, HttpSession session) {
 
@@ -51,7 +96,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
 
         String code = RandomUtil.randomNumbers(6);
 
-        session.setAttribute("code",code);
+        // 保存验证码到redis，登录时从redis校验
+        stringRedisTemplate.opsForValue().set(LOGIN_CODE_KEY + phone, code, LOGIN_CODE_TTL, TimeUnit.MINUTES);
 
         log.debug("发送短信验证码成功，验证码：{}",code);
 
@@ -118,4 +164,100 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         return user;
     }
 
+    /**
+     * 修改昵称、头像等信息后删除用户摘要缓存：提交后先同步删除Redis中的，再删除本实例并通知其它实例删除本地缓存，
+     * 避免本地缓存从还没删除的Redis回填旧数据；发件箱另外删除两次，覆盖删除失败和并发回填
+     */
+    @Override
+    @Transactional
+    public boolean updateById(User user) {
+        boolean updated = super.updateById(user);
+        if (updated) {
+            Long id = user.getId();
+            cacheOutboxService.evict(CACHE_USER_KEY + id);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    stringRedisTemplate.delete(CACHE_USER_KEY + id);
+                    summaryCache.remove(id);
+                    invalidateTopic.publish(id.toString());
+                }
+            });
+        }
+        return updated;
+    }
+
+    @Override
+    public Map<Long, UserDTO> queryUserSummaries(Collection<Long> ids) {
+        Map<Long, UserDTO> result = new HashMap<>();
+        if (CollUtil.isEmpty(ids)) {
+            return result;
+        }
+        // 1.查本地缓存
+        List<Long> misses = new ArrayList<>();
+        for (Long id : new LinkedHashSet<>(ids)) {
+            UserDTO user = summaryCache.get(id);
+            if (user != null) {
+                result.put(id, user);
+            } else {
+                misses.add(id);
+            }
+        }
+        if (misses.isEmpty()) {
+            return result;
+        }
+        // 2.一次MGET查Redis
+        List<String> keys = misses.stream().map(id -> CACHE_USER_KEY + id).collect(Collectors.toList());
+        List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
+        List<Long> dbMisses = new ArrayList<>();
+        for (int i = 0; i < misses.size(); i++) {
+            String json = values == null ? null : values.get(i);
+            if (json == null) {
+                dbMisses.add(misses.get(i));
+            } else if (StrUtil.isNotBlank(json)) {
+                // 空字符串代表用户不存在
+                UserDTO user = JSONUtil.toBean(json, UserDTO.class);
+                summaryCache.put(user.getId(), user);
+                result.put(user.getId(), user);
+            }
+        }
+        if (dbMisses.isEmpty()) {
+            return result;
+        }
+        // 3.一次selectBatchIds查数据库，并用一次管道回写Redis
+        Map<String, String> toCache = new HashMap<>(dbMisses.size());
+        for (User user : listByIds(dbMisses)) {
+            UserDTO userDTO = BeanUtil.copyProperties(user, UserDTO.class);
+            summaryCache.put(userDTO.getId(), userDTO);
+            result.put(userDTO.getId(), userDTO);
+            toCache.put(CACHE_USER_KEY + userDTO.getId(), JSONUtil.toJsonStr(userDTO));
+        }
+        for (Long id : dbMisses) {
+            toCache.putIfAbsent(CACHE_USER_KEY + id, "");
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            toCache.forEach((key, value) -> conn.set(key, value,
+                    Expiration.from(value.isEmpty() ? CACHE_NULL_TTL : CACHE_USER_TTL, TimeUnit.MINUTES),
+                    RedisStringCommands.SetOption.upsert()));
+            return null;
+        });
+        return result;
+    }
+
+    @Override
+    public <T> void fillUserSummaries(List<T> records, Function<T, Long> userIdGetter, BiConsumer<T, UserDTO> setter) {
+        if (CollUtil.isEmpty(records)) {
+            return;
+        }
+        Set<Long> userIds = records.stream().map(userIdGetter).collect(Collectors.toSet());
+        Map<Long, UserDTO> users = queryUserSummaries(userIds);
+        for (T record : records) {
+            UserDTO user = users.get(userIdGetter.apply(record));
+            if (user != null) {
+                setter.accept(record, user);
+            }
+        }
+    }
+
 }
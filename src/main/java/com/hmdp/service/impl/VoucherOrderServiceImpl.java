@@ -1,29 +1,76 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.date.LocalDateTimeUtil;
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import cn.hutool.core.util.NumberUtil;
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.dto.CursorResult;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.InstanceId;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SeckillKeys;
 import com.hmdp.utils.SimpleRedisLock;
+import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
+import com.hmdp.utils.VoucherOrderShards;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
 import org.springframework.aop.framework.AopContext;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.aop.AopAutoConfiguration;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands.XClaimOptions;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.PendingMessagesSummary;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.Collections;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisKeyMigration.LEGACY_SECKILL_STREAM_KEY;
 
 /**
  * <p>
@@ -33,6 +80,7 @@ import java.util.Collections;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, VoucherOrder> implements IVoucherOrderService {
 
@@ -49,6 +97,22 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Resource
     private RedissonClient redissonClient;
 
+    @Resource
+    private SeckillKeys seckillKeys;
+
+    @Resource
+    private VoucherOrderShards voucherOrderShards;
+
+    @Resource
+    private InstanceId instanceId;
+
+    /**
+     * 自身的代理对象，异步线程中通过它调用事务方法
+     */
+    @Lazy
+    @Resource
+    private IVoucherOrderService proxy;
+
     private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
     static {
         SECKILL_SCRIPT = new DefaultRedisScript<>();
@@ -56,62 +120,452 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         SECKILL_SCRIPT.setResultType(Long.class);
     }
 
+    /**
+     * 秒杀脚本的返回码：0成功，1库存不足，2重复下单，3尚未开始，4已经结束；本地校验拒绝的请求同样计入3和4
+     */
+    private static final Counter[] SECKILL_RESULTS = {
+            Metrics.counter("hmdp.seckill.results", "code", "0", "result", "success"),
+            Metrics.counter("hmdp.seckill.results", "code", "1", "result", "out_of_stock"),
+            Metrics.counter("hmdp.seckill.results", "code", "2", "result", "duplicate"),
+            Metrics.counter("hmdp.seckill.results", "code", "3", "result", "not_started"),
+            Metrics.counter("hmdp.seckill.results", "code", "4", "result", "ended")
+    };
+    private static final String[] SECKILL_FAILURES = {null, "库存不足", "不能重复下单", "秒杀尚未开始！", "秒杀已经结束！"};
+    private static final int SECKILL_NOT_STARTED = 3;
+    private static final int SECKILL_ENDED = 4;
+    private static final Timer SECKILL_SCRIPT_TIMER = Metrics.timer("hmdp.seckill.script");
+
+    private static final String GROUP_NAME = "g1";
+
+    /**
+     * 多久重试一次pending-list
+     */
+    private static final long PENDING_RETRY_MILLIS = 10000;
+
+    /**
+     * 其它实例的pending消息空闲超过该时间后认领
+     */
+    private static final Duration PENDING_CLAIM_IDLE = Duration.ofMinutes(1);
+
+    /**
+     * 按用户查询订单时各月分表的查询在这里并行执行。队列满时拒绝，请求直接返回繁忙，
+     * 不在请求线程上逐表串行查询，拒绝次数见hmdp.order.shard.rejected
+     */
+    private static final ExecutorService ORDER_SHARD_EXECUTOR = new ThreadPoolExecutor(
+            8, 8, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(256),
+            ThreadFactoryBuilder.create().setNamePrefix("order-shard-").setDaemon(true).build(),
+            new ThreadPoolExecutor.AbortPolicy());
+
+    private static final Counter ORDER_SHARD_REJECTED = Metrics.counter("hmdp.order.shard.rejected");
+
+    /**
+     * 每个分区的订单队列一个消费线程，阻塞读取时各占用一个连接池中的连接
+     */
+    private ExecutorService seckillOrderExecutor;
+
+    private volatile boolean running = true;
+
+    @PostConstruct
+    private void init() {
+        // 旧版本遗留的订单队列由一个额外的线程消费完后删除
+        boolean legacy = Boolean.TRUE.equals(stringRedisTemplate.hasKey(LEGACY_SECKILL_STREAM_KEY));
+        seckillOrderExecutor = Executors.newFixedThreadPool(seckillKeys.partitions() + (legacy ? 1 : 0));
+        for (int p = 0; p < seckillKeys.partitions(); p++) {
+            String queueName = seckillKeys.streamKey(p);
+            createGroup(queueName);
+            seckillOrderExecutor.submit(new VoucherOrderHandler(queueName, false));
+        }
+        if (legacy) {
+            createGroup(LEGACY_SECKILL_STREAM_KEY);
+            seckillOrderExecutor.submit(new VoucherOrderHandler(LEGACY_SECKILL_STREAM_KEY, true));
+        }
+    }
+
+    /**
+     * 创建消费者组，队列不存在时一并创建
+     */
+    private void createGroup(String queueName) {
+        try {
+            stringRedisTemplate.execute(connection -> connection.execute("XGROUP",
+                    "CREATE".getBytes(), queueName.getBytes(), GROUP_NAME.getBytes(), "0".getBytes(),
+                    "MKSTREAM".getBytes()), true);
+        } catch (Exception e) {
+            // BUSYGROUP，消费者组已经存在
+            log.debug("{}的消费者组{}已存在", queueName, GROUP_NAME);
+        }
+    }
+
+    @PreDestroy
+    private void destroy() throws InterruptedException {
+        running = false;
+        seckillOrderExecutor.shutdown();
+        // 等待阻塞中的XREADGROUP返回，把连接还给连接池后再关闭连接工厂
+        seckillOrderExecutor.awaitTermination(3, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 从消息队列读取秒杀脚本写入的订单，异步落库。
+     * <p>
+     * 消费者名为实例标识，订单落库成功或确认已存在后才XACK，否则留在pending-list中定期重试；
+     * 其它实例空闲超过一定时间的pending消息（例如实例已下线）由本实例认领后处理
+     */
+    private class VoucherOrderHandler implements Runnable {
+
+        private final String queueName;
+
+        /**
+         * 只消费完队列中已有的消息，然后删除队列
+         */
+        private final boolean drain;
+
+        private final Consumer consumer = Consumer.from(GROUP_NAME, instanceId.name());
+
+        private long nextPendingCheck;
+
+        VoucherOrderHandler(String queueName, boolean drain) {
+            this.queueName = queueName;
+            this.drain = drain;
+        }
+
+        @Override
+        public void run() {
+            if (drain) {
+                drain();
+                return;
+            }
+            while (running) {
+                try {
+                    // 1.定期认领其它实例遗留的消息，并重试pending-list
+                    if (System.currentTimeMillis() >= nextPendingCheck) {
+                        claimIdle();
+                        handlePendingList();
+                        nextPendingCheck = System.currentTimeMillis() + PENDING_RETRY_MILLIS;
+                    }
+                    // 2.获取消息队列中的订单信息 XREADGROUP GROUP g1 {instanceId} COUNT 10 BLOCK 2000 STREAMS stream.orders:{p} >
+                    List<MapRecord<String, Object, Object>> list = read(
+                            StreamReadOptions.empty().count(10).block(Duration.ofSeconds(2)), ReadOffset.lastConsumed());
+                    // 3.没有消息，继续下一次循环
+                    if (list == null || list.isEmpty()) {
+                        continue;
+                    }
+                    // 4.创建订单，成功后确认消息 XACK
+                    handleRecords(list);
+                } catch (Exception e) {
+                    if (!running) {
+                        return;
+                    }
+                    log.error("处理订单异常", e);
+                    nextPendingCheck = 0;
+                    sleep();
+                }
+            }
+        }
+
+        /**
+         * 先处理pending-list，再不阻塞地读取剩余消息，读不到时说明旧版本写入的消息已经消费完
+         */
+        private void drain() {
+            try {
+                claimIdle();
+                handlePendingList();
+                while (running) {
+                    List<MapRecord<String, Object, Object>> list = read(
+                            StreamReadOptions.empty().count(10), ReadOffset.lastConsumed());
+                    if (list == null || list.isEmpty()) {
+                        break;
+                    }
+                    handleRecords(list);
+                }
+                // 仍有未确认的消息时保留队列，下次启动继续处理
+                PendingMessagesSummary pending = stringRedisTemplate.opsForStream().pending(queueName, GROUP_NAME);
+                if (running && (pending == null || pending.getTotalPendingMessages() == 0)) {
+                    stringRedisTemplate.delete(queueName);
+                    log.info("旧订单队列{}已消费完并删除", queueName);
+                }
+            } catch (Exception e) {
+                log.error("消费旧订单队列{}失败，下次启动重试", queueName, e);
+            }
+        }
+
+        /**
+         * 从头到尾处理一遍本消费者已读取但没有确认的消息，处理失败的继续留在pending-list中
+         */
+        private void handlePendingList() {
+            String lastId = "0";
+            while (running) {
+                // 1.获取pending-list中lastId之后的订单信息 XREADGROUP GROUP g1 {instanceId} COUNT 10 STREAMS stream.orders:{p} lastId
+                List<MapRecord<String, Object, Object>> list = read(
+                        StreamReadOptions.empty().count(10), ReadOffset.from(lastId));
+                // 2.pending-list已经处理完
+                if (list == null || list.isEmpty()) {
+                    return;
+                }
+                handleRecords(list);
+                lastId = list.get(list.size() - 1).getId().getValue();
+            }
+        }
+
+        /**
+         * 认领其它消费者空闲超过PENDING_CLAIM_IDLE的消息 XCLAIM，之后由handlePendingList处理
+         */
+        private void claimIdle() {
+            PendingMessages pending = stringRedisTemplate.opsForStream()
+                    .pending(queueName, GROUP_NAME, Range.unbounded(), 100);
+            List<RecordId> ids = new ArrayList<>();
+            for (PendingMessage message : pending) {
+                if (!consumer.getName().equals(message.getConsumerName())
+                        && message.getElapsedTimeSinceLastDelivery().compareTo(PENDING_CLAIM_IDLE) >= 0) {
+                    ids.add(message.getId());
+                }
+            }
+            if (ids.isEmpty()) {
+                return;
+            }
+            stringRedisTemplate.execute((RedisCallback<List<RecordId>>) connection -> connection.streamCommands()
+                    .xClaimJustId(queueName.getBytes(StandardCharsets.UTF_8), GROUP_NAME, consumer.getName(),
+                            XClaimOptions.minIdle(PENDING_CLAIM_IDLE).ids(ids)));
+            log.info("认领{}中其它实例遗留的{}条订单消息", queueName, ids.size());
+        }
+
+        /**
+         * StreamOperations.read的参数是泛型可变参数，只读一个stream，数组不会被写入其它类型
+         */
+        @SuppressWarnings("unchecked")
+        private List<MapRecord<String, Object, Object>> read(StreamReadOptions options, ReadOffset offset) {
+            return stringRedisTemplate.opsForStream().read(consumer, options, StreamOffset.create(queueName, offset));
+        }
+
+        private void handleRecords(List<MapRecord<String, Object, Object>> list) {
+            for (MapRecord<String, Object, Object> record : list) {
+                VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true);
+                boolean done;
+                try {
+                    done = handleVoucherOrder(voucherOrder);
+                } catch (Exception e) {
+                    log.error("订单落库异常，稍后重试，orderId={}", voucherOrder.getId(), e);
+                    done = false;
+                }
+                if (done) {
+                    stringRedisTemplate.opsForStream().acknowledge(queueName, GROUP_NAME, record.getId());
+                }
+            }
+        }
+
+        private void sleep() {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return 订单已落库，可以确认消息
+     */
+    private boolean handleVoucherOrder(VoucherOrder voucherOrder) {
+        // 1.获取锁，脚本已经保证一人一单，这里兜底防止重复消费；没有获取到锁时稍后重试
+        RLock lock = redissonClient.getLock("lock:order:" + voucherOrder.getUserId());
+        if (!lock.tryLock()) {
+            log.warn("用户的订单正在处理，稍后重试，userId={}", voucherOrder.getUserId());
+            return false;
+        }
+        try {
+            // 2.通过代理对象调用，事务才能生效
+            if (proxy.createVoucherOrder(voucherOrder)) {
+                return true;
+            }
+            // 3.没有创建订单：重复投递时订单已经存在，可以确认；否则留在pending-list中等待人工处理
+            if (orderExists(voucherOrder.getId())) {
+                return true;
+            }
+            log.error("订单无法落库，保留在pending-list中，orderId={}", voucherOrder.getId());
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean orderExists(Long orderId) {
+        String table = voucherOrderShards.lookupTableOf(orderId);
+        return table != null && VoucherOrderShards.on(table, () -> getById(orderId)) != null;
+    }
+
     @Override
     public Result seckillVoucher(Long voucherId) {
+        // 1.用本地副本校验秒杀时间，未开始、已结束的请求不访问Redis
+        SeckillVoucher meta = seckillVoucherService.queryMeta(voucherId);
+        if (meta == null) {
+            return Result.fail("秒杀券不存在！");
+        }
+        long now = System.currentTimeMillis();
+        LocalDateTime time = LocalDateTimeUtil.of(now);
+        if (meta.getBeginTime().isAfter(time)) {
+            SECKILL_RESULTS[SECKILL_NOT_STARTED].increment();
+            return Result.fail(SECKILL_FAILURES[SECKILL_NOT_STARTED]);
+        }
+        if (meta.getEndTime().isBefore(time)) {
+            SECKILL_RESULTS[SECKILL_ENDED].increment();
+            return Result.fail(SECKILL_FAILURES[SECKILL_ENDED]);
+        }
         //获取用户
         Long userId = UserHolder.getUser().getId();
         long orderId = redisIdWorker.nextId("order");
-        // 1.执行lua脚本
+        // 2.执行lua脚本，在扣库存的同一次调用中按Redis中的秒杀时间再校验一次
+        long begin = System.nanoTime();
         Long result = stringRedisTemplate.execute(
                 SECKILL_SCRIPT,
-                Collections.emptyList(),
-                voucherId.toString(), userId.toString(), String.valueOf(orderId)
+                Arrays.asList(seckillKeys.stockKey(voucherId), seckillKeys.orderKey(voucherId),
+                        seckillKeys.streamKey(voucherId), seckillKeys.metaKey(voucherId)),
+                voucherId.toString(), userId.toString(), String.valueOf(orderId), String.valueOf(now)
         );
+        SECKILL_SCRIPT_TIMER.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
         int r = result.intValue();
-        // 2.判断结果是否为0
+        if (r >= 0 && r < SECKILL_RESULTS.length) {
+            SECKILL_RESULTS[r].increment();
+        }
+        // 3.判断结果是否为0
         if (r != 0) {
-            // 2.1.不为0 ，代表没有购买资格
-            return Result.fail(r == 1 ? "库存不足" : "不能重复下单");
+            // 3.1.不为0 ，代表没有购买资格
+            return Result.fail(r > 0 && r < SECKILL_FAILURES.length ? SECKILL_FAILURES[r] : "秒杀失败");
         }
-        //TODO 保存阻塞队列
-        // 3.返回订单id
+        // 4.返回订单id，订单由消息队列异步落库
         return Result.ok(orderId);
     }
 
-    @Transactional
-    public synchronized Result createVoucherOrder(Long voucherId) {
-
+    @Override
+    public Result createVoucherOrder(Long voucherId) {
         Long userId = UserHolder.getUser().getId();
-        // 5.1.查询订单
-        int count = query().eq("user_id", userId).eq("voucher_id", voucherId).count();
-        // 5.2.判断是否存在
-        if (count > 0) {
-            // 用户已经购买过了
-            return Result.fail("用户已经购买过一次！");
+        // 1.按用户加分布式锁，代替synchronized：多实例下同样有效，也不会把虚拟线程固定在载体线程上
+        RLock lock = redissonClient.getLock("lock:order:" + userId);
+        if (!lock.tryLock()) {
+            return Result.fail("不允许重复下单");
+        }
+        try {
+            // 2.创建订单
+            VoucherOrder voucherOrder = new VoucherOrder();
+            // 2.1.订单id
+            voucherOrder.setId(redisIdWorker.nextId("order"));
+            // 2.2.用户id
+            voucherOrder.setUserId(userId);
+            // 2.3.代金券id
+            voucherOrder.setVoucherId(voucherId);
+            // 3.通过代理对象调用，事务才能生效
+            if (!proxy.createVoucherOrder(voucherOrder)) {
+                return Result.fail("库存不足或已经购买过一次！");
+            }
+            return Result.ok(voucherOrder.getId());
+        } finally {
+            lock.unlock();
         }
+    }
 
-        // 6.扣减库存
+    @Transactional
+    @Override
+    public boolean createVoucherOrder(VoucherOrder voucherOrder) {
+        Long userId = voucherOrder.getUserId();
+        Long voucherId = voucherOrder.getVoucherId();
+        // 1.查询订单，判断是否存在：订单只可能在优惠券创建之后的分表中，包括已归档的，通常只有一两张表
+        SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
+        if (voucher == null) {
+            log.error("秒杀券不存在，voucherId={}", voucherId);
+            return false;
+        }
+        for (String table : voucherOrderShards.tablesSince(voucher.getCreateTime())) {
+            int count = VoucherOrderShards.on(table,
+                    () -> query().eq("user_id", userId).eq("voucher_id", voucherId).count());
+            if (count > 0) {
+                log.error("用户已经购买过一次，userId={}", userId);
+                return false;
+            }
+        }
+        // 2.扣减库存
         boolean success = seckillVoucherService.update()
-                .setSql("stock = stock - 1") // set stock = stock - 1
-                .eq("voucher_id", voucherId).gt("stock", 0) // where id = ? and stock > 0
+                .setSql("stock = stock - 1")
+                .eq("voucher_id", voucherId).gt("stock", 0)
                 .update();
         if (!success) {
-            // 扣减失败
-            return Result.fail("库存不足！");
+            log.error("库存不足，voucherId={}", voucherId);
+            return false;
         }
+        // 3.创建订单，写入订单id所在月份的分表
+        YearMonth month = VoucherOrderShards.monthOf(voucherOrder.getId());
+        return VoucherOrderShards.on(VoucherOrderShards.tableOf(month), () -> save(voucherOrder));
+    }
 
-        // 7.创建订单
-        VoucherOrder voucherOrder = new VoucherOrder();
-        // 7.1.订单id
-        long orderId = redisIdWorker.nextId("order");
-        voucherOrder.setId(orderId);
-        // 7.2.用户id
-        voucherOrder.setUserId(userId);
-        // 7.3.代金券id
-        voucherOrder.setVoucherId(voucherId);
-        save(voucherOrder);
-
-        // 7.返回订单id
-        return Result.ok(orderId);
+    @Override
+    public Result queryOrderById(Long orderId) {
+        // 1.由订单id中的时间算出分表，该月没有分表说明订单不存在
+        String table = voucherOrderShards.lookupTableOf(orderId);
+        if (table == null) {
+            return Result.fail("订单不存在！");
+        }
+        // 2.只查这一张表，只能查看自己的订单
+        VoucherOrder order = VoucherOrderShards.on(table, () -> getById(orderId));
+        if (order == null || !order.getUserId().equals(UserHolder.getUser().getId())) {
+            return Result.fail("订单不存在！");
+        }
+        return Result.ok(order);
+    }
+
+    @Override
+    public Result queryMyOrders(String cursor) {
+        Long userId = UserHolder.getUser().getId();
+        if (StrUtil.isNotBlank(cursor) && !NumberUtil.isLong(cursor)) {
+            return Result.fail("游标不合法！");
+        }
+        Long lastId = StrUtil.isBlank(cursor) ? null : Long.valueOf(cursor);
+        int size = SystemConstants.DEFAULT_PAGE_SIZE;
+        // 1.游标之后的订单只可能在游标所在月份及更早的分表中
+        List<YearMonth> months = voucherOrderShards.onlineMonths();
+        if (lastId != null) {
+            YearMonth lastMonth = VoucherOrderShards.monthOf(lastId);
+            months.removeIf(month -> month.isAfter(lastMonth));
+        }
+        // 2.各分表并行查询，每张表最多取一页；线程池满时放弃已提交的查询
+        List<CompletableFuture<List<VoucherOrder>>> futures = new ArrayList<>(months.size());
+        try {
+            for (YearMonth month : months) {
+                futures.add(supplyOnShard(month, () -> query()
+                        .eq("user_id", userId)
+                        .lt(lastId != null, "id", lastId)
+                        .orderByDesc("id")
+                        .last("limit " + size)
+                        .list()));
+            }
+        } catch (RejectedExecutionException e) {
+            futures.forEach(future -> future.cancel(false));
+            ORDER_SHARD_REJECTED.increment();
+            log.warn("订单分表查询线程池已满，userId={}", userId);
+            return Result.fail("系统繁忙，请稍后再试！");
+        }
+        // 3.合并后按id倒序取一页
+        List<VoucherOrder> orders = futures.stream()
+                .flatMap(future -> future.join().stream())
+                .sorted(Comparator.comparing(VoucherOrder::getId).reversed())
+                .limit(size)
+                .collect(Collectors.toList());
+        String next = orders.size() == size ? String.valueOf(orders.get(size - 1).getId()) : null;
+        return Result.ok(new CursorResult(orders, next));
+    }
+
+    /**
+     * 在分表查询线程上执行，带上当前用户：读写分离时刚下过单的用户仍然读主库
+     */
+    private static <T> CompletableFuture<T> supplyOnShard(YearMonth month, Supplier<T> query) {
+        UserDTO user = UserHolder.getUser();
+        return CompletableFuture.supplyAsync(() -> {
+            UserDTO previous = UserHolder.getUser();
+            UserHolder.saveUser(user);
+            try {
+                return VoucherOrderShards.on(VoucherOrderShards.tableOf(month), query);
+            } finally {
+                if (previous == null) {
+                    UserHolder.removeUser();
+                } else {
+                    UserHolder.saveUser(previous);
+                }
+            }
+        }, ORDER_SHARD_EXECUTOR);
     }
 }
@@ -0,0 +1,229 @@
+package com.hmdp.utils;
+
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 在共享连接上自动攒批发送命令的Lettuce连接工厂。
+ * <p>
+ * 普通命令本来就复用同一条共享连接，但每条命令都单独write并flush一次。这里关闭共享连接的自动flush，
+ * 命令先进入Lettuce的命令缓冲，由一个flush线程把这段时间内各线程发出的命令一次写出；
+ * 并发越高每批越大，系统调用次数不再随命令数增长。
+ * <p>
+ * 事务、管道和XREADGROUP这类阻塞命令仍然从连接池借用独占连接，不受影响。
+ * <p>
+ * 多了一次到flush线程的切换，单核机器上吞吐反而下降，是否开启以RedisAutoBatchBenchmark在目标机器上的结果为准。
+ * <p>
+ * hmdp.redis.batch.size：每次flush写出的命令数；hmdp.redis.batch.pending：等待flush的命令数；
+ * hmdp.redis.command：从发出命令到收到响应的耗时，包含攒批等待
+ */
+@Slf4j
+public class AutoBatchingConnectionFactory extends LettuceConnectionFactory {
+
+    /**
+     * 没有新命令时的兜底flush间隔
+     */
+    private static final long IDLE_FLUSH_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final DistributionSummary BATCH_SIZE = DistributionSummary.builder("hmdp.redis.batch.size")
+            .register(Metrics.globalRegistry);
+
+    /**
+     * 每种命令一个计时器，创建后复用
+     */
+    private static final Map<String, Timer> COMMAND_TIMERS = new ConcurrentHashMap<>();
+
+    /**
+     * 同步方法对应的异步方法；没有对应异步方法的映射到自己
+     */
+    private static final Map<Method, Method> ASYNC_METHODS = new ConcurrentHashMap<>();
+
+    /**
+     * 攒批等待时间，0表示flush线程空闲时立即写出
+     */
+    private final long windowNanos;
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private volatile StatefulRedisConnection<byte[], byte[]> nativeConnection;
+
+    private volatile StatefulRedisConnection<byte[], byte[]> batchingConnection;
+
+    private volatile boolean running;
+
+    private Thread flusher;
+
+    public AutoBatchingConnectionFactory(RedisStandaloneConfiguration standaloneConfig,
+                                         LettuceClientConfiguration clientConfig, Duration window) {
+        super(standaloneConfig, clientConfig);
+        this.windowNanos = window.toNanos();
+        Metrics.gauge("hmdp.redis.batch.pending", pending, AtomicInteger::get);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        running = true;
+        flusher = new Thread(this::flushLoop, "redis-auto-flush");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @Override
+    public void destroy() {
+        running = false;
+        if (flusher != null) {
+            LockSupport.unpark(flusher);
+        }
+        // 写出最后一批，再关闭连接
+        flush();
+        super.destroy();
+    }
+
+    @Override
+    protected StatefulRedisConnection<byte[], byte[]> getSharedConnection() {
+        StatefulRedisConnection<byte[], byte[]> connection = super.getSharedConnection();
+        if (connection == null) {
+            return null;
+        }
+        if (connection != nativeConnection) {
+            // 第一次使用或者共享连接被重建，关闭自动flush并包装
+            synchronized (this) {
+                if (connection != nativeConnection) {
+                    connection.setAutoFlushCommands(false);
+                    batchingConnection = wrap(connection);
+                    nativeConnection = connection;
+                }
+            }
+        }
+        return batchingConnection;
+    }
+
+    private void flushLoop() {
+        while (running) {
+            if (pending.get() == 0) {
+                LockSupport.parkNanos(this, IDLE_FLUSH_NANOS);
+            }
+            if (windowNanos > 0 && pending.get() > 0) {
+                // 等一个窗口，让更多命令进入同一批
+                LockSupport.parkNanos(this, windowNanos);
+            }
+            flush();
+        }
+    }
+
+    private void flush() {
+        int batch = pending.getAndSet(0);
+        StatefulRedisConnection<byte[], byte[]> connection = nativeConnection;
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.flushCommands();
+        } catch (Exception e) {
+            log.warn("Redis命令批量写出失败", e);
+        }
+        if (batch > 0) {
+            BATCH_SIZE.record(batch);
+        }
+    }
+
+    /**
+     * 命令已进入缓冲：记录耗时，需要时唤醒flush线程
+     */
+    private void onDispatch(String command, long begin, RedisFuture<?> future) {
+        Timer timer = COMMAND_TIMERS.get(command);
+        if (timer == null) {
+            timer = COMMAND_TIMERS.computeIfAbsent(command, c -> Metrics.timer("hmdp.redis.command", "command", c));
+        }
+        Timer t = timer;
+        future.whenComplete((r, e) -> t.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS));
+        if (pending.getAndIncrement() == 0) {
+            LockSupport.unpark(flusher);
+        }
+    }
+
+    /**
+     * 包装共享连接：异步命令发出后通知flush线程；同步命令改为异步发出再等待结果，
+     * 否则同步调用会一直阻塞在未flush的命令上
+     */
+    @SuppressWarnings("unchecked")
+    private StatefulRedisConnection<byte[], byte[]> wrap(StatefulRedisConnection<byte[], byte[]> connection) {
+        RedisAsyncCommands<byte[], byte[]> async = connection.async();
+        RedisAsyncCommands<byte[], byte[]> batchingAsync = proxy(RedisAsyncCommands.class, (p, method, args) -> {
+            long begin = System.nanoTime();
+            Object result = invoke(async, method, args);
+            if (result instanceof RedisFuture) {
+                onDispatch(method.getName(), begin, (RedisFuture<?>) result);
+            }
+            return result;
+        });
+        RedisCommands<byte[], byte[]> batchingSync = proxy(RedisCommands.class, (p, method, args) -> {
+            Method asyncMethod = asyncMethodOf(method);
+            if (asyncMethod == method) {
+                return invoke(connection.sync(), method, args);
+            }
+            RedisFuture<Object> future = (RedisFuture<Object>) invoke(batchingAsync, asyncMethod, args);
+            return LettuceFutures.awaitOrCancel(future, connection.getTimeout().toNanos(), TimeUnit.NANOSECONDS);
+        });
+        return proxy(StatefulRedisConnection.class, (p, method, args) -> {
+            switch (method.getName()) {
+                case "async":
+                    return batchingAsync;
+                case "sync":
+                    return batchingSync;
+                default:
+                    return invoke(connection, method, args);
+            }
+        });
+    }
+
+    private static Method asyncMethodOf(Method syncMethod) {
+        Method asyncMethod = ASYNC_METHODS.get(syncMethod);
+        if (asyncMethod != null) {
+            return asyncMethod;
+        }
+        return ASYNC_METHODS.computeIfAbsent(syncMethod, m -> {
+            try {
+                Method async = RedisAsyncCommands.class.getMethod(m.getName(), m.getParameterTypes());
+                return RedisFuture.class.isAssignableFrom(async.getReturnType()) ? async : m;
+            } catch (NoSuchMethodException e) {
+                return m;
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,571 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import cn.hutool.core.util.StrUtil;
+import com.github.shyiko.mysql.binlog.BinaryLogClient;
+import com.github.shyiko.mysql.binlog.event.DeleteRowsEventData;
+import com.github.shyiko.mysql.binlog.event.Event;
+import com.github.shyiko.mysql.binlog.event.EventHeaderV4;
+import com.github.shyiko.mysql.binlog.event.EventType;
+import com.github.shyiko.mysql.binlog.event.QueryEventData;
+import com.github.shyiko.mysql.binlog.event.RotateEventData;
+import com.github.shyiko.mysql.binlog.event.TableMapEventData;
+import com.github.shyiko.mysql.binlog.event.TableMapEventMetadata;
+import com.github.shyiko.mysql.binlog.event.UpdateRowsEventData;
+import com.github.shyiko.mysql.binlog.event.WriteRowsEventData;
+import com.github.shyiko.mysql.binlog.event.deserialization.EventDeserializer;
+import com.github.shyiko.mysql.binlog.network.ServerException;
+import com.hmdp.entity.Shop;
+import com.hmdp.service.ISeckillVoucherService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.sql.DataSource;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.BLOG_HOT_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_COMMENTS_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_PAGE_KEY;
+import static com.hmdp.utils.RedisConstants.CDC_POSITION_KEY;
+import static com.hmdp.utils.RedisConstants.CDC_SERVER_ID_KEY;
+import static com.hmdp.utils.RedisConstants.CDC_SERVER_ID_TTL;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_KEY;
+
+/**
+ * 读取MySQL binlog，把tb_shop、tb_voucher、tb_seckill_voucher、tb_blog的行变更转换为缓存删除和索引更新，
+ * 不依赖每条写入路径记得删除缓存，直接改库或其他服务写入同样生效。hmdp.cdc.enabled=true时启用。
+ * 秒杀时间被修改时删除Redis中的秒杀时间和本实例的本地副本，下次秒杀时从数据库重新加载。
+ * <p>
+ * 行变更先合并到当前批次，每隔hmdp.cdc.flush-interval执行一次：整批的key一次删除，同一商铺的多次变更只按最后的数据更新GEO和搜索索引。
+ * 执行成功后把批次中最后一个完整事务的binlog位置保存到Redis，重启或断线后从这里继续，重复执行的变更都是幂等的；Redis失败时整批稍后重试。
+ * <p>
+ * MySQL需要binlog_format=ROW、binlog_row_image=FULL，账号需要REPLICATION SLAVE、REPLICATION CLIENT权限。
+ * 搜索索引在每个实例的内存中，所以每个实例各自读取binlog，server-id不能重复，也不能与MySQL实例的server_id相同：
+ * 没有配置hmdp.cdc.server-id时由实例标识生成，启动时在Redis中登记，已被其它实例使用时启动失败。
+ * <p>
+ * hmdp.cdc.lag：事务提交到缓存删除、索引更新完成的延迟，binlog中的时间只精确到秒；hmdp.cdc.failures：执行失败的批次数
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "hmdp.cdc.enabled", havingValue = "true")
+public class BinlogCacheSync implements BinaryLogClient.EventListener {
+
+    private static final String TB_SHOP = "tb_shop";
+    private static final String TB_VOUCHER = "tb_voucher";
+    private static final String TB_SECKILL_VOUCHER = "tb_seckill_voucher";
+    private static final String TB_BLOG = "tb_blog";
+    private static final Set<String> TABLES = new HashSet<>(Arrays.asList(TB_SHOP, TB_VOUCHER, TB_SECKILL_VOUCHER, TB_BLOG));
+
+    /**
+     * 读取binlog的起始位置已被清除
+     */
+    private static final int ER_MASTER_FATAL_ERROR_READING_BINLOG = 1236;
+    private static final long CONNECT_TIMEOUT_MILLIS = 10000;
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    private static final Timer CDC_LAG = Metrics.timer("hmdp.cdc.lag");
+    private static final Counter CDC_FAILURES = Metrics.counter("hmdp.cdc.failures");
+
+    @Resource
+    private DataSource dataSource;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private ShopSearchIndex shopSearchIndex;
+    @Resource
+    private SeckillKeys seckillKeys;
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+    @Resource
+    private InstanceId instanceId;
+
+    @Value("${hmdp.cdc.host:127.0.0.1}")
+    private String host;
+    @Value("${hmdp.cdc.port:3306}")
+    private int port;
+    @Value("${hmdp.cdc.username:${spring.datasource.username}}")
+    private String username;
+    @Value("${hmdp.cdc.password:${spring.datasource.password}}")
+    private String password;
+    @Value("${hmdp.cdc.database:hmdp}")
+    private String database;
+    @Value("${hmdp.cdc.server-id:}")
+    private Long configuredServerId;
+    @Value("${hmdp.cdc.flush-interval:100ms}")
+    private Duration flushInterval;
+
+    private final ScheduledExecutorService flushExecutor = Executors.newSingleThreadScheduledExecutor(
+            ThreadFactoryBuilder.create().setNamePrefix("binlog-flush-").setDaemon(true).build());
+
+    private BinaryLogClient client;
+
+    private long serverId;
+
+    /**
+     * tableId -> 订阅的表，由每个事务中的TABLE_MAP事件建立
+     */
+    private final Map<Long, TableInfo> tables = new ConcurrentHashMap<>();
+
+    /**
+     * 表名 -> 列名，binlog中没有列名时从information_schema读取，ALTER TABLE后重新读取
+     */
+    private final Map<String, List<String>> columns = new ConcurrentHashMap<>();
+
+    /**
+     * 当前binlog文件，以及最后一个完整事务之后的位置，断线后从这里重新连接
+     */
+    private volatile String binlogFilename;
+    private volatile String resumeFilename;
+    private volatile long resumePosition;
+
+    private Batch pending = new Batch();
+    private Batch failed;
+    private long retryTime;
+
+    @PostConstruct
+    public void init() {
+        // 1.确定server-id并登记，与其它实例重复时启动失败
+        serverId = configuredServerId != null ? configuredServerId : serverIdOf(instanceId.name());
+        claimServerId();
+        // 2.从上次保存的位置继续，没有时从MySQL当前的位置开始
+        String saved = stringRedisTemplate.opsForValue().get(CDC_POSITION_KEY + serverId);
+        if (StrUtil.isNotBlank(saved)) {
+            int index = saved.lastIndexOf('/');
+            resumeFilename = saved.substring(0, index);
+            resumePosition = Long.parseLong(saved.substring(index + 1));
+        }
+        // 3.字符串按字节读出后统一按UTF-8解码，时间只比较是否变化，按数值读出
+        EventDeserializer deserializer = new EventDeserializer();
+        deserializer.setCompatibilityMode(EventDeserializer.CompatibilityMode.DATE_AND_TIME_AS_LONG,
+                EventDeserializer.CompatibilityMode.CHAR_AND_BINARY_AS_BYTE_ARRAY);
+        client = new BinaryLogClient(host, port, username, password);
+        client.setServerId(serverId);
+        client.setEventDeserializer(deserializer);
+        // 断线后由ensureConnected从最后一个完整事务重新连接，不在事务中间续传
+        client.setKeepAlive(false);
+        client.registerEventListener(this);
+        long interval = flushInterval.toMillis();
+        flushExecutor.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        try {
+            client.disconnect();
+        } catch (Exception e) {
+            log.warn("断开binlog连接失败", e);
+        }
+        flushExecutor.shutdown();
+        try {
+            flushExecutor.awaitTermination(CONNECT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        String key = CDC_SERVER_ID_KEY + serverId;
+        if (instanceId.name().equals(stringRedisTemplate.opsForValue().get(key))) {
+            stringRedisTemplate.delete(key);
+        }
+    }
+
+    /**
+     * 由实例标识生成server-id，放在2^31到2^32-1之间，避开MySQL实例常用的较小的server_id
+     */
+    static long serverIdOf(String instanceName) {
+        return 0x80000000L | (MurmurHash.hash32(instanceName) & 0x7fffffffL);
+    }
+
+    /**
+     * 在Redis中登记server-id，运行期间定时续期，实例退出后过期释放；同一个实例重启时可以直接接管
+     */
+    private void claimServerId() {
+        String key = CDC_SERVER_ID_KEY + serverId;
+        String name = instanceId.name();
+        Boolean claimed = stringRedisTemplate.opsForValue().setIfAbsent(key, name, CDC_SERVER_ID_TTL, TimeUnit.MINUTES);
+        if (!Boolean.TRUE.equals(claimed)) {
+            String owner = stringRedisTemplate.opsForValue().get(key);
+            if (owner != null && !owner.equals(name)) {
+                throw new IllegalStateException("binlog server-id " + serverId + "已被实例" + owner
+                        + "使用，请为本实例配置不同的hmdp.cdc.server-id或hmdp.instance-id");
+            }
+            stringRedisTemplate.opsForValue().set(key, name, CDC_SERVER_ID_TTL, TimeUnit.MINUTES);
+        }
+    }
+
+    private void renewServerId() {
+        String key = CDC_SERVER_ID_KEY + serverId;
+        try {
+            if (!Boolean.TRUE.equals(stringRedisTemplate.expire(key, CDC_SERVER_ID_TTL, TimeUnit.MINUTES))) {
+                stringRedisTemplate.opsForValue().setIfAbsent(key, instanceId.name(), CDC_SERVER_ID_TTL, TimeUnit.MINUTES);
+            }
+        } catch (Exception e) {
+            log.warn("续期binlog server-id登记失败", e);
+        }
+    }
+
+    /**
+     * 启动时和断线后连接MySQL
+     */
+    @Scheduled(fixedDelay = 5000)
+    public void ensureConnected() {
+        renewServerId();
+        if (client.isConnected()) {
+            return;
+        }
+        tables.clear();
+        client.setBinlogFilename(resumeFilename);
+        client.setBinlogPosition(resumePosition);
+        try {
+            client.connect(CONNECT_TIMEOUT_MILLIS);
+            log.info("开始读取binlog，server-id={}, 位置{}/{}", serverId, client.getBinlogFilename(), client.getBinlogPosition());
+        } catch (ServerException e) {
+            if (e.getErrorCode() != ER_MASTER_FATAL_ERROR_READING_BINLOG || resumeFilename == null) {
+                log.warn("连接binlog失败", e);
+                return;
+            }
+            // 保存的位置已被清除，这段时间的变更只能等缓存过期，从当前位置重新开始
+            log.error("binlog位置{}/{}已不存在，从当前位置开始读取", resumeFilename, resumePosition, e);
+            resumeFilename = null;
+            resumePosition = 0;
+            stringRedisTemplate.delete(CDC_POSITION_KEY + serverId);
+        } catch (Exception e) {
+            log.warn("连接binlog失败", e);
+        }
+    }
+
+    @Override
+    public void onEvent(Event event) {
+        EventHeaderV4 header = event.getHeader();
+        EventType type = header.getEventType();
+        if (type == EventType.ROTATE) {
+            binlogFilename = ((RotateEventData) event.getData()).getBinlogFilename();
+        } else if (type == EventType.TABLE_MAP) {
+            onTableMap(event.getData());
+        } else if (type == EventType.QUERY) {
+            String sql = ((QueryEventData) event.getData()).getSql();
+            if (StrUtil.startWithIgnoreCase(StrUtil.trim(sql), "ALTER")) {
+                columns.clear();
+            }
+        } else if (type == EventType.XID) {
+            // 事务结束：记录位置和提交时间
+            resumeFilename = binlogFilename;
+            resumePosition = header.getNextPosition();
+            synchronized (this) {
+                pending.commit(binlogFilename, header.getNextPosition(), header.getTimestamp());
+            }
+        } else if (EventType.isWrite(type)) {
+            WriteRowsEventData data = event.getData();
+            TableInfo table = tables.get(data.getTableId());
+            if (table != null) {
+                for (Serializable[] row : data.getRows()) {
+                    onRow(table.name, null, table.toRow(data.getIncludedColumns(), row));
+                }
+            }
+        } else if (EventType.isUpdate(type)) {
+            UpdateRowsEventData data = event.getData();
+            TableInfo table = tables.get(data.getTableId());
+            if (table != null) {
+                for (Map.Entry<Serializable[], Serializable[]> row : data.getRows()) {
+                    onRow(table.name, table.toRow(data.getIncludedColumnsBeforeUpdate(), row.getKey()),
+                            table.toRow(data.getIncludedColumns(), row.getValue()));
+                }
+            }
+        } else if (EventType.isDelete(type)) {
+            DeleteRowsEventData data = event.getData();
+            TableInfo table = tables.get(data.getTableId());
+            if (table != null) {
+                for (Serializable[] row : data.getRows()) {
+                    onRow(table.name, table.toRow(data.getIncludedColumns(), row), null);
+                }
+            }
+        }
+    }
+
+    private void onTableMap(TableMapEventData data) {
+        if (!database.equalsIgnoreCase(data.getDatabase()) || !TABLES.contains(data.getTable())) {
+            return;
+        }
+        // MySQL 8.0.23起binlog_row_metadata=FULL时事件中带有列名，否则按表读取一次
+        TableMapEventMetadata metadata = data.getEventMetadata();
+        List<String> names = metadata != null && metadata.getColumnNames() != null
+                ? metadata.getColumnNames() : columns.computeIfAbsent(data.getTable(), this::loadColumns);
+        tables.put(data.getTableId(), new TableInfo(data.getTable(), names));
+    }
+
+    /**
+     * 把一行变更合并到当前批次
+     * @param before 变更前的数据，插入时为null
+     * @param after 变更后的数据，删除时为null
+     */
+    private synchronized void onRow(String table, Map<String, Object> before, Map<String, Object> after) {
+        switch (table) {
+            case TB_SHOP:
+                pending.shopChanged(before == null ? null : toShop(before), after == null ? null : toShop(after));
+                break;
+            case TB_BLOG:
+                // 删除博客时清理点赞、评论缓存和热榜
+                if (after == null) {
+                    Long blogId = longOf(before.get("id"));
+                    pending.deletes.add(BLOG_LIKED_KEY + blogId);
+                    pending.deletes.add(CACHE_COMMENTS_KEY + blogId);
+                    pending.hotRemovals.add(blogId.toString());
+                    pending.changed = true;
+                }
+                break;
+            case TB_VOUCHER:
+            case TB_SECKILL_VOUCHER:
+                // 秒杀库存以Redis为准，订单扣减的库存不同步回Redis；删除优惠券时清理秒杀的key，秒杀时间变化时重新加载
+                String idColumn = TB_VOUCHER.equals(table) ? "id" : "voucher_id";
+                if (after == null) {
+                    Long voucherId = longOf(before.get(idColumn));
+                    pending.deletes.add(seckillKeys.stockKey(voucherId));
+                    pending.deletes.add(seckillKeys.orderKey(voucherId));
+                    pending.metaEvictions.add(voucherId);
+                    pending.changed = true;
+                } else if (TB_SECKILL_VOUCHER.equals(table) && (before == null
+                        || !Objects.equals(before.get("begin_time"), after.get("begin_time"))
+                        || !Objects.equals(before.get("end_time"), after.get("end_time")))) {
+                    pending.metaEvictions.add(longOf(after.get(idColumn)));
+                    pending.changed = true;
+                }
+                break;
+            default:
+        }
+    }
+
+    /**
+     * 执行当前批次，失败的批次先于新的变更重试
+     */
+    void flush() {
+        Batch batch;
+        synchronized (this) {
+            if (failed != null) {
+                if (System.currentTimeMillis() < retryTime) {
+                    return;
+                }
+                batch = failed;
+            } else {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                pending = new Batch();
+            }
+            failed = null;
+        }
+        try {
+            apply(batch);
+        } catch (Exception e) {
+            synchronized (this) {
+                failed = batch;
+                retryTime = System.currentTimeMillis() + RETRY_DELAY_MILLIS;
+            }
+            CDC_FAILURES.increment();
+            log.warn("执行binlog变更失败，{}毫秒后重试，keys={}, shops={}", RETRY_DELAY_MILLIS,
+                    batch.deletes.size(), batch.shops.size(), e);
+        }
+    }
+
+    private void apply(Batch batch) {
+        // 1.删除缓存
+        if (!batch.deletes.isEmpty()) {
+            stringRedisTemplate.delete(batch.deletes);
+        }
+        // 2.GEO：从原来的类型中移除，加入现在的类型
+        Map<String, List<String>> geoRemovals = new HashMap<>();
+        Map<String, Map<String, Point>> geoAdds = new HashMap<>();
+        batch.shops.forEach((id, shop) -> {
+            Long typeId = shop == null ? null : shop.getTypeId();
+            for (Long oldTypeId : batch.shopOldTypes.getOrDefault(id, new HashSet<>())) {
+                if (!oldTypeId.equals(typeId)) {
+                    geoRemovals.computeIfAbsent(SHOP_GEO_KEY + oldTypeId, k -> new ArrayList<>()).add(id.toString());
+                }
+            }
+            if (typeId != null && shop.getX() != null && shop.getY() != null) {
+                geoAdds.computeIfAbsent(SHOP_GEO_KEY + typeId, k -> new HashMap<>())
+                        .put(id.toString(), new Point(shop.getX(), shop.getY()));
+            }
+        });
+        geoRemovals.forEach((key, members) -> stringRedisTemplate.opsForGeo().remove(key, members.toArray(new String[0])));
+        geoAdds.forEach((key, members) -> stringRedisTemplate.opsForGeo().add(key, members));
+        // 3.热门博客
+        if (!batch.hotRemovals.isEmpty()) {
+            stringRedisTemplate.opsForZSet().remove(BLOG_HOT_KEY, batch.hotRemovals.toArray());
+        }
+        // 4.秒杀时间，同时删除本实例的本地副本
+        if (!batch.metaEvictions.isEmpty()) {
+            seckillVoucherService.evictMeta(batch.metaEvictions);
+        }
+        // 5.本实例的搜索索引
+        batch.shops.forEach((id, shop) -> {
+            if (shop == null) {
+                shopSearchIndex.remove(id);
+            } else {
+                shopSearchIndex.index(shop);
+            }
+        });
+        // 6.保存位置，记录延迟
+        if (batch.filename != null) {
+            stringRedisTemplate.opsForValue().set(CDC_POSITION_KEY + serverId, batch.filename + "/" + batch.position);
+        }
+        long now = System.currentTimeMillis();
+        for (Long commitTime : batch.commitTimes) {
+            CDC_LAG.record(Math.max(0, now - commitTime), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private List<String> loadColumns(String table) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT COLUMN_NAME FROM information_schema.COLUMNS "
+                     + "WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ? ORDER BY ORDINAL_POSITION")) {
+            statement.setString(1, database);
+            statement.setString(2, table);
+            List<String> names = new ArrayList<>();
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    names.add(rs.getString(1).toLowerCase());
+                }
+            }
+            return names;
+        } catch (SQLException e) {
+            throw new IllegalStateException("读取" + table + "的列名失败", e);
+        }
+    }
+
+    private static Shop toShop(Map<String, Object> row) {
+        Object score = row.get("score");
+        return new Shop()
+                .setId(longOf(row.get("id")))
+                .setTypeId(longOf(row.get("type_id")))
+                .setName((String) row.get("name"))
+                .setArea((String) row.get("area"))
+                .setX(row.get("x") == null ? null : ((Number) row.get("x")).doubleValue())
+                .setY(row.get("y") == null ? null : ((Number) row.get("y")).doubleValue())
+                .setScore(score == null ? null : ((Number) score).intValue());
+    }
+
+    private static Long longOf(Object value) {
+        return value == null ? null : ((Number) value).longValue();
+    }
+
+    private static class TableInfo {
+        private final String name;
+        private final List<String> columns;
+
+        TableInfo(String name, List<String> columns) {
+            this.name = name;
+            this.columns = columns;
+        }
+
+        /**
+         * 按列名取出一行的值，行中只有included中的列，字符串按UTF-8解码
+         */
+        Map<String, Object> toRow(BitSet included, Serializable[] values) {
+            Map<String, Object> row = new HashMap<>(values.length * 2);
+            int i = 0;
+            for (int column = included.nextSetBit(0); column >= 0 && i < values.length;
+                 column = included.nextSetBit(column + 1)) {
+                Object value = values[i++];
+                if (column < columns.size()) {
+                    row.put(columns.get(column), value instanceof byte[]
+                            ? new String((byte[]) value, StandardCharsets.UTF_8) : value);
+                }
+            }
+            return row;
+        }
+    }
+
+    /**
+     * 一批待执行的变更
+     */
+    private static class Batch {
+        private final Set<String> deletes = new HashSet<>();
+        private final Set<String> hotRemovals = new HashSet<>();
+        private final Set<Long> metaEvictions = new HashSet<>();
+        /**
+         * 商铺id -> 最后的数据，删除时为null
+         */
+        private final Map<Long, Shop> shops = new LinkedHashMap<>();
+        /**
+         * 商铺id -> 变更前的类型，类型变化时从原来类型的GEO中移除
+         */
+        private final Map<Long, Set<Long>> shopOldTypes = new HashMap<>();
+        private final List<Long> commitTimes = new ArrayList<>();
+        private String filename;
+        private long position;
+        /**
+         * 当前事务是否修改了订阅的数据
+         */
+        private boolean changed;
+
+        void shopChanged(Shop before, Shop after) {
+            Long id = after != null ? after.getId() : before.getId();
+            shops.put(id, after);
+            deletes.add(CACHE_SHOP_KEY + id);
+            if (before != null && before.getTypeId() != null) {
+                shopOldTypes.computeIfAbsent(id, k -> new HashSet<>()).add(before.getTypeId());
+                addFirstPages(before.getTypeId());
+            }
+            if (after != null && after.getTypeId() != null) {
+                addFirstPages(after.getTypeId());
+            }
+            changed = true;
+        }
+
+        /**
+         * 按类型分页的第一页缓存，与ShopServiceImpl.queryShopByType中的key一致；后面几页等待过期
+         */
+        private void addFirstPages(Long typeId) {
+            deletes.add(CACHE_SHOP_PAGE_KEY + typeId + ":score:first");
+            deletes.add(CACHE_SHOP_PAGE_KEY + typeId + ":id:first");
+        }
+
+        void commit(String filename, long position, long timestamp) {
+            this.filename = filename;
+            this.position = position;
+            if (changed) {
+                commitTimes.add(timestamp);
+                changed = false;
+            }
+        }
+
+        boolean isEmpty() {
+            return filename == null && deletes.isEmpty() && shops.isEmpty() && hotRemovals.isEmpty()
+                    && metaEvictions.isEmpty();
+        }
+    }
+}
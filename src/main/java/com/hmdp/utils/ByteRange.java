@@ -0,0 +1,61 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * HTTP Range请求头中的单段字节范围，闭区间 [start, end]
+ */
+@Getter
+@AllArgsConstructor
+public class ByteRange {
+
+    private static final Pattern RANGE = Pattern.compile("^bytes=(\\d{0,18})-(\\d{0,18})$");
+
+    private final long start;
+    private final long end;
+
+    /**
+     * 解析Range请求头，只支持单段：bytes=start-end、bytes=start-、bytes=-suffixLength
+     * @param header Range请求头
+     * @param length 文件长度
+     * @return 没有Range请求头，或者请求头格式错误、倒置、多段、单位不是bytes时返回null，按RFC 7233忽略Range返回整个文件；
+     * 范围完全在文件之外时返回 start > end 的空范围
+     */
+    public static ByteRange parse(String header, long length) {
+        if (StrUtil.isBlank(header)) {
+            return null;
+        }
+        Matcher matcher = RANGE.matcher(header.trim());
+        if (!matcher.matches() || (matcher.group(1).isEmpty() && matcher.group(2).isEmpty())) {
+            return null;
+        }
+        // 1.bytes=-n，最后n个字节
+        if (matcher.group(1).isEmpty()) {
+            long suffix = Long.parseLong(matcher.group(2));
+            return suffix == 0 || length == 0 ? unsatisfiable() : new ByteRange(Math.max(0, length - suffix), length - 1);
+        }
+        // 2.bytes=a-b、bytes=a-，倒置的范围格式无效；结束位置超出文件时截断到文件末尾，起点超出文件时无法满足
+        long start = Long.parseLong(matcher.group(1));
+        long end = matcher.group(2).isEmpty() ? Long.MAX_VALUE : Long.parseLong(matcher.group(2));
+        if (end < start) {
+            return null;
+        }
+        if (start >= length) {
+            return unsatisfiable();
+        }
+        return new ByteRange(start, Math.min(end, length - 1));
+    }
+
+    public boolean isSatisfiable() {
+        return start <= end;
+    }
+
+    private static ByteRange unsatisfiable() {
+        return new ByteRange(0, -1);
+    }
+}
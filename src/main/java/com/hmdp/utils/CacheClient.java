@@ -4,11 +4,24 @@ import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -23,10 +36,26 @@ public class CacheClient {
 
     private final StringRedisTemplate stringRedisTemplate;
 
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    /**
+     * 缓存查询走的模板，开启hmdp.redis.read-from=replica-preferred时优先读副本；写入、删除和互斥锁仍然走主节点
+     */
+    private final StringRedisTemplate replicaRedisTemplate;
 
-    public CacheClient(StringRedisTemplate stringRedisTemplate) {
+    /**
+     * 缓存重建线程池，同一个key已经由互斥锁保证只有一个重建任务；开启虚拟线程时每个任务一个虚拟线程
+     */
+    private static final ExecutorService CACHE_REBUILD_EXECUTOR =
+            VirtualThreads.newExecutor("cache-rebuild-", () -> Executors.newFixedThreadPool(10));
+
+    /**
+     * 每个key前缀一组计数器，创建后复用，记录时不分配对象
+     */
+    private static final Map<String, CacheMeters> CACHE_METERS = new ConcurrentHashMap<>();
+
+    public CacheClient(StringRedisTemplate stringRedisTemplate,
+                       @Qualifier("replicaRedisTemplate") StringRedisTemplate replicaRedisTemplate) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.replicaRedisTemplate = replicaRedisTemplate;
     }
 
     public void set(String key, Object value, Long time, TimeUnit unit) {
@@ -45,21 +74,27 @@ public class CacheClient {
     public <R,ID> R queryWithPassThrough(
             String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit){
         String key = keyPrefix + id;
+        CacheMeters meters = meters(keyPrefix);
         // 1.从redis查询商铺缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        String json = replicaRedisTemplate.opsForValue().get(key);
         // 2.判断是否存在
         if (StrUtil.isNotBlank(json)) {
             // 3.存在，直接返回
+            meters.hit.increment();
             return JSONUtil.toBean(json, type);
         }
         // 判断命中的是否是空值
         if (json != null) {
             // 返回一个错误信息
+            meters.nullHit.increment();
             return null;
         }
 
         // 4.不存在，根据id查询数据库
+        meters.miss.increment();
+        long begin = System.nanoTime();
         R r = dbFallback.apply(id);
+        meters.rebuild.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
         // 5.不存在，返回错误
         if (r == null) {
             // 将空值写入redis
@@ -72,25 +107,32 @@ public class CacheClient {
         return r;
     }
 
+    /**
+     * 逻辑过期的值包装在RedisData中，与其它方法写入的实体JSON格式不同，keyPrefix不能与它们共用
+     */
     public <R, ID> R queryWithLogicalExpire(
             String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
         String key = keyPrefix + id;
+        CacheMeters meters = meters(keyPrefix);
         // 1.从redis查询商铺缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        String json = replicaRedisTemplate.opsForValue().get(key);
         // 2.判断是否存在
         if (StrUtil.isBlank(json)) {
             // 3.存在，直接返回
+            meters.miss.increment();
             return null;
         }
         // 4.命中，需要先把json反序列化为对象
         RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-        R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
+        R r = redisData.getData() instanceof JSONObject ? JSONUtil.toBean((JSONObject) redisData.getData(), type) : null;
         LocalDateTime expireTime = redisData.getExpireTime();
-        // 5.判断是否过期
-        if(expireTime.isAfter(LocalDateTime.now())) {
+        // 5.判断是否过期，不是RedisData格式的值按已过期处理，重建为RedisData
+        if(expireTime != null && expireTime.isAfter(LocalDateTime.now())) {
             // 5.1.未过期，直接返回店铺信息
+            meters.hit.increment();
             return r;
         }
+        meters.expired.increment();
         // 5.2.已过期，需要缓存重建
         // 6.缓存重建
         // 6.1.获取互斥锁
@@ -101,10 +143,12 @@ public class CacheClient {
             // 6.3.成功，开启独立线程，实现缓存重建
             CACHE_REBUILD_EXECUTOR.submit(() -> {
                 try {
+                    long begin = System.nanoTime();
                     // 查询数据库
                     R newR = dbFallback.apply(id);
                     // 重建缓存
                     this.setWithLogicalExpire(key, newR, time, unit);
+                    meters.rebuild.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
                 } catch (Exception e) {
                     throw new RuntimeException(e);
                 }finally {
@@ -120,16 +164,19 @@ public class CacheClient {
     public <R, ID> R queryWithMutex(
             String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
         String key = keyPrefix + id;
+        CacheMeters meters = meters(keyPrefix);
         // 1.从redis查询商铺缓存
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
+        String shopJson = replicaRedisTemplate.opsForValue().get(key);
         // 2.判断是否存在
         if (StrUtil.isNotBlank(shopJson)) {
             // 3.存在，直接返回
+            meters.hit.increment();
             return JSONUtil.toBean(shopJson, type);
         }
         // 判断命中的是否是空值
         if (shopJson != null) {
             // 返回一个错误信息
+            meters.nullHit.increment();
             return null;
         }
 
@@ -146,7 +193,10 @@ public class CacheClient {
                 return queryWithMutex(keyPrefix, id, type, dbFallback, time, unit);
             }
             // 4.4.获取锁成功，根据id查询数据库
+            meters.miss.increment();
+            long begin = System.nanoTime();
             r = dbFallback.apply(id);
+            meters.rebuild.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
             // 5.不存在，返回错误
             if (r == null) {
                 // 将空值写入redis
@@ -166,6 +216,78 @@ public class CacheClient {
         return r;
     }
 
+    /**
+     * 批量查询，一次MGET读取缓存，未命中的一次回源，再用一次管道写回
+     * @param ids 要查询的id，返回结果保持该顺序，不存在的被跳过
+     * @param dbFallback 批量回源
+     * @param idGetter 从回源结果中取id
+     */
+    public <R, ID> List<R> queryBatchWithPassThrough(
+            String keyPrefix, List<ID> ids, Class<R> type, Function<List<ID>, List<R>> dbFallback,
+            Function<R, ID> idGetter, Long time, TimeUnit unit) {
+        List<R> result = new ArrayList<>(ids.size());
+        if (ids.isEmpty()) {
+            return result;
+        }
+        // 1.一次MGET查询缓存
+        List<String> keys = new ArrayList<>(ids.size());
+        ids.forEach(id -> keys.add(keyPrefix + id));
+        List<String> values = replicaRedisTemplate.opsForValue().multiGet(keys);
+        Map<ID, R> hits = new HashMap<>(ids.size() * 2);
+        List<ID> misses = new ArrayList<>();
+        int nullHits = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            String json = values == null ? null : values.get(i);
+            if (json == null) {
+                misses.add(ids.get(i));
+            } else if (StrUtil.isNotBlank(json)) {
+                hits.put(ids.get(i), toBean(json, type));
+            } else {
+                nullHits++;
+            }
+        }
+        CacheMeters meters = meters(keyPrefix);
+        meters.hit.increment(hits.size());
+        meters.nullHit.increment(nullHits);
+        meters.miss.increment(misses.size());
+        // 2.未命中的一次回源，存在的写入缓存，不存在的写入空值
+        if (!misses.isEmpty()) {
+            Map<String, String> toCache = new HashMap<>(misses.size() * 2);
+            long begin = System.nanoTime();
+            List<R> loaded = dbFallback.apply(misses);
+            meters.rebuild.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+            for (R r : loaded) {
+                ID id = idGetter.apply(r);
+                hits.put(id, r);
+                toCache.put(keyPrefix + id, JSONUtil.toJsonStr(r));
+            }
+            misses.forEach(id -> toCache.putIfAbsent(keyPrefix + id, ""));
+            long seconds = unit.toSeconds(time);
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                toCache.forEach((key, value) -> conn.set(key, value,
+                        value.isEmpty() ? Expiration.from(CACHE_NULL_TTL, TimeUnit.MINUTES) : Expiration.seconds(seconds),
+                        RedisStringCommands.SetOption.upsert()));
+                return null;
+            });
+        }
+        // 3.按传入顺序返回
+        for (ID id : ids) {
+            R r = hits.get(id);
+            if (r != null) {
+                result.add(r);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 缓存值是实体的JSON；逻辑过期的RedisData使用单独的key前缀，不会读到
+     */
+    static <R> R toBean(String json, Class<R> type) {
+        return JSONUtil.toBean(json, type);
+    }
+
     private boolean tryLock(String key) {
         Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 10, TimeUnit.SECONDS);
         return BooleanUtil.isTrue(flag);
@@ -174,4 +296,29 @@ public class CacheClient {
     private void unlock(String key) {
         stringRedisTemplate.delete(key);
     }
+
+    static CacheMeters meters(String keyPrefix) {
+        CacheMeters meters = CACHE_METERS.get(keyPrefix);
+        return meters != null ? meters : CACHE_METERS.computeIfAbsent(keyPrefix, CacheMeters::new);
+    }
+
+    /**
+     * hmdp.cache.requests：按结果计数，hit命中、null命中空值、miss未命中、expired逻辑过期；
+     * hmdp.cache.rebuild：回源重建耗时
+     */
+    static final class CacheMeters {
+        final Counter hit;
+        final Counter nullHit;
+        final Counter miss;
+        final Counter expired;
+        final Timer rebuild;
+
+        CacheMeters(String keyPrefix) {
+            hit = Metrics.counter("hmdp.cache.requests", "prefix", keyPrefix, "result", "hit");
+            nullHit = Metrics.counter("hmdp.cache.requests", "prefix", keyPrefix, "result", "null");
+            miss = Metrics.counter("hmdp.cache.requests", "prefix", keyPrefix, "result", "miss");
+            expired = Metrics.counter("hmdp.cache.requests", "prefix", keyPrefix, "result", "expired");
+            rebuild = Metrics.timer("hmdp.cache.rebuild", "prefix", keyPrefix);
+        }
+    }
 }
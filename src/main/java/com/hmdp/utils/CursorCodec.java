@@ -0,0 +1,95 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.codec.Base64;
+import cn.hutool.core.util.ArrayUtil;
+import cn.hutool.core.util.RandomUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.HMac;
+import cn.hutool.crypto.digest.HmacAlgorithm;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import static com.hmdp.utils.RedisConstants.CURSOR_SECRET_KEY;
+
+/**
+ * 分页游标的编解码：内容为逗号分隔的数字，后面附上HMAC签名，都做URL安全的Base64编码。
+ * <p>
+ * 游标对客户端不透明，伪造或篡改的游标（例如改小页号绕过缓存页数上限）解码时返回null。
+ * 签名密钥用 hmdp.cursor.secret 指定；没有指定时由第一个启动的实例随机生成后写入Redis，所有实例共用
+ */
+@Component
+public class CursorCodec {
+
+    /**
+     * 签名截取的字节数
+     */
+    private static final int SIGNATURE_BYTES = 12;
+
+    private final HMac hmac;
+
+    @Autowired
+    public CursorCodec(StringRedisTemplate stringRedisTemplate, @Value("${hmdp.cursor.secret:}") String secret) {
+        this(StrUtil.isNotBlank(secret) ? secret.getBytes(StandardCharsets.UTF_8) : sharedSecret(stringRedisTemplate));
+    }
+
+    public CursorCodec(byte[] key) {
+        this.hmac = new HMac(HmacAlgorithm.HmacSHA256, key);
+    }
+
+    public String encode(Number... values) {
+        byte[] payload = StrUtil.join(",", (Object[]) values).getBytes(StandardCharsets.UTF_8);
+        return Base64.encodeUrlSafe(payload) + "." + Base64.encodeUrlSafe(sign(payload));
+    }
+
+    /**
+     * @param length 数字的个数
+     * @return 游标中的数字，第一个是页号；游标为空时返回null，格式错误、签名不符、页号为负时同样返回null
+     */
+    public long[] decode(String cursor, int length) {
+        if (StrUtil.isBlank(cursor)) {
+            return null;
+        }
+        try {
+            String[] parts = cursor.split("\\.");
+            if (parts.length != 2) {
+                return null;
+            }
+            byte[] payload = Base64.decode(parts[0]);
+            if (!MessageDigest.isEqual(sign(payload), Base64.decode(parts[1]))) {
+                return null;
+            }
+            String[] numbers = new String(payload, StandardCharsets.UTF_8).split(",");
+            if (numbers.length != length) {
+                return null;
+            }
+            long[] values = new long[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = Long.parseLong(numbers[i]);
+            }
+            return values[0] >= 0 ? values : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private byte[] sign(byte[] payload) {
+        // HMac不是线程安全的
+        synchronized (hmac) {
+            return ArrayUtil.sub(hmac.digest(payload), 0, SIGNATURE_BYTES);
+        }
+    }
+
+    private static byte[] sharedSecret(StringRedisTemplate stringRedisTemplate) {
+        stringRedisTemplate.opsForValue().setIfAbsent(CURSOR_SECRET_KEY, RandomUtil.randomString(32));
+        String secret = stringRedisTemplate.opsForValue().get(CURSOR_SECRET_KEY);
+        if (StrUtil.isBlank(secret)) {
+            throw new IllegalStateException("读取游标签名密钥失败");
+        }
+        return secret.getBytes(StandardCharsets.UTF_8);
+    }
+}
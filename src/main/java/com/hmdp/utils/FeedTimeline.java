@@ -0,0 +1,282 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Follow;
+import com.hmdp.mapper.FollowMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 关注者时间线，推拉结合。
+ * <p>
+ * 发布时博文总是写入作者自己的发件箱 feed:outbox:{authorId}；粉丝数低于阈值的作者再异步推送到每个粉丝的收件箱
+ * feed:{userId}，粉丝过多的作者改为拉模式，读取时把关注的拉模式作者的发件箱与收件箱合并。
+ * 所有时间线的score都是发布时间戳（毫秒），按 (max, offset) 游标滚动分页。
+ * <p>
+ * 作者是推还是拉按粉丝数决定，结果缓存在 feed:mode:{authorId}，不在每次发布时统计粉丝数；推送线程池满时这一篇按拉模式发布。
+ * 作者从拉模式回到推模式时，把发件箱中最近的博文一起推送，拉模式期间发布的博文不会从粉丝的时间线上消失。
+ * 新关注一个推模式作者时，把他最近的博文补进关注者的收件箱。
+ */
+@Slf4j
+@Component
+public class FeedTimeline {
+
+    private static final int PUSH_BATCH_SIZE = 500;
+
+    private static final String MODE_PUSH = "push";
+    private static final String MODE_PULL = "pull";
+
+    /**
+     * 推送线程池，队列满时拒绝，由publishAsync改为拉模式发布，不占用发布博文的请求线程
+     */
+    private static final ExecutorService FEED_PUSH_EXECUTOR = new ThreadPoolExecutor(
+            2, 4, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1000),
+            ThreadFactoryBuilder.create().setNamePrefix("feed-push-").setDaemon(true).build(),
+            new ThreadPoolExecutor.AbortPolicy());
+
+    private static final Counter FEED_PUSH_REJECTED = Metrics.counter("hmdp.feed.push.rejected");
+
+    private static final Comparator<ZSetOperations.TypedTuple<String>> NEWEST_FIRST =
+            Comparator.comparing(ZSetOperations.TypedTuple<String>::getScore, Comparator.reverseOrder())
+                    .thenComparing(ZSetOperations.TypedTuple::getValue, Comparator.reverseOrder());
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final FollowMapper followMapper;
+
+    private final FollowsCache followsCache;
+
+    public FeedTimeline(StringRedisTemplate stringRedisTemplate, FollowMapper followMapper, FollowsCache followsCache) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.followMapper = followMapper;
+        this.followsCache = followsCache;
+    }
+
+    /**
+     * 异步发布一篇博文到时间线
+     */
+    public void publishAsync(Long authorId, Long blogId, long timestamp) {
+        try {
+            FEED_PUSH_EXECUTOR.execute(() -> {
+                try {
+                    publish(authorId, blogId, timestamp);
+                } catch (Exception e) {
+                    log.error("博文推送失败，authorId={}, blogId={}", authorId, blogId, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 推送积压，这一篇只写发件箱，作者改为拉模式，下次推送时补上
+            FEED_PUSH_REJECTED.increment();
+            log.warn("推送线程池已满，按拉模式发布，authorId={}, blogId={}", authorId, blogId);
+            addToOutbox(authorId, blogId, timestamp);
+            stringRedisTemplate.opsForSet().add(FEED_PULL_AUTHORS_KEY, authorId.toString());
+        }
+    }
+
+    private void publish(Long authorId, Long blogId, long timestamp) {
+        long begin = System.nanoTime();
+        // 1.写入作者发件箱
+        addToOutbox(authorId, blogId, timestamp);
+        // 2.粉丝过多，切换为拉模式
+        if (MODE_PULL.equals(modeOf(authorId))) {
+            stringRedisTemplate.opsForSet().add(FEED_PULL_AUTHORS_KEY, authorId.toString());
+            return;
+        }
+        // 3.之前是拉模式时，把发件箱中最近的博文一起推送
+        Set<ZSetOperations.TypedTuple<String>> entries;
+        if (Boolean.TRUE.equals(stringRedisTemplate.opsForSet().isMember(FEED_PULL_AUTHORS_KEY, authorId.toString()))) {
+            entries = recentOf(authorId);
+        } else {
+            entries = Collections.singleton(new DefaultTypedTuple<>(blogId.toString(), (double) timestamp));
+        }
+        // 4.按主键游标分批查询粉丝，每批一次管道推送
+        long lastId = 0;
+        int pushed = 0;
+        while (true) {
+            List<Follow> batch = followMapper.selectList(new QueryWrapper<Follow>()
+                    .select("id", "user_id")
+                    .eq("follow_user_id", authorId)
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("limit " + PUSH_BATCH_SIZE));
+            if (batch.isEmpty()) {
+                break;
+            }
+            pushToFollowers(batch.stream().map(Follow::getUserId).collect(Collectors.toList()), entries);
+            pushed += batch.size();
+            lastId = batch.get(batch.size() - 1).getId();
+            if (batch.size() < PUSH_BATCH_SIZE) {
+                break;
+            }
+        }
+        // 5.推送完成后粉丝才不需要再读发件箱
+        stringRedisTemplate.opsForSet().remove(FEED_PULL_AUTHORS_KEY, authorId.toString());
+        long costMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+        log.debug("博文推送完成，blogId={}, followers={}, 耗时{}ms", blogId, pushed, costMillis);
+    }
+
+    private void addToOutbox(Long authorId, Long blogId, long timestamp) {
+        String outboxKey = FEED_OUTBOX_KEY + authorId;
+        stringRedisTemplate.opsForZSet().add(outboxKey, blogId.toString(), timestamp);
+        stringRedisTemplate.opsForZSet().removeRange(outboxKey, 0, -FEED_MAX_SIZE - 1);
+    }
+
+    /**
+     * 作者是推模式还是拉模式，缓存FEED_MODE_TTL分钟，粉丝数跨过阈值后最多这么久切换
+     */
+    private String modeOf(Long authorId) {
+        String key = FEED_MODE_KEY + authorId;
+        String mode = stringRedisTemplate.opsForValue().get(key);
+        if (mode != null) {
+            return mode;
+        }
+        Integer followers = followMapper.selectCount(new QueryWrapper<Follow>().eq("follow_user_id", authorId));
+        mode = followers != null && followers >= FEED_PULL_THRESHOLD ? MODE_PULL : MODE_PUSH;
+        stringRedisTemplate.opsForValue().set(key, mode, FEED_MODE_TTL, TimeUnit.MINUTES);
+        return mode;
+    }
+
+    /**
+     * 作者发件箱中最近的FEED_BACKFILL_SIZE篇博文
+     */
+    private Set<ZSetOperations.TypedTuple<String>> recentOf(Long authorId) {
+        Set<ZSetOperations.TypedTuple<String>> entries = stringRedisTemplate.opsForZSet()
+                .reverseRangeWithScores(FEED_OUTBOX_KEY + authorId, 0, FEED_BACKFILL_SIZE - 1);
+        return entries == null ? Collections.emptySet() : entries;
+    }
+
+    /**
+     * 新关注一个作者后，把他最近的博文补进关注者的收件箱；拉模式作者读取时合并发件箱，不需要补
+     */
+    public void backfill(Long userId, Long authorId) {
+        if (Boolean.TRUE.equals(stringRedisTemplate.opsForSet().isMember(FEED_PULL_AUTHORS_KEY, authorId.toString()))) {
+            return;
+        }
+        Set<ZSetOperations.TypedTuple<String>> entries = recentOf(authorId);
+        if (!entries.isEmpty()) {
+            pushToFollowers(Collections.singletonList(userId), entries);
+        }
+    }
+
+    /**
+     * 一次管道把博文推送到一批粉丝的收件箱，并把收件箱裁剪到上限
+     */
+    public void pushToFollowers(Collection<Long> followerIds, Long blogId, long timestamp) {
+        pushToFollowers(followerIds, Collections.singleton(new DefaultTypedTuple<>(blogId.toString(), (double) timestamp)));
+    }
+
+    private void pushToFollowers(Collection<Long> followerIds, Set<ZSetOperations.TypedTuple<String>> entries) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Long followerId : followerIds) {
+                String key = FEED_KEY + followerId;
+                for (ZSetOperations.TypedTuple<String> entry : entries) {
+                    conn.zAdd(key, entry.getScore(), entry.getValue());
+                }
+                conn.zRemRange(key, 0, -FEED_MAX_SIZE - 1);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 查询用户需要合并读取的时间线：自己的收件箱，以及所关注的拉模式作者的发件箱
+     */
+    public List<String> feedKeysOf(Long userId) {
+        List<String> keys = new ArrayList<>();
+        keys.add(FEED_KEY + userId);
+        // 1.拉模式作者只有粉丝数超过阈值的少数作者，直接取出
+        Set<String> pullAuthors = stringRedisTemplate.opsForSet().members(FEED_PULL_AUTHORS_KEY);
+        if (CollUtil.isEmpty(pullAuthors)) {
+            return keys;
+        }
+        // 2.一次管道判断是否关注了这些作者；集群模式下两个集合不在同一个槽，不能用SINTER
+        List<String> authors = new ArrayList<>(pullAuthors);
+        followsCache.ensureLoaded(userId);
+        String followsKey = FollowsCache.key(userId);
+        List<Object> followed = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            authors.forEach(authorId -> conn.sIsMember(followsKey, authorId));
+            return null;
+        });
+        for (int i = 0; i < authors.size(); i++) {
+            if (Boolean.TRUE.equals(followed.get(i))) {
+                keys.add(FEED_OUTBOX_KEY + authors.get(i));
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * 合并多条时间线做滚动分页，语义与单个key上的 ZREVRANGEBYSCORE key max 0 LIMIT offset count 一致
+     * @param keys 时间线key
+     * @param max 上一页最小的时间戳，第一页传当前时间
+     * @param offset 上一页中与最小时间戳相同的元素个数
+     * @param count 每页数量
+     * @return 当前页，按时间戳倒序
+     */
+    public List<ZSetOperations.TypedTuple<String>> scroll(List<String> keys, long max, int offset, int count) {
+        // 1.一次管道读取每条时间线的前 offset + count 个元素
+        List<Object> results = stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                // 模板是StringRedisTemplate，key、value都是String
+                @SuppressWarnings("unchecked")
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                for (String key : keys) {
+                    ops.opsForZSet().reverseRangeByScoreWithScores(key, 0, max, 0, offset + count);
+                }
+                return null;
+            }
+        });
+        // 2.合并、去重（推拉模式切换期间同一博文可能同时出现在收件箱和发件箱）
+        List<ZSetOperations.TypedTuple<String>> merged = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (Object result : results) {
+            if (result == null) {
+                continue;
+            }
+            @SuppressWarnings("unchecked")
+            Set<ZSetOperations.TypedTuple<String>> tuples = (Set<ZSetOperations.TypedTuple<String>>) result;
+            for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                if (seen.add(tuple.getValue())) {
+                    merged.add(tuple);
+                }
+            }
+        }
+        // 3.排序后跳过offset个，取count个
+        merged.sort(NEWEST_FIRST);
+        if (merged.size() <= offset) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(merged.subList(offset, Math.min(merged.size(), offset + count)));
+    }
+}
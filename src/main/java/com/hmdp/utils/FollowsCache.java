@@ -0,0 +1,78 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Follow;
+import com.hmdp.mapper.FollowMapper;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.UUID;
+
+import static com.hmdp.utils.RedisConstants.FOLLOWS_KEY;
+
+/**
+ * 用户的关注集合 follows:{userId}，集合不存在时从tb_follow重建。
+ * <p>
+ * 集合中始终有一个占位成员0，没有关注任何人的用户不会反复查库。重建时先写入临时key，再用RENAMENX在集合不存在时才生效；
+ * 关注、取关在写完数据库后先确保集合存在再SADD、SREM，并发的重建即使读到旧数据也不会覆盖它们
+ */
+@Component
+public class FollowsCache {
+
+    public static final String PLACEHOLDER = "0";
+
+    private static final int LOAD_BATCH_SIZE = 1000;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final FollowMapper followMapper;
+
+    public FollowsCache(StringRedisTemplate stringRedisTemplate, FollowMapper followMapper) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.followMapper = followMapper;
+    }
+
+    public static String key(Long userId) {
+        return FOLLOWS_KEY + userId;
+    }
+
+    /**
+     * 集合不存在时从数据库重建
+     */
+    public void ensureLoaded(Long userId) {
+        if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(key(userId)))) {
+            load(userId);
+        }
+    }
+
+    /**
+     * 按主键游标分批读取关注列表写入临时key，临时key的hash tag是完整的集合key，集群模式下两者在同一个槽
+     */
+    public void load(Long userId) {
+        String key = key(userId);
+        String tmpKey = "{" + key + "}:rebuild:" + UUID.randomUUID();
+        stringRedisTemplate.opsForSet().add(tmpKey, PLACEHOLDER);
+        long lastId = 0;
+        while (true) {
+            List<Follow> batch = followMapper.selectList(new QueryWrapper<Follow>()
+                    .select("id", "follow_user_id")
+                    .eq("user_id", userId)
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("limit " + LOAD_BATCH_SIZE));
+            if (batch.isEmpty()) {
+                break;
+            }
+            stringRedisTemplate.opsForSet().add(tmpKey,
+                    batch.stream().map(f -> f.getFollowUserId().toString()).toArray(String[]::new));
+            lastId = batch.get(batch.size() - 1).getId();
+            if (batch.size() < LOAD_BATCH_SIZE) {
+                break;
+            }
+        }
+        if (!Boolean.TRUE.equals(stringRedisTemplate.renameIfAbsent(tmpKey, key))) {
+            stringRedisTemplate.delete(tmpKey);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.collection.CollUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Blog;
+import com.hmdp.mapper.BlogMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.BLOG_HOT_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_HOT_SIZE;
+
+/**
+ * 热门博文排行。
+ * <p>
+ * 每次发布、点赞、评论都按发生时刻贡献 w * 2^((t - epoch) / halfLife) 的热度，越新的互动权重越大，
+ * 等价于旧热度随时间指数衰减。为避免溢出，ZSET中保存的是热度总和的自然对数。
+ */
+@Slf4j
+@Component
+public class HotBlogRanker {
+
+    /**
+     * 热度纪元，与RedisIdWorker保持一致
+     */
+    public static final long EPOCH_SECOND = 1640995200L;
+    /**
+     * 热度半衰期，一天
+     */
+    private static final long HALF_LIFE_SECONDS = 86400L;
+    /**
+     * 每秒在对数空间中增长的热度
+     */
+    public static final double DECAY_PER_SECOND = Math.log(2) / HALF_LIFE_SECONDS;
+
+    public static final double LN_PUBLISH_WEIGHT = Math.log(10);
+    public static final double LN_LIKE_WEIGHT = Math.log(1);
+    public static final double LN_COMMENT_WEIGHT = Math.log(2);
+
+    private static final DefaultRedisScript<Long> HOT_SCRIPT;
+    static {
+        HOT_SCRIPT = new DefaultRedisScript<>();
+        HOT_SCRIPT.setLocation(new ClassPathResource("hot.lua"));
+        HOT_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final BlogMapper blogMapper;
+
+    public HotBlogRanker(StringRedisTemplate stringRedisTemplate, BlogMapper blogMapper) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.blogMapper = blogMapper;
+    }
+
+    public static double contribution(double lnWeight, long epochSecond) {
+        return lnWeight + (epochSecond - EPOCH_SECOND) * DECAY_PER_SECOND;
+    }
+
+    public void onPublish(Long blogId) {
+        incr(blogId, contribution(LN_PUBLISH_WEIGHT, nowSecond()));
+    }
+
+    public void onComment(Long blogId) {
+        incr(blogId, contribution(LN_COMMENT_WEIGHT, nowSecond()));
+    }
+
+    /**
+     * 点赞时累加热度
+     * @param likedAt 点赞时间戳（毫秒）
+     */
+    public void onLike(Long blogId, long likedAt) {
+        incr(blogId, contribution(LN_LIKE_WEIGHT, likedAt / 1000));
+    }
+
+    /**
+     * 取消点赞时扣除当初那次点赞贡献的热度
+     * @param likedAt 原来的点赞时间戳（毫秒）
+     */
+    public void onUnlike(Long blogId, long likedAt) {
+        stringRedisTemplate.execute(HOT_SCRIPT, Collections.singletonList(BLOG_HOT_KEY),
+                blogId.toString(), String.valueOf(contribution(LN_LIKE_WEIGHT, likedAt / 1000)), "-1");
+    }
+
+    /**
+     * 按热度倒序分页查询博文id
+     * @param current 页码，从1开始
+     * @param size 每页数量
+     * @return 博文id，按热度从高到低
+     */
+    public List<Long> queryPage(int current, int size) {
+        long start = (long) (current - 1) * size;
+        Set<String> ids = stringRedisTemplate.opsForZSet()
+                .reverseRange(BLOG_HOT_KEY, start, start + size - 1);
+        if (CollUtil.isEmpty(ids)) {
+            return Collections.emptyList();
+        }
+        return ids.stream().map(Long::valueOf).collect(Collectors.toList());
+    }
+
+    /**
+     * 每分钟把排行裁剪到前N名
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void trim() {
+        Long removed = stringRedisTemplate.opsForZSet()
+                .removeRange(BLOG_HOT_KEY, 0, -BLOG_HOT_SIZE - 1);
+        if (removed != null && removed > 0) {
+            log.debug("热门博文排行裁剪{}条", removed);
+        }
+    }
+
+    /**
+     * 排行不存在时，用最新的N篇博文冷启动。历史点赞、评论视为在发布时刻发生
+     */
+    @PostConstruct
+    public void init() {
+        try {
+            if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_HOT_KEY))) {
+                rebuild();
+            }
+        } catch (Exception e) {
+            log.warn("热门博文排行冷启动失败，等待互动数据逐步写入", e);
+        }
+    }
+
+    private void rebuild() {
+        List<Blog> blogs = blogMapper.selectList(new QueryWrapper<Blog>()
+                .select("id", "liked", "comments", "create_time")
+                .orderByDesc("id")
+                .last("limit " + BLOG_HOT_SIZE));
+        if (blogs.isEmpty()) {
+            return;
+        }
+        Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>(blogs.size());
+        for (Blog blog : blogs) {
+            double weight = Math.exp(LN_PUBLISH_WEIGHT)
+                    + Math.exp(LN_LIKE_WEIGHT) * nullToZero(blog.getLiked())
+                    + Math.exp(LN_COMMENT_WEIGHT) * nullToZero(blog.getComments());
+            long createSecond = blog.getCreateTime() == null
+                    ? nowSecond() : blog.getCreateTime().atZone(ZoneId.systemDefault()).toEpochSecond();
+            tuples.add(new DefaultTypedTuple<>(blog.getId().toString(),
+                    contribution(Math.log(weight), createSecond)));
+        }
+        stringRedisTemplate.opsForZSet().add(BLOG_HOT_KEY, tuples);
+        log.debug("热门博文排行冷启动完成，size={}", tuples.size());
+    }
+
+    private void incr(Long blogId, double contribution) {
+        stringRedisTemplate.execute(HOT_SCRIPT, Collections.singletonList(BLOG_HOT_KEY),
+                blogId.toString(), String.valueOf(contribution));
+    }
+
+    private static long nowSecond() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    private static int nullToZero(Integer value) {
+        return value == null ? 0 : value;
+    }
+}
@@ -0,0 +1,213 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.HexUtil;
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.IMAGE_REF_KEY;
+import static com.hmdp.utils.RedisConstants.LOCK_IMAGE_KEY;
+
+/**
+ * 图片存储。
+ * <p>
+ * 上传内容从输入流经 FileChannel 直接写入存储根目录下的临时文件，边写边计算SHA-256，
+ * 写完后原子地重命名为 /blogs/{d1}/{d2}/{sha256}.{suffix}，相同内容只保存一份。
+ * 每个文件在Redis中记录被上传的次数 image:ref:{文件名}，删除时减1，减到0才删除文件和缩略图；
+ * 计数与文件的创建、删除在同一把分布式锁内完成。
+ */
+@Slf4j
+@Component
+public class ImageStore {
+
+    private static final Set<String> SUFFIXES = new HashSet<>(Arrays.asList("jpg", "jpeg", "png", "gif", "webp", "bmp"));
+
+    private static final String TMP_DIR = ".tmp";
+
+    private static final long TRANSFER_CHUNK = 64 * 1024;
+
+    private final Path root;
+
+    private final long maxBytes;
+
+    /**
+     * 已经确认存在的目录，避免每次上传都访问文件系统
+     */
+    private final Set<Path> createdDirs = ConcurrentHashMap.newKeySet();
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final RedissonClient redissonClient;
+
+    public ImageStore(@Value("${hmdp.upload.root:" + SystemConstants.IMAGE_UPLOAD_DIR + "}") String root,
+                      @Value("${hmdp.upload.max-size:10485760}") long maxBytes,
+                      StringRedisTemplate stringRedisTemplate, RedissonClient redissonClient) {
+        this.root = Paths.get(root).toAbsolutePath().normalize();
+        this.maxBytes = maxBytes;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.redissonClient = redissonClient;
+    }
+
+    /**
+     * 保存一张图片
+     * @param in 图片内容，由调用方关闭
+     * @param suffix 文件后缀
+     * @return 相对存储根目录的文件名，例如 /blogs/3/12/{sha256}.jpg
+     */
+    public String save(InputStream in, String suffix) throws IOException {
+        // 1.校验后缀
+        suffix = StrUtil.isBlank(suffix) ? "" : suffix.toLowerCase();
+        if (!SUFFIXES.contains(suffix)) {
+            throw new IllegalArgumentException("不支持的图片格式");
+        }
+        // 2.流式写入临时文件，同时计算摘要
+        Path tmp = ensureDir(root.resolve(TMP_DIR)).resolve(UUID.randomUUID() + ".part");
+        MessageDigest digest = sha256();
+        try {
+            long size = 0;
+            try (ReadableByteChannel src = Channels.newChannel(new DigestInputStream(in, digest));
+                 FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                long n;
+                while ((n = out.transferFrom(src, size, TRANSFER_CHUNK)) > 0) {
+                    size += n;
+                    if (size > maxBytes) {
+                        throw new IllegalArgumentException("图片不能超过" + maxBytes / 1024 / 1024 + "MB");
+                    }
+                }
+            }
+            if (size == 0) {
+                throw new IllegalArgumentException("图片内容为空");
+            }
+            // 3.按内容摘要命名，原子地移动到最终位置，已存在则直接复用
+            byte[] hash = digest.digest();
+            String name = StrUtil.format("/blogs/{}/{}/{}.{}",
+                    hash[0] & 0xF, (hash[0] >> 4) & 0xF, HexUtil.encodeHexStr(hash), suffix);
+            Path target = resolve(name);
+            ensureDir(target.getParent());
+            // 4.文件就位后引用计数+1，与删除互斥
+            RLock lock = lock(name);
+            try {
+                if (Files.exists(target)) {
+                    log.debug("图片已存在，复用{}", name);
+                } else {
+                    try {
+                        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (FileAlreadyExistsException e) {
+                        log.debug("图片已被并发写入，复用{}", name);
+                    }
+                }
+                stringRedisTemplate.opsForValue().increment(IMAGE_REF_KEY + name);
+            } finally {
+                lock.unlock();
+            }
+            return name;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * 引用计数减1，减到0时删除图片及其全部缩略图
+     * @param name save返回的文件名
+     */
+    public void delete(String name) throws IOException {
+        Path path = resolve(name);
+        if (Files.isDirectory(path)) {
+            throw new IllegalArgumentException("错误的文件名称");
+        }
+        RLock lock = lock(name);
+        try {
+            // 没有计数的是引入计数之前上传的文件，不知道被引用了几次，保留文件
+            String key = IMAGE_REF_KEY + name;
+            if (stringRedisTemplate.opsForValue().get(key) == null) {
+                return;
+            }
+            Long refs = stringRedisTemplate.opsForValue().increment(key, -1);
+            if (refs != null && refs > 0) {
+                return;
+            }
+            stringRedisTemplate.delete(key);
+            deleteFiles(path);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void deleteFiles(Path path) throws IOException {
+        Files.deleteIfExists(path);
+        // 缩略图与原图同目录，命名为 {原文件名}_{尺寸}.{后缀}
+        Path dir = path.getParent();
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        String fileName = path.getFileName().toString();
+        String glob = StrUtil.subBefore(fileName, ".", true) + "_*." + StrUtil.subAfter(fileName, ".", true);
+        try (DirectoryStream<Path> variants = Files.newDirectoryStream(dir, glob)) {
+            for (Path variant : variants) {
+                Files.deleteIfExists(variant);
+            }
+        }
+    }
+
+    /**
+     * 把文件名解析为存储根目录下的路径，拒绝跳出根目录的名称
+     */
+    public Path resolve(String name) {
+        if (StrUtil.isBlank(name)) {
+            throw new IllegalArgumentException("错误的文件名称");
+        }
+        Path path = root.resolve(StrUtil.removePrefix(name.replace('\\', '/'), "/")).normalize();
+        if (!path.startsWith(root) || path.equals(root)) {
+            throw new IllegalArgumentException("错误的文件名称");
+        }
+        return path;
+    }
+
+    private RLock lock(String name) {
+        RLock lock = redissonClient.getLock(LOCK_IMAGE_KEY + name);
+        lock.lock(10, TimeUnit.SECONDS);
+        return lock;
+    }
+
+    private Path ensureDir(Path dir) throws IOException {
+        if (!createdDirs.contains(dir)) {
+            Files.createDirectories(dir);
+            createdDirs.add(dir);
+        }
+        return dir;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 博文图片缩略图。
+ * <p>
+ * 上传后由有界线程池在后台生成固定的几种宽度，与原图放在同一目录，命名为 {原文件名}_{尺寸}.{后缀}；
+ * 读取时缺失的尺寸会按需生成，同一张缩略图同时只会生成一次。
+ */
+@Slf4j
+@Component
+public class ImageThumbnails {
+
+    public enum Size {
+        S(240), M(480), L(960);
+
+        private final int width;
+
+        Size(int width) {
+            this.width = width;
+        }
+
+        public static Size of(String name) {
+            for (Size size : values()) {
+                if (size.name().equalsIgnoreCase(name)) {
+                    return size;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 读取时等待按需生成的最长时间，超时先返回原图
+     */
+    private static final long LAZY_TIMEOUT_MILLIS = 3000;
+
+    /**
+     * 允许解码的最大像素数，超过时不生成缩略图，避免小文件解码出巨大的图片占满堆内存
+     */
+    private static final long MAX_PIXELS = 40_000_000L;
+
+    private static final ExecutorService THUMBNAIL_EXECUTOR = new ThreadPoolExecutor(
+            2, 2, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(200),
+            ThreadFactoryBuilder.create().setNamePrefix("thumbnail-").setDaemon(true).build());
+
+    /**
+     * 正在生成的缩略图，保证同一目标只生成一次
+     */
+    private final Map<Path, CompletableFuture<Path>> inflight = new ConcurrentHashMap<>();
+
+    private final ImageStore imageStore;
+
+    public ImageThumbnails(ImageStore imageStore) {
+        this.imageStore = imageStore;
+    }
+
+    /**
+     * 上传完成后在后台生成全部尺寸，线程池已满时放弃，留给读取时按需生成
+     */
+    public void generateAsync(String name) {
+        for (Size size : Size.values()) {
+            try {
+                submit(name, size);
+            } catch (RejectedExecutionException e) {
+                log.debug("缩略图任务队列已满，{}将在读取时生成", name);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 查询指定尺寸的图片文件，缺失时按需生成
+     * @param name 原图文件名
+     * @param size 尺寸，为null时返回原图
+     * @return 文件路径，原图不存在时返回null；无法生成缩略图时返回原图
+     */
+    public Path get(String name, Size size) {
+        Path original = imageStore.resolve(name);
+        if (!Files.isRegularFile(original)) {
+            return null;
+        }
+        if (size == null) {
+            return original;
+        }
+        Path target = imageStore.resolve(variantName(name, size));
+        if (Files.isRegularFile(target)) {
+            return target;
+        }
+        try {
+            return submit(name, size).get(LAZY_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException | TimeoutException e) {
+            return original;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return original;
+        } catch (ExecutionException e) {
+            log.warn("缩略图生成失败，{}", name, e.getCause());
+            return original;
+        }
+    }
+
+    /**
+     * 缩略图文件名，例如 /blogs/3/12/abc.jpg -> /blogs/3/12/abc_s.jpg
+     */
+    public static String variantName(String name, Size size) {
+        String suffix = StrUtil.subAfter(name, ".", true);
+        return StrUtil.subBefore(name, ".", true) + "_" + size.name().toLowerCase() + "." + suffix;
+    }
+
+    private CompletableFuture<Path> submit(String name, Size size) {
+        Path target = imageStore.resolve(variantName(name, size));
+        CompletableFuture<Path> future = inflight.computeIfAbsent(target, k -> CompletableFuture.supplyAsync(() -> {
+            try {
+                return generate(imageStore.resolve(name), target, size);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, THUMBNAIL_EXECUTOR));
+        future.whenComplete((path, e) -> inflight.remove(target, future));
+        return future;
+    }
+
+    private static Path generate(Path original, Path target, Size size) throws IOException {
+        if (Files.isRegularFile(target)) {
+            return target;
+        }
+        // 1.读取原图，格式不支持、像素过多或原图不比目标尺寸大时直接使用原图，并在目标位置留下原图的链接，之后不再解码
+        BufferedImage src = read(original, size.width);
+        if (src == null) {
+            return linkOriginal(original, target);
+        }
+        // 2.缩放并写入临时文件
+        String suffix = StrUtil.subAfter(original.getFileName().toString(), ".", true);
+        String format = "jpeg".equals(suffix) ? "jpg" : suffix;
+        BufferedImage dst = scale(src, size.width, "jpg".equals(format) || "bmp".equals(format));
+        Path tmp = target.resolveSibling(UUID.randomUUID() + ".part");
+        try {
+            if (!ImageIO.write(dst, format, tmp.toFile())) {
+                return original;
+            }
+            // 3.原子地移动到目标位置
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException ignored) {
+                // 其它实例已经生成
+            }
+            return target;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * 先从文件头读取宽高，需要缩放且像素数不超过上限时才解码
+     * @return 解码后的图片，格式不支持、像素过多或宽度不超过目标宽度时返回null
+     */
+    private static BufferedImage read(Path original, int width) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(original.toFile())) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int w = reader.getWidth(0);
+                int h = reader.getHeight(0);
+                if (w <= width) {
+                    return null;
+                }
+                if ((long) w * h > MAX_PIXELS) {
+                    log.warn("图片像素过多，不生成缩略图，{} {}x{}", original, w, h);
+                    return null;
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * 用硬链接把原图作为缩略图，不占用额外空间；文件系统不支持硬链接时复制
+     */
+    private static Path linkOriginal(Path original, Path target) throws IOException {
+        Path tmp = target.resolveSibling(UUID.randomUUID() + ".part");
+        try {
+            try {
+                Files.createLink(tmp, original);
+            } catch (UnsupportedOperationException e) {
+                Files.copy(original, tmp);
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            return target;
+        } catch (FileAlreadyExistsException e) {
+            return target;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * 逐级减半再缩放到目标宽度，纯Java实现，画质接近面积平均
+     */
+    private static BufferedImage scale(BufferedImage src, int width, boolean opaque) {
+        int type = opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        int height = Math.max(1, (int) Math.round((double) src.getHeight() * width / src.getWidth()));
+        BufferedImage current = src;
+        int w = src.getWidth();
+        int h = src.getHeight();
+        do {
+            w = Math.max(width, w / 2);
+            h = Math.max(height, h / 2);
+            BufferedImage next = new BufferedImage(w, h, type);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(current, 0, 0, w, h, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (w != width || h != height);
+        return current;
+    }
+}
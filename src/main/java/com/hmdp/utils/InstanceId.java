@@ -0,0 +1,48 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * 当前实例的标识，多实例之间必须不同：默认为 主机名:端口，可以用 hmdp.instance-id 指定。
+ * 用作订单队列的消费者名，重启后同名实例能接着处理自己未确认的消息
+ */
+@Slf4j
+@Component
+public class InstanceId {
+
+    private final String name;
+
+    public InstanceId(@Value("${hmdp.instance-id:}") String configured, @Value("${server.port:8080}") int port) {
+        if (StrUtil.isNotBlank(configured)) {
+            name = configured;
+        } else {
+            // 随机端口时同一主机上的进程无法用端口区分，改用进程号
+            name = hostName() + ":" + (port > 0 ? String.valueOf(port) : "pid" + pid());
+        }
+        log.debug("实例标识：{}", name);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "localhost";
+        }
+    }
+
+    private static String pid() {
+        // pid@hostname
+        return StrUtil.subBefore(ManagementFactory.getRuntimeMXBean().getName(), "@", false);
+    }
+}
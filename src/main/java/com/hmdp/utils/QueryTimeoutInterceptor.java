@@ -0,0 +1,54 @@
+package com.hmdp.utils;
+
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.function.Supplier;
+
+/**
+ * 为当前线程接下来执行的语句设置查询超时，超时后由驱动取消数据库中正在执行的语句。
+ * <p>
+ * 等待结果的一方超时后中断执行线程，但JDBC驱动阻塞在读取结果时不响应中断，需要语句超时兜底；
+ * JDBC的超时以秒为单位，最短1秒
+ */
+@Intercepts(@Signature(type = StatementHandler.class, method = "prepare", args = {Connection.class, Integer.class}))
+public class QueryTimeoutInterceptor implements Interceptor {
+
+    private static final ThreadLocal<Integer> TIMEOUT_SECONDS = new ThreadLocal<>();
+
+    /**
+     * 在语句超时限制下执行
+     */
+    public static <T> T within(int seconds, Supplier<T> action) {
+        Integer previous = TIMEOUT_SECONDS.get();
+        TIMEOUT_SECONDS.set(seconds);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                TIMEOUT_SECONDS.remove();
+            } else {
+                TIMEOUT_SECONDS.set(previous);
+            }
+        }
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        Object result = invocation.proceed();
+        Integer seconds = TIMEOUT_SECONDS.get();
+        if (seconds != null && result instanceof Statement) {
+            Statement statement = (Statement) result;
+            // 只收紧，不放宽事务或全局配置的超时
+            if (statement.getQueryTimeout() == 0 || statement.getQueryTimeout() > seconds) {
+                statement.setQueryTimeout(seconds);
+            }
+        }
+        return result;
+    }
+}
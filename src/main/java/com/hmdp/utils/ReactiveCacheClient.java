@@ -0,0 +1,180 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ReactiveValueOperations;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static com.hmdp.utils.RedisConstants.CACHE_NULL_TTL;
+
+/**
+ * CacheClient的非阻塞版本：通过Lettuce响应式API读写缓存，未命中时把数据库回源交给有界弹性调度器，
+ * 等待Redis或数据库期间不占用请求线程。与CacheClient共用缓存格式和hmdp.cache.*指标
+ */
+@Component
+public class ReactiveCacheClient {
+
+    /**
+     * 回源线程数与数据库连接池大小一致，再多也只是在连接池上排队
+     */
+    private static final int DB_THREADS = 10;
+    /**
+     * 排队的回源任务上限，超出时直接失败，避免数据库变慢时请求无限堆积
+     */
+    private static final int DB_QUEUED_TASKS = 1000;
+
+    private static final Scheduler DB_SCHEDULER =
+            Schedulers.newBoundedElastic(DB_THREADS, DB_QUEUED_TASKS, "cache-db", 60, true);
+
+    private final ReactiveStringRedisTemplate reactiveRedisTemplate;
+
+    /**
+     * 缓存查询走的模板，开启hmdp.redis.read-from=replica-preferred时优先读副本
+     */
+    private final ReactiveStringRedisTemplate replicaReactiveRedisTemplate;
+
+    public ReactiveCacheClient(
+            @Qualifier("reactiveStringRedisTemplate") ReactiveStringRedisTemplate reactiveRedisTemplate,
+            @Qualifier("replicaReactiveRedisTemplate") ReactiveStringRedisTemplate replicaReactiveRedisTemplate) {
+        this.reactiveRedisTemplate = reactiveRedisTemplate;
+        this.replicaReactiveRedisTemplate = replicaReactiveRedisTemplate;
+    }
+
+    /**
+     * 在回源调度器上执行阻塞调用，例如MyBatis查询；返回null时得到空的Mono
+     */
+    public <T> Mono<T> fromBlocking(Callable<T> call) {
+        return Mono.fromCallable(call).subscribeOn(DB_SCHEDULER);
+    }
+
+    /**
+     * 缓存穿透方案的非阻塞版本，不存在的数据缓存空值
+     * @return 数据不存在时为空的Mono
+     */
+    public <R, ID> Mono<R> queryWithPassThrough(
+            String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        CacheClient.CacheMeters meters = CacheClient.meters(keyPrefix);
+        ReactiveValueOperations<String, String> ops = reactiveRedisTemplate.opsForValue();
+        // 1.从redis查询缓存，命中空值时得到Optional.empty()
+        return replicaReactiveRedisTemplate.opsForValue().get(key)
+                .map(json -> {
+                    if (StrUtil.isNotBlank(json)) {
+                        meters.hit.increment();
+                        return Optional.of(CacheClient.toBean(json, type));
+                    }
+                    meters.nullHit.increment();
+                    return Optional.<R>empty();
+                })
+                // 2.未命中，在回源调度器上查询数据库
+                .switchIfEmpty(Mono.defer(() -> {
+                    meters.miss.increment();
+                    return fromBlocking(() -> {
+                        long begin = System.nanoTime();
+                        R r = dbFallback.apply(id);
+                        meters.rebuild.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+                        return Optional.ofNullable(r);
+                    });
+                })
+                // 3.写回缓存，不存在的写入空值
+                .flatMap(r -> ops.set(key, r.map(JSONUtil::toJsonStr).orElse(""), r.isPresent()
+                        ? Duration.ofSeconds(unit.toSeconds(time))
+                        : Duration.ofMinutes(CACHE_NULL_TTL)).thenReturn(r)))
+                .flatMap(Mono::justOrEmpty);
+    }
+
+    /**
+     * 批量查询的非阻塞版本，未命中的一次回源。
+     * <p>
+     * 响应式MGET会把不存在的key返回为空串，与缓存的空值无法区分，所以逐个GET；
+     * 这些GET和写回的SET都由Lettuce在同一连接上连续发送，不逐个等待往返
+     * @param ids 要查询的id，返回结果保持该顺序，不存在的被跳过
+     * @param dbFallback 批量回源
+     * @param idGetter 从回源结果中取id
+     */
+    public <R, ID> Mono<List<R>> queryBatchWithPassThrough(
+            String keyPrefix, List<ID> ids, Class<R> type, Function<List<ID>, List<R>> dbFallback,
+            Function<R, ID> idGetter, Long time, TimeUnit unit) {
+        if (ids.isEmpty()) {
+            return Mono.just(new ArrayList<>());
+        }
+        ReactiveValueOperations<String, String> ops = reactiveRedisTemplate.opsForValue();
+        CacheClient.CacheMeters meters = CacheClient.meters(keyPrefix);
+        // 1.查询缓存，不存在的key得到Optional.empty()
+        return Flux.fromIterable(ids)
+                .flatMapSequential(id -> replicaReactiveRedisTemplate.opsForValue().get(keyPrefix + id)
+                        .map(Optional::of).defaultIfEmpty(Optional.empty()))
+                .collectList()
+                .flatMap(values -> {
+                    Map<ID, R> hits = new HashMap<>(ids.size() * 2);
+                    List<ID> misses = new ArrayList<>();
+                    int nullHits = 0;
+                    for (int i = 0; i < ids.size(); i++) {
+                        String json = values.get(i).orElse(null);
+                        if (json == null) {
+                            misses.add(ids.get(i));
+                        } else if (StrUtil.isNotBlank(json)) {
+                            hits.put(ids.get(i), CacheClient.toBean(json, type));
+                        } else {
+                            nullHits++;
+                        }
+                    }
+                    meters.hit.increment(hits.size());
+                    meters.nullHit.increment(nullHits);
+                    meters.miss.increment(misses.size());
+                    if (misses.isEmpty()) {
+                        return Mono.just(inOrder(ids, hits));
+                    }
+                    // 2.未命中的一次回源，存在的写入缓存，不存在的写入空值
+                    return fromBlocking(() -> {
+                        long begin = System.nanoTime();
+                        List<R> loaded = dbFallback.apply(misses);
+                        meters.rebuild.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+                        return loaded;
+                    }).flatMap(loaded -> {
+                        Map<String, String> toCache = new HashMap<>(misses.size() * 2);
+                        for (R r : loaded) {
+                            ID id = idGetter.apply(r);
+                            hits.put(id, r);
+                            toCache.put(keyPrefix + id, JSONUtil.toJsonStr(r));
+                        }
+                        misses.forEach(id -> toCache.putIfAbsent(keyPrefix + id, ""));
+                        Duration ttl = Duration.ofSeconds(unit.toSeconds(time));
+                        Duration nullTtl = Duration.ofMinutes(CACHE_NULL_TTL);
+                        return Flux.fromIterable(toCache.entrySet())
+                                .flatMap(e -> ops.set(e.getKey(), e.getValue(), e.getValue().isEmpty() ? nullTtl : ttl))
+                                .then(Mono.fromSupplier(() -> inOrder(ids, hits)));
+                    });
+                });
+    }
+
+    /**
+     * 按传入顺序返回
+     */
+    private static <R, ID> List<R> inOrder(List<ID> ids, Map<ID, R> hits) {
+        List<R> result = new ArrayList<>(ids.size());
+        for (ID id : ids) {
+            R r = hits.get(id);
+            if (r != null) {
+                result.add(r);
+            }
+        }
+        return result;
+    }
+}
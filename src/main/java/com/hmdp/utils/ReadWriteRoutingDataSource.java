@@ -0,0 +1,152 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.UserDTO;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 读写分离的数据源：写入和读写事务走主库，只读事务和事务外的查询轮询分配到副本。
+ * <p>
+ * 事务外的语句是读是写由ReadWriteRoutingInterceptor在MyBatis执行前标记，没有标记的（例如JdbcTemplate）一律走主库。
+ * 事务开始时Spring还没有设置只读标记，所以借助LazyConnectionDataSourceProxy延迟到第一条语句执行时再取连接，这时才能路由正确。
+ * <p>
+ * 登录用户写入后的一小段时间内，他的读请求也走主库，避免副本复制延迟导致读不到自己刚写入的数据；副本取不到连接时同样回退主库。
+ * <p>
+ * hmdp.datasource.route：按连接池和原因统计路由结果；每个连接池的hikaricp.connections.*指标以pool区分
+ */
+@Slf4j
+public class ReadWriteRoutingDataSource extends LazyConnectionDataSourceProxy implements DisposableBean {
+
+    /**
+     * 事务外语句的读写标记，由MyBatis拦截器设置
+     */
+    private static final ThreadLocal<Boolean> QUERY = new ThreadLocal<>();
+
+    private final HikariDataSource primary;
+    private final List<HikariDataSource> replicas;
+    private final RecentWriteTracker recentWrites;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final Counter primaryWrite;
+    private final Counter primaryRecentWrite;
+    private final Counter primaryReplicaDown;
+    private final Counter[] replicaRead;
+
+    public ReadWriteRoutingDataSource(HikariDataSource primary, List<HikariDataSource> replicas,
+                                      RecentWriteTracker recentWrites) {
+        this.primary = primary;
+        this.replicas = replicas;
+        this.recentWrites = recentWrites;
+        this.primaryWrite = routeCounter(primary, "write");
+        this.primaryRecentWrite = routeCounter(primary, "recent_write");
+        this.primaryReplicaDown = routeCounter(primary, "replica_down");
+        this.replicaRead = replicas.stream().map(r -> routeCounter(r, "read")).toArray(Counter[]::new);
+        setTargetDataSource(new Router());
+        afterPropertiesSet();
+    }
+
+    /**
+     * 标记当前线程接下来执行的是查询还是写入
+     * @return 之前的标记，执行完后用restore恢复
+     */
+    static Boolean markQuery(boolean query) {
+        Boolean previous = QUERY.get();
+        QUERY.set(query);
+        return previous;
+    }
+
+    static void restore(Boolean previous) {
+        if (previous == null) {
+            QUERY.remove();
+        } else {
+            QUERY.set(previous);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        replicas.forEach(HikariDataSource::close);
+        primary.close();
+    }
+
+    private static boolean isRead() {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        }
+        return Boolean.TRUE.equals(QUERY.get());
+    }
+
+    /**
+     * 记录写入时间。事务中先只记在本地，提交后再写入Redis，窗口从数据真正可见时开始算；
+     * 一个事务只在第一次取连接时到这里，每个事务写一次Redis
+     */
+    private void markWrite(Long userId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            recentWrites.markWrite(userId);
+            return;
+        }
+        recentWrites.markLocal(userId);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                recentWrites.markWrite(userId);
+            }
+        });
+    }
+
+    /**
+     * 实际取连接时按读写选择连接池
+     */
+    private class Router extends AbstractDataSource {
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            UserDTO user = UserHolder.getUser();
+            // 1.写入：读写事务中的语句，以及事务外没有标记为查询的语句
+            if (!isRead()) {
+                if (user != null) {
+                    markWrite(user.getId());
+                }
+                primaryWrite.increment();
+                return primary.getConnection();
+            }
+            // 2.读取：当前用户刚写入过，读主库
+            if (user != null && recentWrites.wroteRecently(user.getId())) {
+                primaryRecentWrite.increment();
+                return primary.getConnection();
+            }
+            // 3.轮询副本，取不到连接时回退主库
+            int index = Math.floorMod(next.getAndIncrement(), replicas.size());
+            try {
+                Connection connection = replicas.get(index).getConnection();
+                replicaRead[index].increment();
+                return connection;
+            } catch (SQLException e) {
+                log.warn("副本{}获取连接失败，回退到主库", replicas.get(index).getPoolName(), e);
+                primaryReplicaDown.increment();
+                return primary.getConnection();
+            }
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            throw new UnsupportedOperationException("读写分离数据源使用各连接池自己的账号");
+        }
+    }
+
+    private static Counter routeCounter(HikariDataSource pool, String reason) {
+        return Metrics.counter("hmdp.datasource.route", "pool", pool.getPoolName(), "reason", reason);
+    }
+}
@@ -0,0 +1,38 @@
+package com.hmdp.utils;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+
+/**
+ * 在MyBatis执行语句前标记是查询还是写入，事务外的语句由ReadWriteRoutingDataSource据此选择副本或主库。
+ * 执行器在准备语句时才取连接，标记在取连接之前已经生效；加锁读（SELECT ... FOR UPDATE）要放在读写事务中执行
+ */
+@Intercepts({
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
+        @Signature(type = Executor.class, method = "query",
+                args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "query",
+                args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class})
+})
+public class ReadWriteRoutingInterceptor implements Interceptor {
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        MappedStatement ms = (MappedStatement) invocation.getArgs()[0];
+        Boolean previous = ReadWriteRoutingDataSource.markQuery(ms.getSqlCommandType() == SqlCommandType.SELECT);
+        try {
+            return invocation.proceed();
+        } finally {
+            ReadWriteRoutingDataSource.restore(previous);
+        }
+    }
+}
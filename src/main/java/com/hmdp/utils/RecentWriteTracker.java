@@ -0,0 +1,101 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.DB_RECENT_WRITE_KEY;
+
+/**
+ * 记录用户最近一次写数据库的时间，窗口内他的查询走主库。
+ * <p>
+ * 本地记录是主要依据：本实例写入的用户在本地记录窗口结束时间，窗口内的查询不访问Redis。
+ * 标记另外写入Redis，每个事务提交后写一次，只用于用户在A实例写入、下一个请求落到B实例的情况：
+ * 本地没有记录时查询Redis，查到的剩余时间记在本地；查不到时在本地缓存“没有写入”一小段时间（窗口的1/4），
+ * 这段时间内别的实例的写入要等缓存过期才生效。Redis不可用时按刚写入处理，宁可多读主库
+ */
+@Slf4j
+public class RecentWriteTracker {
+
+    /**
+     * 本地记录超过这个数量时清理已过期的
+     */
+    private static final int LOCAL_PRUNE_SIZE = 10000;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final long windowMillis;
+    private final long absentMillis;
+    /**
+     * 用户id -> 窗口结束时间
+     */
+    private final Map<Long, Long> localWrites = new ConcurrentHashMap<>();
+    /**
+     * 用户id -> Redis中没有写入标记的结果有效到什么时候
+     */
+    private final Map<Long, Long> remoteAbsent = new ConcurrentHashMap<>();
+
+    public RecentWriteTracker(StringRedisTemplate stringRedisTemplate, Duration window) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.windowMillis = window.toMillis();
+        this.absentMillis = windowMillis / 4;
+    }
+
+    /**
+     * 只记录在本地，用于事务还没有提交时
+     */
+    public void markLocal(Long userId) {
+        long now = System.currentTimeMillis();
+        remember(localWrites, userId, now + windowMillis, now);
+        remoteAbsent.remove(userId);
+    }
+
+    /**
+     * 写入已经提交，记录在本地并写入Redis
+     */
+    public void markWrite(Long userId) {
+        markLocal(userId);
+        try {
+            stringRedisTemplate.opsForValue().set(DB_RECENT_WRITE_KEY + userId, "1", windowMillis, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            log.warn("记录用户{}的写入时间失败", userId, e);
+        }
+    }
+
+    public boolean wroteRecently(Long userId) {
+        long now = System.currentTimeMillis();
+        // 1.本实例记录的写入
+        Long deadline = localWrites.get(userId);
+        if (deadline != null && deadline > now) {
+            return true;
+        }
+        // 2.刚查过Redis，没有写入
+        Long absentUntil = remoteAbsent.get(userId);
+        if (absentUntil != null && absentUntil > now) {
+            return false;
+        }
+        // 3.查询其它实例记录的写入，结果缓存在本地
+        try {
+            Long ttl = stringRedisTemplate.getExpire(DB_RECENT_WRITE_KEY + userId, TimeUnit.MILLISECONDS);
+            if (ttl != null && ttl > 0) {
+                remember(localWrites, userId, now + ttl, now);
+                return true;
+            }
+            remember(remoteAbsent, userId, now + absentMillis, now);
+            return false;
+        } catch (Exception e) {
+            log.warn("查询用户{}的写入时间失败，读主库", userId, e);
+            return true;
+        }
+    }
+
+    private static void remember(Map<Long, Long> records, Long userId, long until, long now) {
+        records.put(userId, until);
+        if (records.size() > LOCAL_PRUNE_SIZE) {
+            records.values().removeIf(time -> time <= now);
+        }
+    }
+}
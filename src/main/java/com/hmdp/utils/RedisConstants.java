@@ -10,13 +10,72 @@ public class RedisConstants {
 
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
+    public static final String CACHE_SHOP_LOGICAL_KEY = "cache:shop:logical:";
+    public static final String CACHE_SHOP_PAGE_KEY = "cache:shop:page:";
+    public static final Long CACHE_SHOP_PAGE_TTL = 5L;
+    public static final int CACHE_SHOP_PAGES = 10;
+    public static final String CURSOR_SECRET_KEY = "cursor:secret";
+
+    public static final Long CACHE_USER_TTL = 30L;
+    public static final String CACHE_USER_KEY = "cache:user:";
+    public static final String USER_INVALIDATE_TOPIC = "user:invalidate";
 
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
 
+    /**
+     * 秒杀的库存、下单用户、秒杀时间和订单队列按分区带相同的hash tag，见SeckillKeys
+     */
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_STREAM_KEY = "stream.orders:";
+    public static final String SECKILL_META_KEY = "seckill:meta:";
+    /**
+     * 每篇博文一个点赞集合，按完整key分散到各个槽；待回写的博文id集合和热度排行是独立的key，在点赞脚本之外更新
+     */
     public static final String BLOG_LIKED_KEY = "blog:liked:";
+    public static final String BLOG_LIKED_DIRTY_KEY = "blog:liked:dirty";
+    /**
+     * 正在回写的博文id集合，hash tag是完整的待回写key，集群模式下两者在同一个槽，可以RENAME
+     */
+    public static final String BLOG_LIKED_PROCESSING_KEY = "{" + BLOG_LIKED_DIRTY_KEY + "}:processing";
+    /**
+     * 点赞数回写的锁名，SimpleRedisLock会加上lock:前缀
+     */
+    public static final String BLOG_LIKED_FLUSH_LOCK = "blog:liked:flush";
+    public static final String BLOG_HOT_KEY = "blog:hot";
+    public static final Long BLOG_HOT_SIZE = 1000L;
+    public static final String BLOG_COMMENTS_DELTA_KEY = "blog:comments:delta";
+    public static final String BLOG_COMMENTS_PROCESSING_KEY = "{" + BLOG_COMMENTS_DELTA_KEY + "}:processing";
+    public static final String BLOG_COMMENTS_FLUSH_LOCK = "blog:comments:flush";
+    public static final String CACHE_COMMENTS_KEY = "cache:comments:";
+    public static final Long CACHE_COMMENTS_TTL = 10L;
+    public static final Long CACHE_COMMENTS_SIZE = 50L;
+    public static final String LOCK_COMMENTS_KEY = "lock:comments:";
     public static final String FEED_KEY = "feed:";
+    public static final String FEED_OUTBOX_KEY = "feed:outbox:";
+    public static final String FEED_PULL_AUTHORS_KEY = "feed:pull:authors";
+    public static final Long FEED_MAX_SIZE = 1000L;
+    public static final Long FEED_PULL_THRESHOLD = 5000L;
+    public static final String FEED_MODE_KEY = "feed:mode:";
+    public static final Long FEED_MODE_TTL = 10L;
+    public static final Long FEED_BACKFILL_SIZE = 50L;
+    public static final String FOLLOWS_KEY = "follows:";
+    public static final Long FOLLOWS_LARGE_SIZE = 10000L;
+    public static final String FOLLOWS_INVALIDATE_TOPIC = "follows:invalidate";
     public static final String SHOP_GEO_KEY = "shop:geo:";
+    public static final String UV_KEY = "uv:";
+    public static final Long UV_TTL = 400L;
+    public static final Long UV_MERGED_TTL = 6L;
     public static final String USER_SIGN_KEY = "sign:";
+    public static final String SIGN_ARCHIVED_KEY = "sign:archived:";
+    public static final String DB_RECENT_WRITE_KEY = "db:recent-write:";
+    public static final String ORDER_SHARD_ARCHIVED_KEY = "order:shard:archived:";
+    public static final String LOCK_ORDER_MIGRATION_KEY = "lock:order:migration";
+    public static final String CDC_POSITION_KEY = "cdc:position:";
+    public static final String CDC_SERVER_ID_KEY = "cdc:server-id:";
+    public static final Long CDC_SERVER_ID_TTL = 1L;
+    public static final String IMAGE_REF_KEY = "image:ref:";
+    public static final String LOCK_IMAGE_KEY = "lock:image:";
+    public static final String REDIS_MIGRATION_KEY = "migration:keys:v";
 }
@@ -1,11 +1,16 @@
 package com.hmdp.utils;
 
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class RedisIdWorker {
@@ -19,6 +24,11 @@ public class RedisIdWorker {
      */
     private static final int COUNT_BITS = 32;
 
+    /**
+     * 每种业务前缀一个计时器，计数即为生成的id数量
+     */
+    private static final Map<String, Timer> ID_TIMERS = new ConcurrentHashMap<>();
+
     private StringRedisTemplate stringRedisTemplate;
 
     public RedisIdWorker(StringRedisTemplate stringRedisTemplate) {
@@ -26,6 +36,7 @@ public class RedisIdWorker {
     }
 
     public long nextId(String keyPrefix) {
+        long begin = System.nanoTime();
         // 1.生成时间戳
         LocalDateTime now = LocalDateTime.now();
         long nowSecond = now.toEpochSecond(ZoneOffset.UTC);
@@ -38,6 +49,27 @@ public class RedisIdWorker {
         long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date);
 
         // 3.拼接并返回
+        timer(keyPrefix).record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
         return timestamp << COUNT_BITS | count;
     }
+
+    /**
+     * id中的时间戳还原为生成时间，与生成时一样按本地时间计
+     */
+    public static LocalDateTime timeOf(long id) {
+        return LocalDateTime.ofEpochSecond((id >>> COUNT_BITS) + BEGIN_TIMESTAMP, 0, ZoneOffset.UTC);
+    }
+
+    /**
+     * 指定时间之后生成的id都不小于这个值，按时间范围查询时用作id的下界
+     */
+    public static long minIdAt(LocalDateTime time) {
+        return (time.toEpochSecond(ZoneOffset.UTC) - BEGIN_TIMESTAMP) << COUNT_BITS;
+    }
+
+    private static Timer timer(String keyPrefix) {
+        Timer timer = ID_TIMERS.get(keyPrefix);
+        return timer != null ? timer
+                : ID_TIMERS.computeIfAbsent(keyPrefix, k -> Metrics.timer("hmdp.id.generate", "prefix", k));
+    }
 }
@@ -0,0 +1,103 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.hmdp.utils.RedisConstants.REDIS_MIGRATION_KEY;
+
+/**
+ * 启动时把旧版本的秒杀key迁移为当前格式，所有实例合计只执行一次：
+ * seckill:stock:voucherId、seckill:order:voucherId -> 带分区hash tag的key，见SeckillKeys。
+ * 新旧key在集群中可能不在同一个槽，用DUMP/RESTORE复制并保留剩余的过期时间，再删除旧key；
+ * 旧的订单队列stream.orders由VoucherOrderServiceImpl消费完后删除。
+ * 新旧版本的秒杀key不同，不能混跑，升级前需要停掉所有旧版本实例
+ */
+@Slf4j
+@Component
+public class RedisKeyMigration {
+
+    public static final String LEGACY_SECKILL_STREAM_KEY = "stream.orders";
+
+    /**
+     * key格式的版本，迁移完成后写入标记
+     */
+    private static final String VERSION = "2";
+
+    private static final Pattern LEGACY_SECKILL_KEY = Pattern.compile("seckill:(stock|order):(\\d+)");
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final SeckillKeys seckillKeys;
+
+    public RedisKeyMigration(StringRedisTemplate stringRedisTemplate, SeckillKeys seckillKeys) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.seckillKeys = seckillKeys;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        String doneKey = REDIS_MIGRATION_KEY + VERSION;
+        String lockKey = doneKey + ":lock";
+        // 1.已经迁移过
+        if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(doneKey))) {
+            return;
+        }
+        // 2.多实例同时启动时只有一个执行
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(lockKey, "1", 10, TimeUnit.MINUTES);
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+        try {
+            AtomicInteger moved = new AtomicInteger();
+            // 3.秒杀库存、下单用户
+            RedisKeyScanner.scan(stringRedisTemplate, "seckill:*", key -> {
+                Matcher m = LEGACY_SECKILL_KEY.matcher(key);
+                if (m.matches()) {
+                    Long voucherId = Long.valueOf(m.group(2));
+                    String target = "stock".equals(m.group(1))
+                            ? seckillKeys.stockKey(voucherId) : seckillKeys.orderKey(voucherId);
+                    count(moved, move(key, target));
+                }
+            });
+            // 4.全部成功后才写入完成标记，失败时下次启动重试
+            stringRedisTemplate.opsForValue().set(doneKey, "1");
+            log.info("Redis key迁移完成，version={}, keys={}", VERSION, moved.get());
+        } catch (Exception e) {
+            log.error("Redis key迁移失败，下次启动重试", e);
+        } finally {
+            stringRedisTemplate.delete(lockKey);
+        }
+    }
+
+    /**
+     * DUMP/RESTORE复制key并删除旧key，新key已存在时保留新key
+     * @return 是否复制了数据
+     */
+    private boolean move(String from, String to) {
+        byte[] value = stringRedisTemplate.dump(from);
+        if (value == null) {
+            return false;
+        }
+        boolean copy = !Boolean.TRUE.equals(stringRedisTemplate.hasKey(to));
+        if (copy) {
+            // -1表示永不过期，RESTORE的ttl为0时同样不过期
+            Long ttl = stringRedisTemplate.getExpire(from, TimeUnit.MILLISECONDS);
+            stringRedisTemplate.restore(to, value, ttl == null || ttl < 0 ? 0 : ttl, TimeUnit.MILLISECONDS, false);
+        }
+        stringRedisTemplate.delete(from);
+        return copy;
+    }
+
+    private static void count(AtomicInteger moved, boolean copied) {
+        if (copied) {
+            moved.incrementAndGet();
+        }
+    }
+}
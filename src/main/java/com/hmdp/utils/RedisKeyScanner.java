@@ -0,0 +1,51 @@
+package com.hmdp.utils;
+
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * 按模式SCAN所有key。集群模式下SCAN只能在单个节点上执行，依次扫描每个主节点
+ */
+public class RedisKeyScanner {
+
+    private static final int SCAN_COUNT = 1000;
+
+    private RedisKeyScanner() {
+    }
+
+    /**
+     * @param pattern SCAN的MATCH模式
+     * @param action 对每个匹配的key执行，同一个key可能被返回多次
+     */
+    public static void scan(StringRedisTemplate stringRedisTemplate, String pattern, Consumer<String> action) {
+        ScanOptions options = ScanOptions.scanOptions().match(pattern).count(SCAN_COUNT).build();
+        try (RedisConnection connection = stringRedisTemplate.getRequiredConnectionFactory().getConnection()) {
+            if (!(connection instanceof RedisClusterConnection)) {
+                scan(connection.scan(options), action);
+                return;
+            }
+            RedisClusterConnection cluster = (RedisClusterConnection) connection;
+            for (RedisClusterNode node : cluster.clusterGetMasterSlaveMap().keySet()) {
+                scan(cluster.scan(node, options), action);
+            }
+        }
+    }
+
+    private static void scan(Cursor<byte[]> cursor, Consumer<String> action) {
+        try (Cursor<byte[]> c = cursor) {
+            while (c.hasNext()) {
+                action.accept(new String(c.next(), StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("关闭SCAN游标失败", e);
+        }
+    }
+}
@@ -4,7 +4,7 @@ import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
 import com.hmdp.dto.UserDTO;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -15,12 +15,18 @@ import java.util.concurrent.TimeUnit;
 import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
 import static com.hmdp.utils.RedisConstants.LOGIN_USER_TTL;
 
-public class RefreshTokenInterceptor implements HandlerInterceptor {
+public class RefreshTokenInterceptor implements AsyncHandlerInterceptor {
 
     private StringRedisTemplate stringRedisTemplate;
 
-    public RefreshTokenInterceptor(StringRedisTemplate stringRedisTemplate) {
+    /**
+     * 读取登录态的模板，开启hmdp.redis.read-from=replica-preferred时优先读副本
+     */
+    private StringRedisTemplate replicaRedisTemplate;
+
+    public RefreshTokenInterceptor(StringRedisTemplate stringRedisTemplate, StringRedisTemplate replicaRedisTemplate) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.replicaRedisTemplate = replicaRedisTemplate;
     }
 
     @Override
@@ -31,7 +37,11 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
 
         // 基于token获取redis中的用户
         String key = LOGIN_USER_KEY + token;
-        Map<Object, Object> userMap = stringRedisTemplate.opsForHash().entries(key);
+        Map<Object, Object> userMap = replicaRedisTemplate.opsForHash().entries(key);
+        if (userMap.isEmpty() && replicaRedisTemplate != stringRedisTemplate) {
+            // 刚登录时副本可能还没有同步到，再从主节点读一次
+            userMap = stringRedisTemplate.opsForHash().entries(key);
+        }
 
         // 判断用户是否存在
         if (userMap.isEmpty()) {return true;}
@@ -53,4 +63,10 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
         // 移除用户
         UserHolder.removeUser();
     }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        // 返回Mono的请求异步处理，当前线程不会执行afterCompletion，在这里移除用户；异步分派时会重新执行preHandle
+        UserHolder.removeUser();
+    }
 }
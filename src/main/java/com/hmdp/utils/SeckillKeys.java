@@ -0,0 +1,66 @@
+package com.hmdp.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_META_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STREAM_KEY;
+
+/**
+ * 秒杀相关的key。
+ * <p>
+ * 秒杀脚本在一次调用中校验秒杀时间、读写库存、下单用户集合并写入订单队列，集群模式下这些key必须在同一个槽。
+ * 优惠券按id分到hmdp.seckill.partitions个分区，同一分区的key带相同的hash tag {分区号}：
+ * seckill:stock:{p}:voucherId、seckill:order:{p}:voucherId、seckill:meta:{p}:voucherId、stream.orders:{p}，
+ * 每个分区一个订单队列和一个消费线程。
+ * 分区数是集群主节点数的几倍时各分区能大致均匀地分布到主节点上；修改分区数会改变key，只能在没有进行中的秒杀时调整
+ */
+@Component
+public class SeckillKeys {
+
+    private final int partitions;
+
+    public SeckillKeys(@Value("${hmdp.seckill.partitions:1}") int partitions) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("hmdp.seckill.partitions必须大于0");
+        }
+        this.partitions = partitions;
+    }
+
+    public int partitions() {
+        return partitions;
+    }
+
+    public int partitionOf(Long voucherId) {
+        return (int) Math.floorMod(voucherId, (long) partitions);
+    }
+
+    public String stockKey(Long voucherId) {
+        return SECKILL_STOCK_KEY + tag(partitionOf(voucherId)) + voucherId;
+    }
+
+    public String orderKey(Long voucherId) {
+        return SECKILL_ORDER_KEY + tag(partitionOf(voucherId)) + voucherId;
+    }
+
+    /**
+     * 秒杀时间，hash：begin、end，毫秒时间戳
+     */
+    public String metaKey(Long voucherId) {
+        return SECKILL_META_KEY + tag(partitionOf(voucherId)) + voucherId;
+    }
+
+    public String streamKey(Long voucherId) {
+        return streamKey(partitionOf(voucherId));
+    }
+
+    public String streamKey(int partition) {
+        return SECKILL_STREAM_KEY + "{" + partition + "}";
+    }
+
+    private static String tag(int partition) {
+        return "{" + partition + "}:";
+    }
+}
@@ -0,0 +1,422 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.text.Normalizer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongPredicate;
+
+/**
+ * 商铺名称、商圈的内存倒排索引，替代 LIKE '%name%' 的全表扫描。
+ * <p>
+ * 文本按字母、数字、汉字的连续片段切分，每个片段索引单字和相邻两字（n-gram），查询时取查询词的全部二元组
+ * 求交集，再用原文校验子串，语义与 LIKE '%name%' 一致。倒排表中保存的不是商铺id，而是按评分倒序、
+ * id正序编码的排序键，交集按顺序逐个产生，取够一页即可提前结束。
+ */
+@Slf4j
+@Component
+public class ShopSearchIndex {
+
+    private static final int BUILD_BATCH_SIZE = 5000;
+    private static final int MAX_SCORE = 50;
+    private static final int ID_BITS = 40;
+    private static final long ID_MASK = (1L << ID_BITS) - 1;
+    private static final long[] EMPTY = new long[0];
+
+    private final ShopMapper shopMapper;
+
+    /**
+     * 词项 -> 升序的排序键
+     */
+    private volatile Map<String, long[]> postings = new ConcurrentHashMap<>();
+
+    /**
+     * 商铺id -> 索引中的文档
+     */
+    private volatile Map<Long, Doc> docs = new ConcurrentHashMap<>();
+
+    /**
+     * 已同步到的最大更新时间，用于拉取其它实例写入的变更
+     */
+    private volatile LocalDateTime lastSyncTime;
+
+    public ShopSearchIndex(ShopMapper shopMapper) {
+        this.shopMapper = shopMapper;
+    }
+
+    /**
+     * 启动时从tb_shop全量构建
+     */
+    @PostConstruct
+    public void init() {
+        try {
+            long begin = System.currentTimeMillis();
+            List<Shop> shops = new ArrayList<>();
+            long lastId = 0;
+            while (true) {
+                List<Shop> batch = shopMapper.selectList(new QueryWrapper<Shop>()
+                        .select("id", "name", "area", "score", "update_time")
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("limit " + BUILD_BATCH_SIZE));
+                shops.addAll(batch);
+                if (batch.size() < BUILD_BATCH_SIZE) {
+                    break;
+                }
+                lastId = batch.get(batch.size() - 1).getId();
+            }
+            rebuild(shops);
+            log.debug("商铺搜索索引构建完成，shops={}, terms={}, 耗时{}ms",
+                    docs.size(), postings.size(), System.currentTimeMillis() - begin);
+        } catch (Exception e) {
+            log.warn("商铺搜索索引构建失败，等待定时同步", e);
+        }
+    }
+
+    /**
+     * 用给定的商铺全量重建索引，构建完成后整体替换
+     */
+    public void rebuild(Collection<Shop> shops) {
+        Map<Long, Doc> newDocs = new ConcurrentHashMap<>(shops.size() * 2);
+        Map<String, LongBuffer> buffers = new HashMap<>();
+        LocalDateTime maxUpdateTime = null;
+        for (Shop shop : shops) {
+            Doc doc = new Doc(shop);
+            newDocs.put(doc.id, doc);
+            for (String term : doc.terms()) {
+                buffers.computeIfAbsent(term, k -> new LongBuffer()).add(doc.key);
+            }
+            if (shop.getUpdateTime() != null
+                    && (maxUpdateTime == null || shop.getUpdateTime().isAfter(maxUpdateTime))) {
+                maxUpdateTime = shop.getUpdateTime();
+            }
+        }
+        Map<String, long[]> newPostings = new ConcurrentHashMap<>(buffers.size() * 2);
+        buffers.forEach((term, buffer) -> newPostings.put(term, buffer.toSortedArray()));
+        synchronized (this) {
+            this.postings = newPostings;
+            this.docs = newDocs;
+            this.lastSyncTime = maxUpdateTime;
+        }
+    }
+
+    /**
+     * 新增或更新一个商铺的索引
+     */
+    public synchronized void index(Shop shop) {
+        if (shop == null || shop.getId() == null) {
+            return;
+        }
+        Doc doc = new Doc(shop);
+        Doc old = docs.put(doc.id, doc);
+        if (old != null) {
+            for (String term : old.terms()) {
+                postings.computeIfPresent(term, (k, keys) -> {
+                    long[] removed = remove(keys, old.key);
+                    return removed.length == 0 ? null : removed;
+                });
+            }
+        }
+        for (String term : doc.terms()) {
+            postings.compute(term, (k, keys) -> insert(keys == null ? EMPTY : keys, doc.key));
+        }
+    }
+
+    /**
+     * 删除一个商铺的索引
+     */
+    public synchronized void remove(Long id) {
+        Doc old = id == null ? null : docs.remove(id);
+        if (old == null) {
+            return;
+        }
+        for (String term : old.terms()) {
+            postings.computeIfPresent(term, (k, keys) -> {
+                long[] removed = remove(keys, old.key);
+                return removed.length == 0 ? null : removed;
+            });
+        }
+    }
+
+    /**
+     * 每分钟拉取其它实例更新过的商铺，保证多实例的索引最终一致
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void sync() {
+        LocalDateTime since = lastSyncTime;
+        if (since == null) {
+            return;
+        }
+        List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                .select("id", "name", "area", "score", "update_time")
+                .ge("update_time", since));
+        for (Shop shop : shops) {
+            index(shop);
+            if (shop.getUpdateTime() != null && shop.getUpdateTime().isAfter(since)) {
+                since = shop.getUpdateTime();
+            }
+        }
+        lastSyncTime = since;
+    }
+
+    /**
+     * 搜索名称或商圈包含关键字的商铺，名称命中的排在商圈命中之前，其次按评分倒序
+     * @param query 关键字，多个关键字用空格分隔，需要全部命中
+     * @param offset 跳过的条数
+     * @param limit 返回的条数
+     * @return 商铺id
+     */
+    public List<Long> search(String query, int offset, int limit) {
+        List<String> segments = segments(query);
+        if (segments.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        int need = offset + limit;
+        List<Long> nameHits = new ArrayList<>(need);
+        List<Long> areaHits = new ArrayList<>();
+        Map<Long, Doc> docs = this.docs;
+        // 候选按评分倒序产生，名称命中凑够一页即可结束
+        scan(segments, key -> {
+            Doc doc = docs.get(key & ID_MASK);
+            if (doc == null || doc.key != key) {
+                return true;
+            }
+            int match = doc.match(segments);
+            if (match == Doc.MATCH_NAME) {
+                nameHits.add(doc.id);
+                return nameHits.size() < need;
+            }
+            if (match == Doc.MATCH_AREA && areaHits.size() < need) {
+                areaHits.add(doc.id);
+            }
+            return true;
+        });
+        nameHits.addAll(areaHits);
+        if (nameHits.size() <= offset) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(nameHits.subList(offset, Math.min(nameHits.size(), need)));
+    }
+
+    /**
+     * 自动补全：名称以前缀开头的商铺，按评分倒序
+     * @return 只包含id、名称和商圈的商铺
+     */
+    public List<Shop> suggest(String prefix, int limit) {
+        String normalized = normalize(prefix);
+        List<String> segments = segments(prefix);
+        if (segments.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        List<Shop> result = new ArrayList<>(limit);
+        Map<Long, Doc> docs = this.docs;
+        scan(segments, key -> {
+            Doc doc = docs.get(key & ID_MASK);
+            if (doc == null || doc.key != key || !doc.normalizedName.startsWith(normalized)) {
+                return true;
+            }
+            result.add(new Shop().setId(doc.id).setName(doc.name).setArea(doc.area));
+            return result.size() < limit;
+        });
+        return result;
+    }
+
+    public int size() {
+        return docs.size();
+    }
+
+    /**
+     * 按顺序逐个产生所有片段的n-gram倒排表的交集：遍历最短的表，在其余表中倍增查找
+     * @param visitor 返回false时停止
+     */
+    private void scan(List<String> segments, LongPredicate visitor) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (String segment : segments) {
+            if (segment.length() == 1) {
+                terms.add(segment);
+            } else {
+                for (int i = 0; i + 1 < segment.length(); i++) {
+                    terms.add(segment.substring(i, i + 2));
+                }
+            }
+        }
+        Map<String, long[]> postings = this.postings;
+        List<long[]> lists = new ArrayList<>(terms.size());
+        for (String term : terms) {
+            long[] keys = postings.get(term);
+            if (keys == null) {
+                return;
+            }
+            lists.add(keys);
+        }
+        lists.sort(Comparator.comparingInt(keys -> keys.length));
+        int[] from = new int[lists.size()];
+        outer:
+        for (long key : lists.get(0)) {
+            for (int i = 1; i < lists.size(); i++) {
+                long[] keys = lists.get(i);
+                from[i] = SortedLongArrays.seek(keys, from[i], key);
+                if (from[i] >= keys.length) {
+                    return;
+                }
+                if (keys[from[i]] != key) {
+                    continue outer;
+                }
+            }
+            if (!visitor.test(key)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 统一全角半角和大小写
+     */
+    static String normalize(String text) {
+        if (StrUtil.isBlank(text)) {
+            return "";
+        }
+        return Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase();
+    }
+
+    /**
+     * 按非字母数字切分为片段
+     */
+    static List<String> segments(String text) {
+        String normalized = normalize(text);
+        List<String> segments = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean word = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                segments.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        return segments;
+    }
+
+    private static long[] insert(long[] keys, long key) {
+        int idx = Arrays.binarySearch(keys, key);
+        if (idx >= 0) {
+            return keys;
+        }
+        idx = -idx - 1;
+        long[] result = new long[keys.length + 1];
+        System.arraycopy(keys, 0, result, 0, idx);
+        result[idx] = key;
+        System.arraycopy(keys, idx, result, idx + 1, keys.length - idx);
+        return result;
+    }
+
+    private static long[] remove(long[] keys, long key) {
+        int idx = Arrays.binarySearch(keys, key);
+        if (idx < 0) {
+            return keys;
+        }
+        long[] result = new long[keys.length - 1];
+        System.arraycopy(keys, 0, result, 0, idx);
+        System.arraycopy(keys, idx + 1, result, idx, keys.length - idx - 1);
+        return result;
+    }
+
+    private static final class Doc {
+
+        static final int MATCH_NONE = 0;
+        static final int MATCH_AREA = 1;
+        static final int MATCH_NAME = 2;
+
+        final long id;
+        /**
+         * 排序键：高位为 MAX_SCORE - 评分，低位为id
+         */
+        final long key;
+        final String name;
+        final String area;
+        final String normalizedName;
+        final String normalizedArea;
+
+        Doc(Shop shop) {
+            int score = shop.getScore() == null ? 0 : Math.max(0, Math.min(MAX_SCORE, shop.getScore()));
+            this.id = shop.getId();
+            this.key = ((long) (MAX_SCORE - score) << ID_BITS) | id;
+            this.name = shop.getName();
+            this.area = shop.getArea();
+            this.normalizedName = normalize(name);
+            this.normalizedArea = normalize(area);
+        }
+
+        Set<String> terms() {
+            Set<String> terms = new LinkedHashSet<>();
+            addTerms(terms, name);
+            addTerms(terms, area);
+            return terms;
+        }
+
+        /**
+         * 每个片段都要出现在名称或商圈中；全部出现在名称中视为名称命中
+         */
+        int match(List<String> segments) {
+            boolean allInName = true;
+            for (String segment : segments) {
+                if (normalizedName.contains(segment)) {
+                    continue;
+                }
+                allInName = false;
+                if (!normalizedArea.contains(segment)) {
+                    return MATCH_NONE;
+                }
+            }
+            return allInName ? MATCH_NAME : MATCH_AREA;
+        }
+
+        private static void addTerms(Set<String> terms, String text) {
+            for (String segment : segments(text)) {
+                for (int i = 0; i < segment.length(); i++) {
+                    terms.add(segment.substring(i, i + 1));
+                    if (i + 1 < segment.length()) {
+                        terms.add(segment.substring(i, i + 2));
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class LongBuffer {
+
+        private long[] values = new long[4];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size << 1);
+            }
+            values[size++] = value;
+        }
+
+        long[] toSortedArray() {
+            long[] result = Arrays.copyOf(values, size);
+            Arrays.sort(result);
+            return result;
+        }
+    }
+}
@@ -2,6 +2,8 @@ package com.hmdp.utils;
 
 
 import cn.hutool.core.lang.UUID;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.boot.autoconfigure.cache.CacheProperties;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.RedisTemplate;
@@ -23,6 +25,12 @@ public class SimpleRedisLock implements ILock{
 
     private static final String ID_PREFIX = UUID.randomUUID().toString(true) + "-";
 
+    /**
+     * 获取锁的耗时，按是否成功区分
+     */
+    private static final Timer ACQUIRED = Metrics.timer("hmdp.lock.acquire", "result", "acquired");
+    private static final Timer FAILED = Metrics.timer("hmdp.lock.acquire", "result", "failed");
+
     private static final DefaultRedisScript<Long> UNLOCK_SCRIPT;
     static {
         UNLOCK_SCRIPT = new DefaultRedisScript<>();
@@ -41,9 +49,12 @@ public class SimpleRedisLock implements ILock{
         // 获取线程标示
         String threadId = ID_PREFIX + Thread.currentThread().getId();
         // 获取锁
+        long begin = System.nanoTime();
         Boolean success = stringRedisTemplate.opsForValue()
                 .setIfAbsent(KEY_PREFIX + name, threadId, timeoutSec, TimeUnit.SECONDS);
-        return Boolean.TRUE.equals(success);
+        boolean acquired = Boolean.TRUE.equals(success);
+        (acquired ? ACQUIRED : FAILED).record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+        return acquired;
     }
 
 //    @Override
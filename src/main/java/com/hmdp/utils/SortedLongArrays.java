@@ -0,0 +1,56 @@
+package com.hmdp.utils;
+
+import java.util.Arrays;
+
+/**
+ * 有序long数组上的集合运算，用于在本地紧凑地表示大的id集合（每个元素8字节，无装箱）
+ */
+public class SortedLongArrays {
+
+    public static boolean contains(long[] sorted, long key) {
+        return Arrays.binarySearch(sorted, key) >= 0;
+    }
+
+    /**
+     * 求两个升序数组的交集。遍历较小的数组，在较大的数组中倍增跳跃（galloping）再二分，
+     * 复杂度 O(m * log(n / m))，两个数组大小悬殊时远快于归并
+     */
+    public static long[] intersect(long[] a, long[] b) {
+        if (a.length > b.length) {
+            long[] t = a;
+            a = b;
+            b = t;
+        }
+        long[] result = new long[a.length];
+        int size = 0;
+        int from = 0;
+        for (long key : a) {
+            from = seek(b, from, key);
+            if (from >= b.length) {
+                break;
+            }
+            if (b[from] == key) {
+                result[size++] = key;
+                from++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * 从from开始查找第一个 >= key 的下标，不存在时返回数组长度
+     */
+    public static int seek(long[] sorted, int from, long key) {
+        if (from >= sorted.length || sorted[from] >= key) {
+            return from;
+        }
+        // 1.倍增步长，找到第一个 >= key 的区间
+        int bound = 1;
+        while (from + bound < sorted.length && sorted[from + bound] < key) {
+            bound <<= 1;
+        }
+        // 2.在区间内二分
+        int idx = Arrays.binarySearch(sorted, from + (bound >> 1), Math.min(from + bound + 1, sorted.length), key);
+        return idx >= 0 ? idx : -idx - 1;
+    }
+}
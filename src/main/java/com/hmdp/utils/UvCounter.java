@@ -0,0 +1,150 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.UV_KEY;
+import static com.hmdp.utils.RedisConstants.UV_MERGED_TTL;
+import static com.hmdp.utils.RedisConstants.UV_TTL;
+
+/**
+ * 基于HyperLogLog的UV统计，每个计数器固定占用约12KB，与访客数量无关。
+ * <p>
+ * 请求线程只把访问记录放入本地有界队列，队列满时直接丢弃；定时任务把队列中的记录按key分组，
+ * 一次管道批量 PFADD uv:{type:id}:yyyyMMdd。
+ */
+@Slf4j
+@Component
+public class UvCounter {
+
+    public static final String TYPE_SHOP = "shop";
+    public static final String TYPE_BLOG = "blog";
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private static final int BUFFER_SIZE = 100000;
+    private static final int FLUSH_BATCH_SIZE = 10000;
+    /**
+     * 超过该天数的区间先PFMERGE再缓存合并结果
+     */
+    private static final int MERGE_THRESHOLD_DAYS = 7;
+
+    private final BlockingQueue<String[]> buffer = new ArrayBlockingQueue<>(BUFFER_SIZE);
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public UvCounter(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 记录一次访问，不会阻塞调用线程
+     * @param type 统计对象类型，shop或blog
+     * @param id 统计对象id
+     * @param visitor 访客标识，登录用户为用户id，否则为客户端指纹
+     */
+    public void record(String type, Long id, String visitor) {
+        String key = dayKey(type, id, LocalDate.now());
+        if (!buffer.offer(new String[]{key, visitor})) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * 每秒把缓冲的访问记录批量写入Redis
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void flush() {
+        List<String[]> records = new ArrayList<>(FLUSH_BATCH_SIZE);
+        while (buffer.drainTo(records, FLUSH_BATCH_SIZE) > 0) {
+            // 1.按key分组
+            Map<String, List<String>> visitors = new HashMap<>();
+            for (String[] record : records) {
+                visitors.computeIfAbsent(record[0], k -> new ArrayList<>()).add(record[1]);
+            }
+            records.clear();
+            // 2.一次管道写入每个key，并设置过期时间
+            long ttl = TimeUnit.DAYS.toSeconds(UV_TTL);
+            try {
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    StringRedisConnection conn = (StringRedisConnection) connection;
+                    visitors.forEach((key, values) -> {
+                        conn.pfAdd(key, values.toArray(new String[0]));
+                        conn.expire(key, ttl);
+                    });
+                    return null;
+                });
+            } catch (Exception e) {
+                log.error("UV记录写入失败，丢弃{}个计数器的数据", visitors.size(), e);
+                return;
+            }
+        }
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            log.warn("UV缓冲区已满，丢弃{}条访问记录", lost);
+        }
+    }
+
+    /**
+     * 统计日期区间内的UV，包含首尾两天
+     */
+    public long count(String type, Long id, LocalDate begin, LocalDate end) {
+        String[] keys = dayKeys(type, id, begin, end);
+        long days = keys.length;
+        // 1.短区间或包含今天的区间，PFCOUNT直接合并计算
+        if (days <= MERGE_THRESHOLD_DAYS || !end.isBefore(LocalDate.now())) {
+            Long count = stringRedisTemplate.opsForHyperLogLog().size(keys);
+            return count == null ? 0 : count;
+        }
+        // 2.已经结束的长区间，PFMERGE结果缓存起来，重复查询只需一次PFCOUNT
+        String mergedKey = keyPrefix(type, id)
+                + begin.format(DATE_FORMATTER) + "-" + end.format(DATE_FORMATTER);
+        if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(mergedKey))) {
+            stringRedisTemplate.opsForHyperLogLog().union(mergedKey, keys);
+            stringRedisTemplate.expire(mergedKey, UV_MERGED_TTL, TimeUnit.HOURS);
+        }
+        Long count = stringRedisTemplate.opsForHyperLogLog().size(mergedKey);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * 日期区间内每天的计数器key，包含首尾两天，可直接用于PFCOUNT
+     */
+    public static String[] dayKeys(String type, Long id, LocalDate begin, LocalDate end) {
+        long days = ChronoUnit.DAYS.between(begin, end) + 1;
+        String[] keys = new String[(int) days];
+        for (int i = 0; i < days; i++) {
+            keys[i] = dayKey(type, id, begin.plusDays(i));
+        }
+        return keys;
+    }
+
+    private static String dayKey(String type, Long id, LocalDate date) {
+        return keyPrefix(type, id) + date.format(DATE_FORMATTER);
+    }
+
+    /**
+     * uv:{type:id}:，同一对象的每天计数器和合并结果带相同的hash tag，集群模式下PFCOUNT、PFMERGE不会跨槽
+     */
+    static String keyPrefix(String type, Long id) {
+        return UV_KEY + "{" + type + ":" + id + "}:";
+    }
+}
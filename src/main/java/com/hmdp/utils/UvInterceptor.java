@@ -0,0 +1,53 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import com.hmdp.dto.UserDTO;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 记录商铺、博文详情页的访客，只负责把访问放入UvCounter的缓冲区
+ */
+public class UvInterceptor implements HandlerInterceptor {
+
+    private static final Pattern DETAIL_PATH = Pattern.compile("^/(shop|blog)/(\\d+)(?:/detail|/page)?$");
+
+    private final UvCounter uvCounter;
+
+    public UvInterceptor(UvCounter uvCounter) {
+        this.uvCounter = uvCounter;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        // 异步处理的请求完成时还会分派一次，只在第一次分派时记录
+        if (!"GET".equals(request.getMethod()) || request.getDispatcherType() != DispatcherType.REQUEST) {
+            return true;
+        }
+        Matcher matcher = DETAIL_PATH.matcher(request.getRequestURI());
+        if (!matcher.matches()) {
+            return true;
+        }
+        uvCounter.record(matcher.group(1), Long.valueOf(matcher.group(2)), visitorOf(request));
+        return true;
+    }
+
+    /**
+     * 登录用户用用户id，未登录用IP和User-Agent的摘要作为客户端指纹
+     */
+    private static String visitorOf(HttpServletRequest request) {
+        UserDTO user = UserHolder.getUser();
+        if (user != null) {
+            return user.getId().toString();
+        }
+        String ip = request.getHeader("X-Forwarded-For");
+        ip = StrUtil.isBlank(ip) ? request.getRemoteAddr() : StrUtil.subBefore(ip, ",", false).trim();
+        return "g:" + DigestUtil.md5Hex16(ip + "|" + request.getHeader("User-Agent"));
+    }
+}
@@ -0,0 +1,63 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Supplier;
+
+/**
+ * 虚拟线程支持。
+ * <p>
+ * 项目按Java 8编译，这里通过反射调用JDK 21的虚拟线程API。只有启动参数带 -Dhmdp.virtual-threads=true
+ * 并且运行在JDK 21及以上时才开启，否则仍然使用原来的平台线程池。
+ * 各个线程池在类加载时就会创建，所以开关只能是JVM系统属性，不能写在application.yaml里。
+ */
+@Slf4j
+public final class VirtualThreads {
+
+    public static final String PROPERTY = "hmdp.virtual-threads";
+
+    private static final boolean ENABLED = Boolean.getBoolean(PROPERTY) && isSupported();
+
+    private VirtualThreads() {
+    }
+
+    public static boolean enabled() {
+        return ENABLED;
+    }
+
+    /**
+     * 创建线程池：开启虚拟线程时每个任务一个虚拟线程，否则使用fallback创建的线程池
+     * @param prefix 线程名前缀
+     * @param fallback 未开启时使用的线程池，为null时返回null
+     */
+    public static ExecutorService newExecutor(String prefix, Supplier<ExecutorService> fallback) {
+        if (!ENABLED) {
+            return fallback == null ? null : fallback.get();
+        }
+        try {
+            // Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix, 0).factory())
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            Method perTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) perTask.invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("创建虚拟线程池失败", e);
+        }
+    }
+
+    private static boolean isSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            log.warn("当前JDK不支持虚拟线程，{}=true被忽略", PROPERTY);
+            return false;
+        }
+    }
+}
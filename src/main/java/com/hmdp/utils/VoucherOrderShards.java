@@ -0,0 +1,318 @@
+package com.hmdp.utils;
+
+import com.hmdp.mapper.VoucherOrderMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.hmdp.utils.RedisConstants.LOCK_ORDER_MIGRATION_KEY;
+import static com.hmdp.utils.RedisConstants.ORDER_SHARD_ARCHIVED_KEY;
+
+/**
+ * 订单按下单月份分表：tb_voucher_order_yyyyMM。
+ * <p>
+ * 订单id的高32位是RedisIdWorker生成时的时间戳，由id就能算出所在的表，按id查询只访问一张表；按用户查询在各月的表上并行执行。
+ * 语句中的逻辑表名tb_voucher_order由MybatisConfig中的DynamicTableNameInnerInterceptor替换为on指定的分表，
+ * 没有指定分表时执行订单语句直接报错，不会静默地写到别的表。
+ * <p>
+ * 当月和下个月的分表在启动时和每天的维护任务中提前创建；超过hmdp.order.online-months个月的分表改名为tb_voucher_order_archive_yyyyMM，
+ * 不再参与按用户查询，按id仍能查到，可以整表导出后删除。
+ * <p>
+ * 分表前的订单在旧表tb_voucher_order中，启动时由一个实例按天复制到对应月份的分表（已归档的月份复制到归档表），
+ * 完成后旧表改名为tb_voucher_order_legacy留作备份；复制可以重复执行，中途失败下次启动继续。
+ * 迁移期间同时启动的其它实例查不到旧订单，升级前需要停掉所有旧版本实例
+ */
+@Slf4j
+@Component
+public class VoucherOrderShards {
+
+    public static final String LOGICAL_TABLE = "tb_voucher_order";
+    private static final String SHARD_PREFIX = LOGICAL_TABLE + "_";
+    private static final String ARCHIVE_PREFIX = LOGICAL_TABLE + "_archive_";
+    private static final String LEGACY_BACKUP_TABLE = LOGICAL_TABLE + "_legacy";
+    private static final Pattern SHARD_TABLE = Pattern.compile("tb_voucher_order_(archive_)?(\\d{6})");
+    private static final DateTimeFormatter SUFFIX_FORMATTER = DateTimeFormatter.ofPattern("yyyyMM");
+
+    /**
+     * 当前线程的订单语句要访问的分表
+     */
+    private static final ThreadLocal<String> TABLE = new ThreadLocal<>();
+
+    private final DataSource dataSource;
+    private final VoucherOrderMapper voucherOrderMapper;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final int onlineMonths;
+
+    /**
+     * 已存在的分表，由数据库元数据定期刷新，其他实例归档的分表在下次刷新后移出
+     */
+    private volatile NavigableSet<YearMonth> online = Collections.emptyNavigableSet();
+    private volatile Set<YearMonth> archived = Collections.emptySet();
+
+    public VoucherOrderShards(DataSource dataSource, VoucherOrderMapper voucherOrderMapper,
+                              StringRedisTemplate stringRedisTemplate,
+                              @Value("${hmdp.order.online-months:12}") int onlineMonths) {
+        if (onlineMonths < 2) {
+            throw new IllegalArgumentException("hmdp.order.online-months不能小于2");
+        }
+        this.dataSource = dataSource;
+        this.voucherOrderMapper = voucherOrderMapper;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.onlineMonths = onlineMonths;
+    }
+
+    public static YearMonth monthOf(long orderId) {
+        return YearMonth.from(RedisIdWorker.timeOf(orderId));
+    }
+
+    public static String tableOf(YearMonth month) {
+        return SHARD_PREFIX + month.format(SUFFIX_FORMATTER);
+    }
+
+    /**
+     * 在指定的分表上执行订单语句
+     */
+    public static <T> T on(String table, Supplier<T> action) {
+        String previous = TABLE.get();
+        TABLE.set(table);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                TABLE.remove();
+            } else {
+                TABLE.set(previous);
+            }
+        }
+    }
+
+    /**
+     * DynamicTableNameInnerInterceptor替换逻辑表名时调用
+     */
+    public static String routedTable() {
+        String table = TABLE.get();
+        if (table == null) {
+            throw new IllegalStateException(LOGICAL_TABLE + "按月分表，需要通过VoucherOrderShards.on指定分表");
+        }
+        return table;
+    }
+
+    /**
+     * 按id查询订单所在的表，在线分表或归档表；该月没有分表时返回null
+     */
+    public String lookupTableOf(long orderId) {
+        YearMonth month = monthOf(orderId);
+        if (online.contains(month)) {
+            return tableOf(month);
+        }
+        return archived.contains(month) ? archiveTableOf(month) : null;
+    }
+
+    private static String archiveTableOf(YearMonth month) {
+        return ARCHIVE_PREFIX + month.format(SUFFIX_FORMATTER);
+    }
+
+    /**
+     * 在线的分表，从新到旧
+     */
+    public List<YearMonth> onlineMonths() {
+        return new ArrayList<>(online.descendingSet());
+    }
+
+    /**
+     * 从指定时间起的所有分表，包括已归档的，从新到旧。多退一天，容忍数据库时间与订单id中的时间不一致
+     */
+    public List<String> tablesSince(LocalDateTime time) {
+        NavigableSet<YearMonth> months = new TreeSet<>(online);
+        Set<YearMonth> archivedMonths = archived;
+        months.addAll(archivedMonths);
+        if (time != null) {
+            months = months.tailSet(YearMonth.from(time.minusDays(1)), true);
+        }
+        List<String> tables = new ArrayList<>(months.size());
+        for (YearMonth month : months.descendingSet()) {
+            tables.add(archivedMonths.contains(month) ? archiveTableOf(month) : tableOf(month));
+        }
+        return tables;
+    }
+
+    @PostConstruct
+    private void init() {
+        refresh();
+        YearMonth now = YearMonth.now();
+        ensure(now);
+        ensure(now.plusMonths(1));
+        migrateLegacy();
+    }
+
+    /**
+     * 把分表前旧表中的订单复制到分表，见类注释
+     */
+    private void migrateLegacy() {
+        if (!legacyTableExists()) {
+            return;
+        }
+        // 1.多实例同时启动时只有一个执行
+        Boolean locked = stringRedisTemplate.opsForValue()
+                .setIfAbsent(LOCK_ORDER_MIGRATION_KEY, "1", 1, TimeUnit.HOURS);
+        if (!Boolean.TRUE.equals(locked)) {
+            log.warn("其它实例正在迁移分表前的订单");
+            return;
+        }
+        try {
+            // 2.逐个找出有订单的月份，没有订单的月份不创建分表
+            int copied = 0;
+            long fromId = 0;
+            Long first;
+            while ((first = firstLegacyId(fromId)) != null) {
+                LocalDate day = RedisIdWorker.timeOf(first).toLocalDate();
+                YearMonth month = YearMonth.from(day);
+                String table = migrationTableOf(month);
+                // 3.按天复制，每条语句只处理一天的订单，避免长时间锁住旧表
+                for (; YearMonth.from(day).equals(month); day = day.plusDays(1)) {
+                    long dayFromId = RedisIdWorker.minIdAt(day.atStartOfDay());
+                    long dayToId = RedisIdWorker.minIdAt(day.plusDays(1).atStartOfDay());
+                    copied += on(LOGICAL_TABLE, () -> voucherOrderMapper.copyLegacy(table, dayFromId, dayToId));
+                }
+                fromId = RedisIdWorker.minIdAt(month.plusMonths(1).atDay(1).atStartOfDay());
+            }
+            log.info("分表前的订单已复制到分表，orders={}", copied);
+            // 4.全部复制完后旧表改名备份，之后启动不再迁移
+            on(LOGICAL_TABLE, () -> {
+                voucherOrderMapper.renameShard(LOGICAL_TABLE, LEGACY_BACKUP_TABLE);
+                return null;
+            });
+            refresh();
+            log.info("分表前的订单表已改名为{}", LEGACY_BACKUP_TABLE);
+        } catch (Exception e) {
+            log.error("迁移分表前的订单失败，下次启动重试", e);
+        } finally {
+            stringRedisTemplate.delete(LOCK_ORDER_MIGRATION_KEY);
+        }
+    }
+
+    private Long firstLegacyId(long fromId) {
+        return on(LOGICAL_TABLE, () -> voucherOrderMapper.selectFirstLegacyId(fromId));
+    }
+
+    /**
+     * 已归档的月份写入归档表，否则写入该月的分表，没有时创建；更早的月份由维护任务归档
+     */
+    private String migrationTableOf(YearMonth month) {
+        if (archived.contains(month)) {
+            return archiveTableOf(month);
+        }
+        ensure(month);
+        return tableOf(month);
+    }
+
+    private boolean legacyTableExists() {
+        try (Connection connection = dataSource.getConnection();
+             ResultSet tables = connection.getMetaData().getTables(
+                     connection.getCatalog(), null, LOGICAL_TABLE, new String[]{"TABLE"})) {
+            while (tables.next()) {
+                if (LOGICAL_TABLE.equalsIgnoreCase(tables.getString("TABLE_NAME"))) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (SQLException e) {
+            throw new IllegalStateException("读取订单表失败", e);
+        }
+    }
+
+    /**
+     * 每天提前创建下个月的分表，并归档过期的分表
+     */
+    @Scheduled(cron = "0 30 2 * * ?")
+    public void maintain() {
+        refresh();
+        YearMonth now = YearMonth.now();
+        ensure(now);
+        ensure(now.plusMonths(1));
+        YearMonth cutoff = now.minusMonths(onlineMonths - 1);
+        for (YearMonth month : online.headSet(cutoff, false)) {
+            archive(month);
+        }
+    }
+
+    /**
+     * 从数据库元数据重新读取已存在的分表
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void refresh() {
+        NavigableSet<YearMonth> foundOnline = new TreeSet<>();
+        Set<YearMonth> foundArchived = new TreeSet<>();
+        try (Connection connection = dataSource.getConnection();
+             ResultSet tables = connection.getMetaData().getTables(
+                     connection.getCatalog(), null, SHARD_PREFIX + "%", new String[]{"TABLE"})) {
+            while (tables.next()) {
+                Matcher matcher = SHARD_TABLE.matcher(tables.getString("TABLE_NAME").toLowerCase());
+                if (!matcher.matches()) {
+                    continue;
+                }
+                YearMonth month = YearMonth.parse(matcher.group(2), SUFFIX_FORMATTER);
+                (matcher.group(1) == null ? foundOnline : foundArchived).add(month);
+            }
+        } catch (SQLException e) {
+            log.error("读取订单分表失败", e);
+            return;
+        }
+        online = Collections.unmodifiableNavigableSet(foundOnline);
+        archived = Collections.unmodifiableSet(foundArchived);
+    }
+
+    private void ensure(YearMonth month) {
+        if (online.contains(month)) {
+            return;
+        }
+        String suffix = month.format(SUFFIX_FORMATTER);
+        voucherOrderMapper.createShard(SHARD_PREFIX + suffix, suffix);
+        NavigableSet<YearMonth> months = new TreeSet<>(online);
+        months.add(month);
+        online = Collections.unmodifiableNavigableSet(months);
+        log.debug("创建订单分表{}", SHARD_PREFIX + suffix);
+    }
+
+    private void archive(YearMonth month) {
+        String suffix = month.format(SUFFIX_FORMATTER);
+        // 1.多实例之间只允许一个执行
+        Boolean first = stringRedisTemplate.opsForValue()
+                .setIfAbsent(ORDER_SHARD_ARCHIVED_KEY + suffix, "1", 400, TimeUnit.DAYS);
+        if (!Boolean.TRUE.equals(first)) {
+            return;
+        }
+        // 2.改名只修改元数据，不复制数据；失败时清除标记，第二天重试
+        try {
+            voucherOrderMapper.renameShard(SHARD_PREFIX + suffix, ARCHIVE_PREFIX + suffix);
+        } catch (Exception e) {
+            stringRedisTemplate.delete(ORDER_SHARD_ARCHIVED_KEY + suffix);
+            log.error("订单分表{}归档失败", SHARD_PREFIX + suffix, e);
+            return;
+        }
+        refresh();
+        log.info("订单分表{}已归档为{}", SHARD_PREFIX + suffix, archiveTableOf(month));
+    }
+}
@@ -0,0 +1,22 @@
+-- 在对数空间里给排行成员累加或扣除一次热度贡献：score = ln(e^score ± e^c)
+-- ARGV[3]为-1时扣除（取消点赞），否则累加
+local cur = redis.call('zscore', KEYS[1], ARGV[1])
+local c = tonumber(ARGV[2])
+local sign = tonumber(ARGV[3] or '1')
+if (not cur) then
+    -- 不在排行中（已被裁剪），累加时以本次贡献重新进入
+    if (sign > 0) then
+        redis.call('zadd', KEYS[1], c, ARGV[1])
+    end
+    return
+end
+cur = tonumber(cur)
+if (sign < 0) then
+    if (c >= cur) then
+        return
+    end
+    redis.call('zadd', KEYS[1], cur + math.log(1 - math.exp(c - cur)), ARGV[1])
+    return
+end
+local m = math.max(cur, c)
+redis.call('zadd', KEYS[1], m + math.log(math.exp(cur - m) + math.exp(c - m)), ARGV[1])
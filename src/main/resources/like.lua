@@ -0,0 +1,21 @@
+-- 1.参数列表
+-- 1.1.用户id
+local userId = ARGV[1]
+-- 1.2.点赞时间戳（毫秒）
+local now = ARGV[2]
+
+-- 2.数据key
+-- 2.1.点赞用户集合key blog:liked:blogId，每篇博文一个key，集群模式下按博文分散到各个槽
+local likedKey = KEYS[1]
+
+-- 3.脚本业务
+-- 3.1.判断用户是否已点赞 ZSCORE likedKey userId
+local likedAt = redis.call('zscore', likedKey, userId)
+if (likedAt) then
+    -- 3.2.已点赞，取消点赞，返回负的点赞时间，调用方据此扣除当初那次点赞贡献的热度
+    redis.call('zrem', likedKey, userId)
+    return -tonumber(likedAt)
+end
+-- 3.3.未点赞，保存用户及点赞时间，返回点赞时间
+redis.call('zadd', likedKey, now, userId)
+return tonumber(now)
@@ -5,28 +5,45 @@ local voucherId = ARGV[1]
 local userId = ARGV[2]
 -- 1.3.订单id
 local orderId = ARGV[3]
+-- 1.4.当前时间，毫秒时间戳
+local now = tonumber(ARGV[4])
 
--- 2.数据key
--- 2.1.库存key
-local stockKey = 'seckill:stock:' .. voucherId
--- 2.2.订单key
-local orderKey = 'seckill:order:' .. voucherId
+-- 2.数据key，由调用方传入，带有相同的hash tag，集群模式下在同一个槽
+-- 2.1.库存key seckill:stock:{p}:voucherId
+local stockKey = KEYS[1]
+-- 2.2.订单key seckill:order:{p}:voucherId
+local orderKey = KEYS[2]
+-- 2.3.订单队列key stream.orders:{p}
+local streamKey = KEYS[3]
+-- 2.4.秒杀时间key seckill:meta:{p}:voucherId
+local metaKey = KEYS[4]
 
 -- 3.脚本业务
--- 3.1.判断库存是否充足 get stockKey
-if(tonumber(redis.call('get', stockKey)) <= 0) then
-    -- 3.2.库存不足，返回1
+-- 3.1.判断是否在秒杀时间内 HMGET metaKey begin end，没有秒杀时间时跳过，由调用方的本地校验兜底
+local window = redis.call('hmget', metaKey, 'begin', 'end')
+if(window[1] and now < tonumber(window[1])) then
+    -- 尚未开始，返回3
+    return 3
+end
+if(window[2] and now > tonumber(window[2])) then
+    -- 已经结束，返回4
+    return 4
+end
+-- 3.2.判断库存是否充足 get stockKey
+local stock = tonumber(redis.call('get', stockKey))
+if(not stock or stock <= 0) then
+    -- 库存不足或库存key不存在，返回1
     return 1
 end
--- 3.2.判断用户是否下单 SISMEMBER orderKey userId
+-- 3.3.判断用户是否下单 SISMEMBER orderKey userId
 if(redis.call('sismember', orderKey, userId) == 1) then
-    -- 3.3.存在，说明是重复下单，返回2
+    -- 存在，说明是重复下单，返回2
     return 2
 end
 -- 3.4.扣库存 incrby stockKey -1
 redis.call('incrby', stockKey, -1)
 -- 3.5.下单（保存用户）sadd orderKey userId
 redis.call('sadd', orderKey, userId)
--- 3.6.发送消息到队列中， XADD stream.orders * k1 v1 k2 v2 ...
-redis.call('xadd', 'stream.orders', '*', 'userId', userId, 'voucherId', voucherId, 'id', orderId)
-return 0
\ No newline at end of file
+-- 3.6.发送消息到队列中， XADD stream.orders:{p} * k1 v1 k2 v2 ...
+redis.call('xadd', streamKey, '*', 'userId', userId, 'voucherId', voucherId, 'id', orderId)
+return 0
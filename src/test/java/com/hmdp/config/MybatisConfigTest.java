@@ -0,0 +1,63 @@
+package com.hmdp.config;
+
+import com.baomidou.mybatisplus.autoconfigure.MybatisPlusAutoConfiguration;
+import com.hmdp.utils.QueryTimeoutInterceptor;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 未配置读写分离副本时，MyBatis插件仍然包括语句超时
+ */
+class MybatisConfigTest {
+
+    private final ApplicationContextRunner runner = new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(MybatisPlusAutoConfiguration.class))
+            .withUserConfiguration(MybatisConfig.class, DataSourceConfig.class)
+            .withBean(DataSource.class, () -> mock(DataSource.class));
+
+    @Test
+    void statementTimeoutIsAppliedWithoutReplicas() {
+        runner.run(context -> {
+            assertFalse(context.containsBean("readWriteRoutingInterceptor"));
+            SqlSessionFactory sqlSessionFactory = context.getBean(SqlSessionFactory.class);
+            assertTrue(sqlSessionFactory.getConfiguration().getInterceptors().stream()
+                    .anyMatch(QueryTimeoutInterceptor.class::isInstance));
+
+            // 插件包装的StatementHandler在超时限制下准备语句时设置查询超时
+            Statement statement = mock(Statement.class);
+            StatementHandler target = mock(StatementHandler.class);
+            when(target.prepare(any(), any())).thenReturn(statement);
+            StatementHandler wrapped = (StatementHandler) context.getBean(QueryTimeoutInterceptor.class).plugin(target);
+
+            prepare(wrapped);
+            verify(statement, never()).setQueryTimeout(anyInt());
+            QueryTimeoutInterceptor.within(2, () -> prepare(wrapped));
+            verify(statement).setQueryTimeout(2);
+        });
+    }
+
+    private static Statement prepare(StatementHandler handler) {
+        try {
+            return handler.prepare(mock(Connection.class), null);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
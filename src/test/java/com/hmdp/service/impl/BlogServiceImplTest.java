@@ -0,0 +1,135 @@
+package com.hmdp.service.impl;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.mapper.BlogMapper;
+import com.hmdp.utils.EmbeddedRedis;
+import com.hmdp.utils.HotBlogRanker;
+import com.hmdp.utils.UserHolder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_DIRTY_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_PROCESSING_KEY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 点赞数按点赞集合的大小回写，回写失败或重复回写时数据库中的点赞数不漂移
+ */
+class BlogServiceImplTest {
+
+    private static final long BLOG_ID = 7L;
+
+    private static EmbeddedRedis redis;
+
+    private final BlogServiceImpl blogService = new BlogServiceImpl();
+    private final BlogMapper blogMapper = mock(BlogMapper.class);
+
+    /**
+     * 每次setLikedBatch写入的内容
+     */
+    private final List<Map<Long, Long>> writes = new ArrayList<>();
+    private boolean failWrites;
+
+    @BeforeAll
+    static void startRedis() throws Exception {
+        redis = new EmbeddedRedis();
+    }
+
+    @AfterAll
+    static void stopRedis() throws Exception {
+        redis.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redis.flushAll();
+        ReflectionTestUtils.setField(blogService, "stringRedisTemplate", redis.template());
+        ReflectionTestUtils.setField(blogService, "hotBlogRanker", mock(HotBlogRanker.class));
+        ReflectionTestUtils.setField(blogService, "baseMapper", blogMapper);
+        doAnswer(invocation -> {
+            if (failWrites) {
+                throw new IllegalStateException("数据库不可用");
+            }
+            Map<Long, Long> liked = invocation.getArgument(0);
+            writes.add(new HashMap<>(liked));
+            return liked.size();
+        }).when(blogMapper).setLikedBatch(anyMap());
+    }
+
+    @AfterEach
+    void tearDown() {
+        UserHolder.removeUser();
+    }
+
+    @Test
+    void flushWritesTheSizeOfTheLikedSet() {
+        like(1L, 2L, 3L);
+        // 取消点赞
+        like(2L);
+
+        blogService.flushLiked();
+
+        assertEquals(Collections.singletonList(Collections.singletonMap(BLOG_ID, 2L)), writes);
+        assertFalse(redis.template().hasKey(BLOG_LIKED_DIRTY_KEY));
+        assertFalse(redis.template().hasKey(BLOG_LIKED_PROCESSING_KEY));
+    }
+
+    @Test
+    void nothingToFlush() {
+        blogService.flushLiked();
+        assertTrue(writes.isEmpty());
+    }
+
+    @Test
+    void failedFlushIsRetriedWithTheCurrentCount() {
+        like(1L, 2L);
+        failWrites = true;
+        blogService.flushLiked();
+        assertTrue(redis.template().hasKey(BLOG_LIKED_PROCESSING_KEY));
+
+        // 回写失败后又有新的点赞，重试和下一轮写入的都是当时集合的大小，不会重复累加
+        like(3L);
+        failWrites = false;
+        blogService.flushLiked();
+        blogService.flushLiked();
+
+        assertEquals(2, writes.size());
+        assertEquals(Collections.singletonMap(BLOG_ID, 3L), writes.get(0));
+        assertEquals(Collections.singletonMap(BLOG_ID, 3L), writes.get(1));
+        assertFalse(redis.template().hasKey(BLOG_LIKED_PROCESSING_KEY));
+    }
+
+    @Test
+    void unlikingTheLastLikeWritesZero() {
+        like(1L);
+        like(1L);
+
+        blogService.flushLiked();
+
+        assertEquals(Collections.singletonList(Collections.singletonMap(BLOG_ID, 0L)), writes);
+    }
+
+    private void like(Long... userIds) {
+        for (Long userId : userIds) {
+            UserDTO user = new UserDTO();
+            user.setId(userId);
+            UserHolder.saveUser(user);
+            assertTrue(blogService.likeBlog(BLOG_ID).getSuccess());
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.hmdp.service.impl;
+
+import com.hmdp.utils.EmbeddedRedis;
+import com.hmdp.utils.SeckillKeys;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 秒杀脚本seckill.lua的返回码和写入的数据
+ */
+class SeckillScriptTest {
+
+    private static final long VOUCHER_ID = 10L;
+
+    private static EmbeddedRedis redis;
+
+    private final SeckillKeys keys = new SeckillKeys(4);
+    private final DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+
+    @BeforeAll
+    static void startRedis() throws Exception {
+        redis = new EmbeddedRedis();
+    }
+
+    @AfterAll
+    static void stopRedis() throws Exception {
+        redis.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redis.flushAll();
+        script.setLocation(new ClassPathResource("seckill.lua"));
+        script.setResultType(Long.class);
+    }
+
+    @Test
+    void successDecrementsStockRecordsUserAndQueuesOrder() {
+        stock(2);
+
+        assertEquals(0, seckill(1001L, 5001L, System.currentTimeMillis()));
+
+        StringRedisTemplate template = redis.template();
+        assertEquals("1", template.opsForValue().get(keys.stockKey(VOUCHER_ID)));
+        assertTrue(template.opsForSet().isMember(keys.orderKey(VOUCHER_ID), "1001"));
+        List<MapRecord<String, Object, Object>> records = template.opsForStream()
+                .range(keys.streamKey(VOUCHER_ID), Range.unbounded());
+        assertEquals(1, records.size());
+        Map<Object, Object> order = records.get(0).getValue();
+        assertEquals("1001", order.get("userId"));
+        assertEquals(String.valueOf(VOUCHER_ID), order.get("voucherId"));
+        assertEquals("5001", order.get("id"));
+    }
+
+    @Test
+    void outOfStockReturnsOne() {
+        stock(1);
+        assertEquals(0, seckill(1001L, 5001L, System.currentTimeMillis()));
+
+        assertEquals(1, seckill(1002L, 5002L, System.currentTimeMillis()));
+        assertFalse(redis.template().opsForSet().isMember(keys.orderKey(VOUCHER_ID), "1002"));
+        assertEquals(1L, streamLength());
+    }
+
+    @Test
+    void missingStockKeyReturnsOne() {
+        assertEquals(1, seckill(1001L, 5001L, System.currentTimeMillis()));
+        assertEquals(0L, streamLength());
+    }
+
+    @Test
+    void repeatedOrderReturnsTwo() {
+        stock(5);
+        assertEquals(0, seckill(1001L, 5001L, System.currentTimeMillis()));
+
+        assertEquals(2, seckill(1001L, 5002L, System.currentTimeMillis()));
+        assertEquals("4", redis.template().opsForValue().get(keys.stockKey(VOUCHER_ID)));
+        assertEquals(1L, streamLength());
+    }
+
+    @Test
+    void beforeBeginReturnsThree() {
+        stock(5);
+        window(1000, 2000);
+
+        assertEquals(3, seckill(1001L, 5001L, 999));
+        assertUntouched(5);
+    }
+
+    @Test
+    void afterEndReturnsFour() {
+        stock(5);
+        window(1000, 2000);
+
+        assertEquals(4, seckill(1001L, 5001L, 2001));
+        assertUntouched(5);
+    }
+
+    @Test
+    void windowIsInclusiveAtBothEnds() {
+        stock(5);
+        window(1000, 2000);
+
+        assertEquals(0, seckill(1001L, 5001L, 1000));
+        assertEquals(0, seckill(1002L, 5002L, 2000));
+    }
+
+    @Test
+    void timeIsCheckedBeforeStock() {
+        // 库存为0时，未开始、已结束仍然返回3、4
+        stock(0);
+        window(1000, 2000);
+
+        assertEquals(3, seckill(1001L, 5001L, 999));
+        assertEquals(4, seckill(1001L, 5001L, 2001));
+        assertEquals(1, seckill(1001L, 5001L, 1500));
+    }
+
+    @Test
+    void missingWindowSkipsTheTimeCheck() {
+        stock(1);
+        assertEquals(0, seckill(1001L, 5001L, 0));
+    }
+
+    private void window(long begin, long end) {
+        Map<String, String> meta = new HashMap<>();
+        meta.put("begin", String.valueOf(begin));
+        meta.put("end", String.valueOf(end));
+        redis.template().opsForHash().putAll(keys.metaKey(VOUCHER_ID), meta);
+    }
+
+    private void assertUntouched(int stock) {
+        assertEquals(String.valueOf(stock), redis.template().opsForValue().get(keys.stockKey(VOUCHER_ID)));
+        assertFalse(redis.template().hasKey(keys.orderKey(VOUCHER_ID)));
+        assertEquals(0L, streamLength());
+    }
+
+    private void stock(int stock) {
+        redis.template().opsForValue().set(keys.stockKey(VOUCHER_ID), String.valueOf(stock));
+    }
+
+    private long seckill(Long userId, Long orderId, long now) {
+        Long result = redis.template().execute(script,
+                Arrays.asList(keys.stockKey(VOUCHER_ID), keys.orderKey(VOUCHER_ID),
+                        keys.streamKey(VOUCHER_ID), keys.metaKey(VOUCHER_ID)),
+                String.valueOf(VOUCHER_ID), userId.toString(), orderId.toString(), String.valueOf(now));
+        return result == null ? -1 : result;
+    }
+
+    private long streamLength() {
+        Long size = redis.template().opsForStream().size(keys.streamKey(VOUCHER_ID));
+        return size == null ? 0 : size;
+    }
+}
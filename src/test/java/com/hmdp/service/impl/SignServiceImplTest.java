@@ -0,0 +1,128 @@
+package com.hmdp.service.impl;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.utils.EmbeddedRedis;
+import com.hmdp.utils.UserHolder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.hmdp.utils.RedisConstants.USER_SIGN_KEY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 签到位图的位运算：整月的位在BITFIELD u31结果中的位置，以及跨月的连续签到天数
+ */
+class SignServiceImplTest {
+
+    private static final long USER_ID = 1L;
+    private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private static EmbeddedRedis redis;
+
+    private final SignServiceImpl signService = new SignServiceImpl();
+
+    @BeforeAll
+    static void startRedis() throws Exception {
+        redis = new EmbeddedRedis();
+    }
+
+    @AfterAll
+    static void stopRedis() throws Exception {
+        redis.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redis.flushAll();
+        ReflectionTestUtils.setField(signService, "stringRedisTemplate", redis.template());
+        UserDTO user = new UserDTO();
+        user.setId(USER_ID);
+        UserHolder.saveUser(user);
+    }
+
+    @AfterEach
+    void tearDown() {
+        UserHolder.removeUser();
+    }
+
+    @Test
+    void signOfMonthReadsFirstAndLastDay() {
+        // 闰年二月29天，平年二月28天，大月31天
+        sign(LocalDate.of(2024, 2, 1), LocalDate.of(2024, 2, 15), LocalDate.of(2024, 2, 29));
+        sign(LocalDate.of(2023, 2, 28));
+        sign(LocalDate.of(2023, 1, 31));
+        // 下个月1号的位不能混进来
+        sign(LocalDate.of(2023, 3, 1));
+
+        assertEquals(Arrays.asList(1, 15, 29), signService.signOfMonth("202402").getData());
+        assertEquals(Collections.singletonList(28), signService.signOfMonth("202302").getData());
+        assertEquals(Collections.singletonList(31), signService.signOfMonth("202301").getData());
+        assertEquals(Collections.emptyList(), signService.signOfMonth("202304").getData());
+    }
+
+    @Test
+    void streakCountsBackIntoPreviousMonth() {
+        LocalDate today = LocalDate.now();
+        int days = today.getDayOfMonth() + 3;
+        signDaysBefore(today, days);
+
+        assertEquals(days, signService.signCount().getData());
+    }
+
+    @Test
+    void streakSpansAWholePreviousMonth() {
+        LocalDate today = LocalDate.now();
+        int days = today.getDayOfMonth() + YearMonth.from(today).minusMonths(1).lengthOfMonth() + 2;
+        signDaysBefore(today, days);
+
+        assertEquals(days, signService.signCount().getData());
+    }
+
+    @Test
+    void streakStartsFromYesterdayWhenNotSignedToday() {
+        LocalDate today = LocalDate.now();
+        int days = today.getDayOfMonth() + 1;
+        signDaysBefore(today.minusDays(1), days);
+
+        assertEquals(days, signService.signCount().getData());
+    }
+
+    @Test
+    void streakStopsAtAGap() {
+        LocalDate today = LocalDate.now();
+        sign(today, today.minusDays(1), today.minusDays(3), today.minusDays(4));
+
+        assertEquals(2, signService.signCount().getData());
+    }
+
+    @Test
+    void noStreakWithoutSigns() {
+        assertEquals(0, signService.signCount().getData());
+    }
+
+    /**
+     * 从from开始向前连续签到days天
+     */
+    private static void signDaysBefore(LocalDate from, int days) {
+        for (int i = 0; i < days; i++) {
+            sign(from.minusDays(i));
+        }
+    }
+
+    private static void sign(LocalDate... dates) {
+        for (LocalDate date : dates) {
+            String key = USER_SIGN_KEY + USER_ID + ":" + date.format(MONTH_FORMATTER);
+            redis.template().opsForValue().setBit(key, date.getDayOfMonth() - 1, true);
+        }
+    }
+}
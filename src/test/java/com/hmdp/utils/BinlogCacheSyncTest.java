@@ -0,0 +1,269 @@
+package com.hmdp.utils;
+
+import com.github.shyiko.mysql.binlog.event.DeleteRowsEventData;
+import com.github.shyiko.mysql.binlog.event.Event;
+import com.github.shyiko.mysql.binlog.event.EventData;
+import com.github.shyiko.mysql.binlog.event.EventHeaderV4;
+import com.github.shyiko.mysql.binlog.event.EventType;
+import com.github.shyiko.mysql.binlog.event.RotateEventData;
+import com.github.shyiko.mysql.binlog.event.TableMapEventData;
+import com.github.shyiko.mysql.binlog.event.TableMapEventMetadata;
+import com.github.shyiko.mysql.binlog.event.UpdateRowsEventData;
+import com.github.shyiko.mysql.binlog.event.WriteRowsEventData;
+import com.github.shyiko.mysql.binlog.event.XidEventData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.data.redis.core.GeoOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_PAGE_KEY;
+import static com.hmdp.utils.RedisConstants.CDC_POSITION_KEY;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_KEY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 用构造的binlog事件驱动BinlogCacheSync，不连接MySQL
+ */
+class BinlogCacheSyncTest {
+
+    private static final long SERVER_ID = 42;
+    private static final long SHOP_TABLE_ID = 7;
+    private static final List<String> SHOP_COLUMNS = Arrays.asList("id", "name", "type_id", "area", "x", "y", "score");
+
+    private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, String> valueOps = mock(ValueOperations.class);
+    @SuppressWarnings("unchecked")
+    private final GeoOperations<String, String> geoOps = mock(GeoOperations.class);
+    private final ShopSearchIndex shopSearchIndex = new ShopSearchIndex(null);
+    private final BinlogCacheSync sync = new BinlogCacheSync();
+
+    private long position = 100;
+
+    @BeforeEach
+    void setUp() {
+        when(redis.opsForValue()).thenReturn(valueOps);
+        when(redis.opsForGeo()).thenReturn(geoOps);
+        ReflectionTestUtils.setField(sync, "stringRedisTemplate", redis);
+        ReflectionTestUtils.setField(sync, "shopSearchIndex", shopSearchIndex);
+        ReflectionTestUtils.setField(sync, "database", "hmdp");
+        ReflectionTestUtils.setField(sync, "serverId", SERVER_ID);
+        RotateEventData rotate = new RotateEventData();
+        rotate.setBinlogFilename("mysql-bin.000001");
+        rotate.setBinlogPosition(4);
+        send(EventType.ROTATE, rotate);
+    }
+
+    @Test
+    void serverIdIsStableAndOutsideTheUsualMysqlRange() {
+        long id = BinlogCacheSync.serverIdOf("host-a:8081");
+        assertEquals(id, BinlogCacheSync.serverIdOf("host-a:8081"));
+        assertNotEquals(id, BinlogCacheSync.serverIdOf("host-a:8082"));
+        assertNotEquals(id, BinlogCacheSync.serverIdOf("host-b:8081"));
+        for (String name : Arrays.asList("", "localhost:8081", "host-a:pid1234")) {
+            long serverId = BinlogCacheSync.serverIdOf(name);
+            assertTrue(serverId >= 1L << 31 && serverId <= 0xffffffffL, name + " -> " + serverId);
+        }
+    }
+
+    @Test
+    void shopUpdateEvictsCachesMovesGeoAndSavesPosition() {
+        // 商铺1从类型1改为类型2
+        mapShopTable();
+        updateShop(shopRow(1L, "老店", 1L), shopRow(1L, "新店", 2L));
+        commit();
+        sync.flush();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<String>> deleted = ArgumentCaptor.forClass(Collection.class);
+        verify(redis).delete(deleted.capture());
+        assertTrue(deleted.getValue().containsAll(Arrays.asList(CACHE_SHOP_KEY + 1,
+                CACHE_SHOP_PAGE_KEY + "1:score:first", CACHE_SHOP_PAGE_KEY + "2:score:first")));
+        verify(geoOps).remove(SHOP_GEO_KEY + 1, "1");
+        verify(geoOps).add(eq(SHOP_GEO_KEY + 2), anyMap());
+        verify(valueOps).set(CDC_POSITION_KEY + SERVER_ID, "mysql-bin.000001/" + position);
+        assertEquals(Collections.singletonList(1L), shopSearchIndex.search("新店", 0, 10));
+    }
+
+    @Test
+    void rowsOfOtherDatabasesAreIgnored() {
+        ReflectionTestUtils.setField(sync, "database", "other");
+        mapShopTable();
+        updateShop(shopRow(1L, "老店", 1L), shopRow(1L, "新店", 2L));
+        commit();
+        sync.flush();
+
+        verify(redis, never()).delete(anyCollection());
+        verify(valueOps).set(CDC_POSITION_KEY + SERVER_ID, "mysql-bin.000001/" + position);
+    }
+
+    @Test
+    void repeatedChangesToAShopAreCoalescedIntoOneBatch() {
+        // 同一批次中商铺1先后从类型1移到2、再移到3，跨两个事务
+        mapShopTable();
+        updateShop(shopRow(1L, "一号", 1L), shopRow(1L, "二号", 2L));
+        commit();
+        mapShopTable();
+        updateShop(shopRow(1L, "二号", 2L), shopRow(1L, "三号", 3L));
+        commit();
+        long lastCommit = position;
+        sync.flush();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<String>> deleted = ArgumentCaptor.forClass(Collection.class);
+        verify(redis, times(1)).delete(deleted.capture());
+        assertTrue(deleted.getValue().containsAll(Arrays.asList(CACHE_SHOP_KEY + 1, CACHE_SHOP_PAGE_KEY + "1:id:first",
+                CACHE_SHOP_PAGE_KEY + "2:id:first", CACHE_SHOP_PAGE_KEY + "3:id:first")));
+        // 只按最后的类型加入GEO，经过的类型都移除
+        verify(geoOps).remove(SHOP_GEO_KEY + 1, "1");
+        verify(geoOps).remove(SHOP_GEO_KEY + 2, "1");
+        verify(geoOps, never()).add(eq(SHOP_GEO_KEY + 2), anyMap());
+        verify(geoOps, times(1)).add(eq(SHOP_GEO_KEY + 3), anyMap());
+        verify(valueOps, times(1)).set(CDC_POSITION_KEY + SERVER_ID, "mysql-bin.000001/" + lastCommit);
+        assertEquals(Collections.singletonList(1L), shopSearchIndex.search("三号", 0, 10));
+        assertEquals(Collections.emptyList(), shopSearchIndex.search("二号", 0, 10));
+    }
+
+    @Test
+    void insertThenDeleteInOneBatchLeavesNothingBehind() {
+        mapShopTable();
+        insertShop(shopRow(2L, "快闪店", 4L));
+        commit();
+        mapShopTable();
+        deleteShop(shopRow(2L, "快闪店", 4L));
+        commit();
+        sync.flush();
+
+        verify(geoOps, never()).add(any(String.class), anyMap());
+        assertEquals(Collections.emptyList(), shopSearchIndex.search("快闪店", 0, 10));
+    }
+
+    @Test
+    void positionOnlyAdvancesToTheLastCompleteTransaction() {
+        mapShopTable();
+        updateShop(shopRow(1L, "老店", 1L), shopRow(1L, "新店", 2L));
+        commit();
+        long lastCommit = position;
+        // 第二个事务还没有结束
+        mapShopTable();
+        updateShop(shopRow(3L, "未提交", 1L), shopRow(3L, "未提交", 2L));
+        sync.flush();
+
+        verify(valueOps).set(CDC_POSITION_KEY + SERVER_ID, "mysql-bin.000001/" + lastCommit);
+    }
+
+    @Test
+    void failedBatchIsRetriedBeforeNewChanges() {
+        when(redis.delete(anyCollection())).thenThrow(new IllegalStateException("redis down")).thenReturn(1L);
+        mapShopTable();
+        updateShop(shopRow(1L, "老店", 1L), shopRow(1L, "新店", 2L));
+        commit();
+        long firstCommit = position;
+        sync.flush();
+        verify(valueOps, never()).set(any(String.class), any(String.class));
+
+        // 失败后到达的变更留在下一批
+        mapShopTable();
+        updateShop(shopRow(5L, "五号", 1L), shopRow(5L, "五号", 1L));
+        commit();
+        long secondCommit = position;
+        ReflectionTestUtils.setField(sync, "retryTime", 0L);
+        sync.flush();
+        sync.flush();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<String>> deleted = ArgumentCaptor.forClass(Collection.class);
+        verify(redis, times(3)).delete(deleted.capture());
+        assertEquals(deleted.getAllValues().get(0), deleted.getAllValues().get(1));
+        assertTrue(deleted.getAllValues().get(2).contains(CACHE_SHOP_KEY + 5));
+        InOrder order = inOrder(valueOps);
+        order.verify(valueOps).set(CDC_POSITION_KEY + SERVER_ID, "mysql-bin.000001/" + firstCommit);
+        order.verify(valueOps).set(CDC_POSITION_KEY + SERVER_ID, "mysql-bin.000001/" + secondCommit);
+    }
+
+    private void mapShopTable() {
+        TableMapEventMetadata metadata = new TableMapEventMetadata();
+        metadata.setColumnNames(SHOP_COLUMNS);
+        TableMapEventData data = new TableMapEventData();
+        data.setTableId(SHOP_TABLE_ID);
+        data.setDatabase("hmdp");
+        data.setTable("tb_shop");
+        data.setEventMetadata(metadata);
+        send(EventType.TABLE_MAP, data);
+    }
+
+    private void updateShop(Serializable[] before, Serializable[] after) {
+        UpdateRowsEventData data = new UpdateRowsEventData();
+        data.setTableId(SHOP_TABLE_ID);
+        data.setIncludedColumnsBeforeUpdate(allColumns());
+        data.setIncludedColumns(allColumns());
+        data.setRows(Collections.singletonList(new AbstractMap.SimpleEntry<>(before, after)));
+        send(EventType.EXT_UPDATE_ROWS, data);
+    }
+
+    private void insertShop(Serializable[] row) {
+        WriteRowsEventData data = new WriteRowsEventData();
+        data.setTableId(SHOP_TABLE_ID);
+        data.setIncludedColumns(allColumns());
+        data.setRows(Collections.singletonList(row));
+        send(EventType.EXT_WRITE_ROWS, data);
+    }
+
+    private void deleteShop(Serializable[] row) {
+        DeleteRowsEventData data = new DeleteRowsEventData();
+        data.setTableId(SHOP_TABLE_ID);
+        data.setIncludedColumns(allColumns());
+        data.setRows(Collections.singletonList(row));
+        send(EventType.EXT_DELETE_ROWS, data);
+    }
+
+    private static BitSet allColumns() {
+        BitSet included = new BitSet();
+        included.set(0, SHOP_COLUMNS.size());
+        return included;
+    }
+
+    private void commit() {
+        send(EventType.XID, new XidEventData());
+    }
+
+    private static Serializable[] shopRow(Long id, String name, Long typeId) {
+        return new Serializable[]{id, name.getBytes(StandardCharsets.UTF_8), typeId,
+                "商圈".getBytes(StandardCharsets.UTF_8), 120.1, 30.2, 45};
+    }
+
+    private void send(EventType type, EventData data) {
+        EventHeaderV4 header = new EventHeaderV4();
+        header.setEventType(type);
+        header.setTimestamp(System.currentTimeMillis());
+        position += 50;
+        header.setNextPosition(position);
+        sync.onEvent(new Event(header, data));
+    }
+}
@@ -0,0 +1,83 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ByteRangeTest {
+
+    private static final long LENGTH = 1000;
+
+    @Test
+    void noHeader() {
+        assertNull(ByteRange.parse(null, LENGTH));
+        assertNull(ByteRange.parse("", LENGTH));
+        assertNull(ByteRange.parse("   ", LENGTH));
+    }
+
+    @Test
+    void closedRange() {
+        assertRange(0, 0, ByteRange.parse("bytes=0-0", LENGTH));
+        assertRange(100, 199, ByteRange.parse("bytes=100-199", LENGTH));
+        assertRange(0, 999, ByteRange.parse(" bytes=0-999 ", LENGTH));
+    }
+
+    @Test
+    void endIsClampedToFileLength() {
+        assertRange(500, 999, ByteRange.parse("bytes=500-5000", LENGTH));
+        assertRange(999, 999, ByteRange.parse("bytes=999-999999999999999999", LENGTH));
+    }
+
+    @Test
+    void openEndedRange() {
+        assertRange(500, 999, ByteRange.parse("bytes=500-", LENGTH));
+        assertRange(999, 999, ByteRange.parse("bytes=999-", LENGTH));
+    }
+
+    @Test
+    void suffixRange() {
+        assertRange(900, 999, ByteRange.parse("bytes=-100", LENGTH));
+        assertRange(0, 999, ByteRange.parse("bytes=-1000", LENGTH));
+        // 后缀长度超过文件长度时返回整个文件
+        assertRange(0, 999, ByteRange.parse("bytes=-5000", LENGTH));
+    }
+
+    @Test
+    void unsatisfiableRanges() {
+        assertUnsatisfiable(ByteRange.parse("bytes=1000-", LENGTH));
+        assertUnsatisfiable(ByteRange.parse("bytes=1000-2000", LENGTH));
+        assertUnsatisfiable(ByteRange.parse("bytes=-0", LENGTH));
+        // 空文件没有可以返回的字节
+        assertUnsatisfiable(ByteRange.parse("bytes=0-", 0));
+        assertUnsatisfiable(ByteRange.parse("bytes=-10", 0));
+    }
+
+    /**
+     * 无法解析的Range按RFC 7233忽略，返回null由调用方返回整个文件
+     */
+    @Test
+    void malformedHeadersAreIgnored() {
+        assertNull(ByteRange.parse("bytes=-", LENGTH));
+        assertNull(ByteRange.parse("bytes=a-b", LENGTH));
+        assertNull(ByteRange.parse("items=0-10", LENGTH));
+        assertNull(ByteRange.parse("bytes=0-10,20-30", LENGTH));
+        assertNull(ByteRange.parse("bytes=x", LENGTH));
+        assertNull(ByteRange.parse("bytes=200-100", LENGTH));
+        assertNull(ByteRange.parse("bytes=2000-1000", 0));
+        // 超过18位的数字不解析，避免溢出
+        assertNull(ByteRange.parse("bytes=0-9999999999999999999", LENGTH));
+    }
+
+    private static void assertRange(long start, long end, ByteRange range) {
+        assertTrue(range.isSatisfiable());
+        assertEquals(start, range.getStart());
+        assertEquals(end, range.getEnd());
+    }
+
+    private static void assertUnsatisfiable(ByteRange range) {
+        assertFalse(range.isSatisfiable());
+    }
+}
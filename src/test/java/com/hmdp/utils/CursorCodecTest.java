@@ -0,0 +1,69 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CursorCodecTest {
+
+    private final CursorCodec codec = new CursorCodec("secret".getBytes(StandardCharsets.UTF_8));
+
+    @Test
+    void roundTrip() {
+        String cursor = codec.encode(2, 17L, 45, 1001L);
+        assertArrayEquals(new long[]{2, 17, 45, 1001}, codec.decode(cursor, 4));
+        assertArrayEquals(new long[]{0, Long.MAX_VALUE, Long.MIN_VALUE},
+                codec.decode(codec.encode(0, Long.MAX_VALUE, Long.MIN_VALUE), 3));
+    }
+
+    /**
+     * 游标作为查询参数传递，不能有需要转义的字符和Base64填充
+     */
+    @Test
+    void cursorIsUrlSafe() {
+        String cursor = codec.encode(Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+        assertTrue(cursor.matches("[A-Za-z0-9_\\-]+\\.[A-Za-z0-9_\\-]+"), cursor);
+    }
+
+    @Test
+    void blankCursorDecodesToNull() {
+        assertNull(codec.decode(null, 3));
+        assertNull(codec.decode("", 3));
+        assertNull(codec.decode("  ", 3));
+    }
+
+    @Test
+    void tamperedPayloadIsRejected() {
+        String cursor = codec.encode(5, 1L, 100L);
+        String forged = new CursorCodec("secret".getBytes(StandardCharsets.UTF_8)).encode(1, 1L, 100L);
+        // 用合法游标的签名配上改过的内容
+        String spliced = forged.substring(0, forged.indexOf('.')) + cursor.substring(cursor.indexOf('.'));
+        assertNull(codec.decode(spliced, 3));
+    }
+
+    @Test
+    void signatureFromAnotherKeyIsRejected() {
+        String cursor = new CursorCodec("other".getBytes(StandardCharsets.UTF_8)).encode(1, 1L, 100L);
+        assertNull(codec.decode(cursor, 3));
+    }
+
+    @Test
+    void sameKeyAcrossInstancesAccepts() {
+        String cursor = new CursorCodec("secret".getBytes(StandardCharsets.UTF_8)).encode(1, 1L, 100L);
+        assertArrayEquals(new long[]{1, 1, 100}, codec.decode(cursor, 3));
+    }
+
+    @Test
+    void malformedCursorsAreRejected() {
+        String cursor = codec.encode(1, 1L, 100L);
+        assertNull(codec.decode(cursor, 4), "数字个数不符");
+        assertNull(codec.decode(cursor + ".x", 3), "多余的分段");
+        assertNull(codec.decode(cursor.substring(0, cursor.indexOf('.')), 3), "缺少签名");
+        assertNull(codec.decode("!!!.???", 3), "不是Base64");
+        assertNull(codec.decode(codec.encode(-1, 1L, 100L), 3), "页号为负");
+    }
+}
@@ -0,0 +1,48 @@
+package com.hmdp.utils;
+
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * 单元测试用的内嵌redis-server进程，以及连接它的StringRedisTemplate
+ */
+public class EmbeddedRedis implements AutoCloseable {
+
+    private final RedisServer server;
+    private final LettuceConnectionFactory factory;
+    private final StringRedisTemplate template;
+
+    public EmbeddedRedis() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = new RedisServer(port);
+        server.start();
+        factory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+        factory.afterPropertiesSet();
+        template = new StringRedisTemplate(factory);
+    }
+
+    public StringRedisTemplate template() {
+        return template;
+    }
+
+    public void flushAll() {
+        template.execute(connection -> {
+            connection.flushAll();
+            return null;
+        }, true);
+    }
+
+    @Override
+    public void close() throws IOException {
+        factory.destroy();
+        server.stop();
+    }
+}
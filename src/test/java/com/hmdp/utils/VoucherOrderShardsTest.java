@@ -0,0 +1,102 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 订单按id中的时间戳路由到月分表
+ */
+class VoucherOrderShardsTest {
+
+    private static final YearMonth JAN = YearMonth.of(2026, 1);
+    private static final YearMonth FEB = YearMonth.of(2026, 2);
+    private static final YearMonth MAR = YearMonth.of(2026, 3);
+
+    @Test
+    void orderIdIsRoutedByItsTimestamp() {
+        long firstOfFeb = RedisIdWorker.minIdAt(LocalDateTime.of(2026, 2, 1, 0, 0));
+        assertEquals(FEB, VoucherOrderShards.monthOf(firstOfFeb));
+        assertEquals(FEB, VoucherOrderShards.monthOf(firstOfFeb | 0xffffffffL));
+        // 序列号占低32位，上一秒生成的最大id仍属于一月
+        assertEquals(JAN, VoucherOrderShards.monthOf(firstOfFeb - 1));
+        assertEquals(MAR, VoucherOrderShards.monthOf(RedisIdWorker.minIdAt(LocalDateTime.of(2026, 3, 31, 23, 59, 59))));
+    }
+
+    @Test
+    void shardTableName() {
+        assertEquals("tb_voucher_order_202602", VoucherOrderShards.tableOf(FEB));
+        assertEquals("tb_voucher_order_202512", VoucherOrderShards.tableOf(JAN.minusMonths(1)));
+    }
+
+    @Test
+    void statementsMustBeRoutedExplicitly() {
+        assertThrows(IllegalStateException.class, VoucherOrderShards::routedTable);
+        String routed = VoucherOrderShards.on("tb_voucher_order_202602", () ->
+                // 嵌套时内层生效，退出后恢复外层
+                VoucherOrderShards.on("tb_voucher_order_202601", VoucherOrderShards::routedTable)
+                        + "," + VoucherOrderShards.routedTable());
+        assertEquals("tb_voucher_order_202601,tb_voucher_order_202602", routed);
+        assertThrows(IllegalStateException.class, VoucherOrderShards::routedTable);
+    }
+
+    @Test
+    void routingIsClearedWhenTheStatementFails() {
+        assertThrows(IllegalArgumentException.class, () -> VoucherOrderShards.on("tb_voucher_order_202602", () -> {
+            throw new IllegalArgumentException();
+        }));
+        assertThrows(IllegalStateException.class, VoucherOrderShards::routedTable);
+    }
+
+    @Test
+    void lookupFindsOnlineOrArchivedShard() {
+        VoucherOrderShards shards = shards(Arrays.asList(FEB, MAR), Collections.singletonList(JAN));
+
+        assertEquals("tb_voucher_order_202603", shards.lookupTableOf(idAt(2026, 3, 15)));
+        assertEquals("tb_voucher_order_202602", shards.lookupTableOf(idAt(2026, 2, 28)));
+        assertEquals("tb_voucher_order_archive_202601", shards.lookupTableOf(idAt(2026, 1, 1)));
+        // 没有分表的月份
+        assertNull(shards.lookupTableOf(idAt(2025, 12, 31)));
+    }
+
+    @Test
+    void tablesSinceListsNewestFirstWithOneDayOfSlack() {
+        VoucherOrderShards shards = shards(Arrays.asList(FEB, MAR), Collections.singletonList(JAN));
+
+        assertEquals(Arrays.asList("tb_voucher_order_202603", "tb_voucher_order_202602", "tb_voucher_order_archive_202601"),
+                shards.tablesSince(null));
+        assertEquals(Arrays.asList("tb_voucher_order_202603", "tb_voucher_order_202602"),
+                shards.tablesSince(LocalDateTime.of(2026, 2, 15, 0, 0)));
+        // 月初的时间多退一天，包括上个月的分表
+        assertEquals(Arrays.asList("tb_voucher_order_202603", "tb_voucher_order_202602", "tb_voucher_order_archive_202601"),
+                shards.tablesSince(LocalDateTime.of(2026, 2, 1, 12, 0)));
+        assertEquals(Collections.emptyList(), shards.tablesSince(LocalDateTime.of(2026, 5, 1, 0, 0)));
+    }
+
+    @Test
+    void atLeastTwoOnlineMonths() {
+        assertThrows(IllegalArgumentException.class, () -> new VoucherOrderShards(null, null, null, 1));
+    }
+
+    private static VoucherOrderShards shards(List<YearMonth> online, List<YearMonth> archived) {
+        VoucherOrderShards shards = new VoucherOrderShards(null, null, null, 12);
+        ReflectionTestUtils.setField(shards, "online", new TreeSet<>(online));
+        ReflectionTestUtils.setField(shards, "archived", new HashSet<>(archived));
+        return shards;
+    }
+
+    private static long idAt(int year, int month, int day) {
+        return RedisIdWorker.minIdAt(LocalDateTime.of(year, month, day, 12, 0)) | 1;
+    }
+}